@@ -0,0 +1,109 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+
+/**
+ * The numeric inner loops of {@link VectorOps} implemented with the incubating
+ * Vector API.  This class is only compiled by the {@code simd} Maven profile
+ * and requires the JVM to be started with {@code --add-modules
+ * jdk.incubator.vector}.
+ */
+class SimdVectorOps extends VectorOps {
+
+    private static final VectorSpecies<Double> SPECIES =
+        DoubleVector.SPECIES_PREFERRED;
+
+    public SimdVectorOps() { }
+
+    /**
+     * {@inheritDoc}  Each element is updated with a separate multiply and add,
+     * rather than a fused one, so that the result is the same as the scalar
+     * loop.
+     */
+    @Override void axpy(double a, double[] x, double[] y, int length) {
+        DoubleVector va = DoubleVector.broadcast(SPECIES, a);
+        int upper = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            DoubleVector vx = DoubleVector.fromArray(SPECIES, x, i);
+            DoubleVector vy = DoubleVector.fromArray(SPECIES, y, i);
+            vy.add(va.mul(vx)).intoArray(y, i);
+        }
+        for (; i < length; ++i)
+            y[i] += a * x[i];
+    }
+
+    @Override double l1Distance(double[] x, double[] y, int length) {
+        DoubleVector sum = DoubleVector.zero(SPECIES);
+        int upper = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            DoubleVector vx = DoubleVector.fromArray(SPECIES, x, i);
+            DoubleVector vy = DoubleVector.fromArray(SPECIES, y, i);
+            sum = sum.add(vx.sub(vy).abs());
+        }
+        double dist = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; ++i)
+            dist += Math.abs(x[i] - y[i]);
+        return dist;
+    }
+
+    /**
+     * {@inheritDoc}  A value's bin is the number of bin upper bounds that are
+     * less than it, which is counted by comparing each bound against a vector
+     * of values at a time.  A NaN is less than no bound, so its lanes are set
+     * to the last bin, as the scalar loop places it.
+     */
+    @Override void bin(double[] values, int length, int numBins, int[] bins) {
+        // The same bounds as computed by DiscretizedDifferentialEntropy.bin
+        double[] bounds = new double[numBins];
+        for (int b = 0; b < numBins; ++b)
+            bounds[b] = ((double)(b + 1)) / numBins;
+        DoubleVector one = DoubleVector.broadcast(SPECIES, 1);
+        DoubleVector last = DoubleVector.broadcast(SPECIES, numBins - 1);
+        double[] counts = new double[SPECIES.length()];
+        int upper = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            DoubleVector v = DoubleVector.fromArray(SPECIES, values, i);
+            DoubleVector count = DoubleVector.zero(SPECIES);
+            for (int b = 0; b < numBins; ++b) {
+                VectorMask<Double> above =
+                    v.compare(VectorOperators.GT, bounds[b]);
+                count = count.add(one, above);
+            }
+            count = count.blend(last, v.test(VectorOperators.IS_NAN));
+            count.intoArray(counts, 0);
+            for (int k = 0; k < counts.length; ++k)
+                bins[i + k] = Math.min((int)counts[k], numBins - 1);
+        }
+        for (; i < length; ++i)
+            bins[i] = DiscretizedDifferentialEntropy.bin(values[i], numBins);
+    }
+}
@@ -26,8 +26,10 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -40,6 +42,19 @@ import static edu.ucla.sspace.util.LoggerUtil.veryVerbose;
  * An abstract base class for evaluation methods that handles the common
  * behavior of looping over both keys and calling {@link
  * #evaluateInstance(Map,Map,int)} for each instance in common.
+ *
+ * <p> Subclasses whose scores rely on structures derived only from the gold
+ * ratings, such as a sorted ranking of the gold senses, may override {@link
+ * #prepareGold(Map)} to build them and {@link
+ * #evaluateInstance(Object,Map,Map,int)} to use them.  When the evaluation is
+ * given the {@link PreparedGold} it is tested against with {@link
+ * #usePreparedGold(PreparedGold)}, each instance's structures are built once
+ * per gold key and reused across all the folds and all the systems scored
+ * against that key.
+ *
+ * <p> The scores of instances may also be memoized in an {@link
+ * InstanceScoreCache} with {@link #setScoreCache(InstanceScoreCache)}, which
+ * avoids scoring the same pair of gold and test ratings more than once.
  */
 public abstract class AbstractEvaluation implements Evaluation {
 
@@ -60,6 +75,131 @@ public abstract class AbstractEvaluation implements Evaluation {
         Map<String,Double> testSenseRatings,
         int numSenses);
 
+    /**
+     * Performs the evaluation on the given sense ratings using the structures
+     * that {@link #prepareGold(Map)} returned for {@code goldSenseRatings}.
+     * The default implementation ignores them and calls {@link
+     * #evaluateInstance(Map,Map,int)}.
+     *
+     * @param preparedGold the structures prepared for {@code goldSenseRatings},
+     *        which may be {@code null} if the subclass does not prepare any
+     */
+    protected double evaluateInstance(Object preparedGold,
+                                      Map<String,Double> goldSenseRatings,
+                                      Map<String,Double> testSenseRatings,
+                                      int numSenses) {
+        return evaluateInstance(goldSenseRatings, testSenseRatings, numSenses);
+    }
+
+    /**
+     * Returns the structures for scoring an instance that depend only on its
+     * gold standard sense ratings, or {@code null} if this evaluation does not
+     * use any, which is the default.  The returned structures are shared by
+     * all evaluations with an equal {@link #getPreparationKey() preparation
+     * key} and by concurrent scoring runs, so they must not be modified once
+     * returned.
+     */
+    protected Object prepareGold(Map<String,Double> goldSenseRatings) {
+        return null;
+    }
+
+    /**
+     * Returns the structures for scoring an instance that depend only on its
+     * gold standard sense ratings and the gold senses of its term, which are
+     * numbered by {@code termSenses}.  The default implementation returns
+     * {@link #prepareGold(Map)}.  Instances that are not prepared ahead of
+     * time are only given to {@link #prepareGold(Map)}, so subclasses must
+     * handle the structures from either method.
+     */
+    Object prepareGold(SenseDictionary termSenses,
+                       Map<String,Double> goldSenseRatings) {
+        return prepareGold(goldSenseRatings);
+    }
+
+    /**
+     * Returns the key under which a {@link PreparedGold} shares the structures
+     * this evaluation prepares with other evaluations.  By default each
+     * evaluation is its own key, so evaluations with different settings never
+     * see each other's structures.  Evaluations whose {@code prepareGold}
+     * methods are final and use none of their settings may return their class
+     * so that all of their instances share one preparation of each key.
+     */
+    Object getPreparationKey() {
+        return this;
+    }
+
+    /**
+     * The gold structures of each instance in the {@link PreparedGold} this
+     * evaluation was last given, or an empty map if none was given
+     */
+    private volatile Map<String,PreparedInstance> preparedInstances =
+        Collections.<String,PreparedInstance>emptyMap();
+
+    /**
+     * The cache of scores for repeated rating patterns, or {@code null} if
+     * every instance is scored
+     */
+    private volatile InstanceScoreCache scoreCache;
+
+    /**
+     * Memoizes the scores of the instances in {@code cache}, so that instances
+     * with the same gold and test ratings as an instance already scored reuse
+     * its score rather than being evaluated again.  A {@code null} cache
+     * disables the memoization, which is the default.
+     *
+     * @throws IllegalStateException if the cache already holds the scores of
+     *         another class of evaluation
+     */
+    public void setScoreCache(InstanceScoreCache cache) {
+        if (cache != null)
+            cache.bind(getClass());
+        this.scoreCache = cache;
+    }
+
+    /**
+     * Returns the cache in which instance scores are memoized, or {@code null}
+     * if they are not.
+     */
+    public InstanceScoreCache getScoreCache() {
+        return scoreCache;
+    }
+
+    /**
+     * Uses the gold structures prepared from {@code gold} when testing its
+     * instances, preparing them the first time an evaluation with the same
+     * {@link #getPreparationKey() preparation key} is given the key.  Instances whose gold ratings are not those in {@code
+     * gold} are still prepared as they are tested.
+     */
+    public void usePreparedGold(PreparedGold gold) {
+        preparedInstances = gold.getPreparedInstances(this);
+    }
+
+    /**
+     * Returns the gold structures of every instance in {@code goldKey}, or an
+     * empty map if this evaluation does not {@link #prepareGold(Map) prepare}
+     * any.
+     */
+    Map<String,PreparedInstance> prepareInstances(
+            Map<String,Map<String,Map<String,Double>>> goldKey) {
+        Map<String,PreparedInstance> prepared = 
+            new HashMap<String,PreparedInstance>();
+        for (Map<String,Map<String,Double>> instances : goldKey.values()) {
+            Set<String> senses = new HashSet<String>();
+            for (Map<String,Double> ratings : instances.values())
+                senses.addAll(ratings.keySet());
+            SenseDictionary termSenses = new SenseDictionary(senses);
+            for (Map.Entry<String,Map<String,Double>> e 
+                     : instances.entrySet()) {
+                Object data = prepareGold(termSenses, e.getValue());
+                if (data == null)
+                    return Collections.<String,PreparedInstance>emptyMap();
+                prepared.put(e.getKey(), 
+                             new PreparedInstance(e.getValue(), data));
+            }
+        }
+        return prepared;
+    }
+
     /**
      * Returns a mapping from each instance to its score
      */
@@ -69,7 +209,43 @@ public abstract class AbstractEvaluation implements Evaluation {
              Set<String> testInstances,
              Map<String,Integer> termToNumSenses) {
         
-        Map<String,Double> instanceToScore = new HashMap<String,Double>();
+        // Keep the scores in the order of the gold key so that any sums over
+        // them do not depend on which other terms are being evaluated
+        Map<String,Double> instanceToScore = 
+            new LinkedHashMap<String,Double>();
+        test(test, gold, testInstances, termToNumSenses, instanceToScore, null);
+        return instanceToScore;
+    }
+
+    /**
+     * Adds the score of each instance to {@code scores}, in the order of the
+     * gold key, rather than returning them in a map.
+     *
+     * @param scores the accumulator of the scores, whose gold key must contain
+     *        all the terms and instances in {@code gold}
+     *
+     * @see Evaluation#test(Map,Map,Set,Map)
+     */
+    public void test(Map<String,Map<String,Map<String,Double>>> test,
+                     Map<String,Map<String,Map<String,Double>>> gold,
+                     Set<String> testInstances,
+                     Map<String,Integer> termToNumSenses,
+                     ScoreAccumulator scores) {
+        test(test, gold, testInstances, termToNumSenses, null, scores);
+    }
+
+    /**
+     * Scores the instances, putting each score in {@code instanceToScore} if
+     * it is non-{@code null} and adding it to {@code scores} otherwise.
+     */
+    private void test(Map<String,Map<String,Map<String,Double>>> test,
+                      Map<String,Map<String,Map<String,Double>>> gold,
+                      Set<String> testInstances,
+                      Map<String,Integer> termToNumSenses,
+                      Map<String,Double> instanceToScore,
+                      ScoreAccumulator scores) {
+
+        InstanceScoreCache cache = scoreCache;
 
         // We pair against each of the terms and corresponding instance in the
         // gold standard
@@ -90,6 +266,7 @@ public abstract class AbstractEvaluation implements Evaluation {
             // term in the gold key, just skip this term
             if (instanceToTestSenses == null) 
                 continue;
+            int termId = (scores == null) ? -1 : scores.getTermId(term);
 
             // For each instance, compute the Jaccard Index between the gold
             // standard sense listing and what is present in the test key
@@ -112,17 +289,60 @@ public abstract class AbstractEvaluation implements Evaluation {
                 if (testSenses == null)
                     continue;
                 
-                double score = evaluateInstance(goldSenses, testSenses,
-                                                numSenses);
+                // Reuse the score of an instance with the same ratings if one
+                // has been memoized
+                String key = null;
+                if (cache != null) {
+                    key = InstanceScoreCache.key(goldSenses, testSenses, 
+                                                 numSenses);
+                    Double cached = cache.get(key);
+                    if (cached != null) {
+                        if (scores == null)
+                            instanceToScore.put(instance, cached);
+                        else
+                            scores.add(termId, scores.getInstanceId(instance),
+                                       cached);
+                        continue;
+                    }
+                }
+
+                // Reuse the gold structures prepared ahead of time as long as
+                // they were prepared from these same ratings
+                PreparedInstance p = preparedInstances.get(instance);
+                Object preparedGold = (p != null && p.goldRatings == goldSenses)
+                    ? p.data
+                    : prepareGold(goldSenses);
+                double score = evaluateInstance(preparedGold, goldSenses,
+                                                testSenses, numSenses);
                                 
                 if (Double.isNaN(score) || Double.isInfinite(score)) {
                     throw new IllegalStateException(
                         getClass().getName() + " returned an evaluation score "+
                         " that is outside the acceptable bounds: " + score);
                 }
-                instanceToScore.put(instance, score);                
+                if (cache != null)
+                    cache.put(key, score);
+                if (scores == null)
+                    instanceToScore.put(instance, score);
+                else
+                    scores.add(termId, scores.getInstanceId(instance), score);
             }
         }
-        return instanceToScore;
+    }
+
+    /**
+     * The gold structures of an instance along with the ratings they were
+     * prepared from
+     */
+    static class PreparedInstance {
+
+        final Map<String,Double> goldRatings;
+
+        final Object data;
+
+        PreparedInstance(Map<String,Double> goldRatings, Object data) {
+            this.goldRatings = goldRatings;
+            this.data = data;
+        }
     }
 }
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * An implementation of the Adjusted Rand Index of <a
+ * href="http://link.springer.com/article/10.1007/BF01908075">Hubert and Arabie
+ * (1985)</a> for comparing hard sense clusterings, which corrects the Rand
+ * Index for the agreement expected between random clusterings with the same
+ * cluster sizes.  The index is computed from the pair counts of the term's
+ * {@link ContingencyTable}.
+ */
+public class AdjustedRandIndex implements ClusterEvaluation {
+
+    public String[] getScoreNames() {
+        return new String[] { "Adjusted Rand Index" };
+    }
+
+    public TermScore evaluate(TermLabelings labelings) {
+        return new TermScore(compute(ContingencyTable.create(labelings)));
+    }
+
+    /**
+     * Returns the Adjusted Rand Index averaged over all terms
+     */
+    public double[] summarize(List<double[]> termScores) {
+        double ariSum = 0;
+        for (double[] scores : termScores)
+            ariSum += scores[0];
+        return new double[] { ariSum / termScores.size() };
+    }
+
+    /**
+     * Computes the Adjusted Rand Index of the hard clusterings of a term's
+     * instances.  Test labels for instances that are not in the gold labeling
+     * are ignored.
+     */
+    public static double computeARI(Map<String,Map<String,Double>> instanceToGoldRatings,
+                                    Map<String,Map<String,Double>> instanceToTestRatings) {
+        return compute(ContingencyTable.create(instanceToGoldRatings,
+                                               instanceToTestRatings));
+    }
+
+    /**
+     * Returns the Adjusted Rand Index of the table.  When the expected index
+     * is already the maximum, as when both clusterings put every instance in
+     * one cluster, the index is 1 if the clusterings agree on every pair and 0
+     * otherwise.
+     */
+    static double compute(ContingencyTable table) {
+        double index = table.sharedPairs();
+        double goldPairs = table.goldPairs();
+        double testPairs = table.testPairs();
+        long totalPairs = table.totalPairs();
+        double expected = (totalPairs == 0) 
+            ? 0 : goldPairs * testPairs / totalPairs;
+        double max = (goldPairs + testPairs) / 2;
+        if (max == expected)
+            return (index == max) ? 1 : 0;
+        return (index - expected) / (max - expected);
+    }
+}
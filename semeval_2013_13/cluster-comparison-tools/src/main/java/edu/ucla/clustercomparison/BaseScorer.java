@@ -38,19 +38,128 @@ import static edu.ucla.sspace.util.LoggerUtil.verbose;
  */
 public abstract class BaseScorer {
     
-    static final int randomSeed = 42;
-
-    /**
-     * The source of randomness for dividing the train and test splits.  This
-     * randomness is deterministic thanks to the constant seed.
-     */
-    static final Random rand = new Random(randomSeed);
-    
     /**
      * The logger for this class
      */
     private static final Logger LOGGER = 
         Logger.getLogger(BaseScorer.class.getName());;
+
+    /**
+     * The file in which per-term results are cached between runs, or {@code
+     * null} if every term should always be scored.
+     */
+    private File incrementalCacheFile;
+
+    /**
+     * Sets the file in which the per-term remapping results and instance scores
+     * are persisted between scoring runs.  When set, only the terms whose gold
+     * or test labelings have changed since the results were cached are
+     * remapped and evaluated again.  A {@code null} file disables the caching.
+     */
+    public void setIncrementalCache(File cacheFile) {
+        this.incrementalCacheFile = cacheFile;
+    }
+
+    /**
+     * The file to which the score of every gold instance is written, or {@code
+     * null} if only the report is produced.
+     */
+    private File instanceResultFile;
+
+    /**
+     * Sets the file to which the score of every gold instance is written with
+     * an {@link InstanceResultWriter}, along with its term, split and whether
+     * it was answered.  A {@code null} file disables the export.
+     */
+    public void setInstanceResultFile(File resultFile) {
+        this.instanceResultFile = resultFile;
+    }
+
+    /**
+     * The cache in which the evaluation memoizes instance scores, or {@code
+     * null} if every instance is scored
+     */
+    private InstanceScoreCache scoreCache;
+
+    /**
+     * Sets the cache in which the instance scores are memoized, so that
+     * instances with the same gold and test ratings are only scored once.  The
+     * cache is kept across scoring runs, which lets a batch of systems scored
+     * against the same gold key share it.  A {@code null} cache disables the
+     * memoization.
+     */
+    public void setScoreCache(InstanceScoreCache scoreCache) {
+        this.scoreCache = scoreCache;
+    }
+
+    /**
+     * The destination of the report of each scoring run
+     */
+    private ReportSink reportSink = new TextReportSink();
+
+    /**
+     * Sets the destination of the report of each scoring run, which by default
+     * is printed as text to {@code System.out}.
+     */
+    public void setReportSink(ReportSink reportSink) {
+        if (reportSink == null)
+            throw new NullPointerException("reportSink");
+        this.reportSink = reportSink;
+    }
+
+    /**
+     * The filters of the named subsets of gold instances whose scores are
+     * broken down after each run, in the order they were added
+     */
+    private final Map<String,KeyViews.InstanceFilter> subsets =
+        new LinkedHashMap<String,KeyViews.InstanceFilter>();
+
+    /**
+     * Adds a named subset of the gold instances, such as the nouns or the
+     * instances with more than one gold sense, for which the scores are
+     * reported separately.  The subsets are scored from the same remapping
+     * and evaluation of the full key, rather than by scoring each subset as
+     * its own key, so their training instances are those of the full key.
+     * The filter is given the gold ratings of each instance.
+     */
+    public void addSubset(String name, KeyViews.InstanceFilter filter) {
+        subsets.put(name, filter);
+    }
+
+    /**
+     * Adds a named subset made up of the instances in {@code keyFile}, such as
+     * the {@code spoken.key} subset of the gold key.
+     */
+    public void addSubset(String name, File keyFile) throws IOException {
+        Set<String> instances = new HashSet<String>();
+        for (Map<String,Map<String,Double>> m 
+                 : KeyUtil.loadKey(keyFile).values())
+            instances.addAll(m.keySet());
+        addSubset(name, KeyViews.inInstances(instances));
+    }
+
+    /**
+     * Removes all the subsets, so that only the full key is reported.
+     */
+    public void clearSubsets() {
+        subsets.clear();
+    }
+
+    /**
+     * The sweep over the confidences of the test labels that is reported after
+     * each run, or {@code null} if there is none
+     */
+    private ConfidenceSweep confidenceSweep;
+
+    /**
+     * Sets the sweep over thresholds on the confidences of the test key's
+     * labels whose report is written after the scores of each run.  The sweep
+     * reuses the instance scores of the run rather than scoring the key once
+     * per threshold.  A {@code null} sweep disables the report.
+     */
+    public void setConfidenceSweep(ConfidenceSweep sweep) {
+        this.confidenceSweep = sweep;
+    }
     
     /**
      * Computes the score of the evaluation between the two SensEval keys file,
@@ -71,14 +180,9 @@ public abstract class BaseScorer {
     public double[] score(File goldKeyFile, File testKeyFile,
                           File outputKeyFile, boolean performRemapping) 
               throws Exception {
-
-        // Load the gold standard and induced key files
-        Map<String,Map<String,Map<String,Double>>> goldKey = 
-            KeyUtil.loadKey(goldKeyFile);
-        Map<String,Map<String,Map<String,Double>>> testKey = 
-            KeyUtil.loadKey(testKeyFile);     
-        
-        return score(goldKey, testKey, outputKeyFile, performRemapping);
+        return score(goldKeyFile, testKeyFile, outputKeyFile, 
+                     ((performRemapping) 
+                      ? new GradedReweightedKeyMapper() : null));
     }
 
     /**
@@ -100,13 +204,21 @@ public abstract class BaseScorer {
                           File outputKeyFile, KeyMapper keyMapper) 
             throws Exception {
 
-        // Load the gold standard and induced key files
-        Map<String,Map<String,Map<String,Double>>> goldKey = 
-            KeyUtil.loadKey(goldKeyFile);
+        // Load the gold standard and induced key files.  The gold key is
+        // shared with any other scoring runs that use the same file.
+        PreparedGold gold = PreparedGold.load(goldKeyFile);
+
+        // Only the gold instances of the test key are remapped and scored, so
+        // the lines of other instances are skipped when remapping.  Without
+        // remapping, the senses of every test instance count towards the
+        // number of senses of its term, so the entire key is loaded.
         Map<String,Map<String,Map<String,Double>>> testKey = 
-            KeyUtil.loadKey(testKeyFile);     
+            (keyMapper != null)
+            ? KeyUtil.loadKey(testKeyFile, KeyUtil.loadWithStrictParsing,
+                              gold.getInstances())
+            : KeyUtil.loadKey(testKeyFile);
         
-        return score(goldKey, testKey, outputKeyFile, keyMapper);
+        return score(gold, testKey, outputKeyFile, keyMapper);
     }
 
     /**
@@ -151,47 +263,34 @@ public abstract class BaseScorer {
                           Map<String,Map<String,Map<String,Double>>> testKey,
                           File outputKeyFile, KeyMapper keyMapper) 
             throws Exception {
+        return score(new PreparedGold(goldKey), testKey, outputKeyFile,
+                     keyMapper);
+    }
 
-        
-        PrintWriter outputGradedVectorKey = 
-            (outputKeyFile == null) ? null : new PrintWriter(outputKeyFile);
+    /**
+     * Computes the score of the evaluation between the prepared gold key and
+     * the test key, optionally performing remapping and optionally writing the
+     * remapped key to {@code outputKeyFile}.
+     *
+     * @param gold the key against which the test key is to compared, along
+     *        with its train/test splits
+     * @param testKey the key to be compared.  If the key is using a different
+     *        sense inventory, {@code keyMapper} should be non-{@code null}.
+     * @param outputKeyFile if {@code keyMapper} is non-{@code null}, the
+     *        remapped key is written to this file if non-{@code null}.
+     * @param keyMapper an algorithm for converting sense keys in one inventory
+     *        into another, or {@code null} if no remapping is to be performed
+     */
+    public double[] score(PreparedGold gold,
+                          Map<String,Map<String,Map<String,Double>>> testKey,
+                          File outputKeyFile, KeyMapper keyMapper) 
+            throws Exception {
 
-        List<String> allInstances = new ArrayList<String>();
-        for (Map<String,Map<String,Double>> m : goldKey.values())
-            allInstances.addAll(m.keySet());
-        
-        // Create a list of all the indices of the instances in the gold key and
-        // then permute that list in a deterministic manner to decide on the
-        // 80/20 splits.  The shuffle avoids any potiential bias that was in the
-        // original ordering.
-        List<Integer> indices = new ArrayList<Integer>();
-        for (int i = 0; i < allInstances.size(); ++i)
-            indices.add(i);
-        Collections.shuffle(indices, rand);
-        
-        // Create the sets of training instances by dividing the key into 80%
-        // train, 20% test
-        List<Set<String>> trainingSets = new ArrayList<Set<String>>();
-        for (int i = 0; i < 5; ++i)
-            trainingSets.add(new HashSet<String>());
-        for (int i = 0; i < allInstances.size(); ++i) {
-            String instance = allInstances.get(i);
-            int toExclude = i % trainingSets.size();
-            for (int j = 0; j < trainingSets.size(); ++j) {
-                if (j == toExclude)
-                    continue;
-                trainingSets.get(j).add(instance);
-            }
-        }
-              
+        Map<String,Map<String,Map<String,Double>>> goldKey = gold.getKey();
+        List<String> allInstances = gold.getAllInstances();
 
         // Perform a quick sanity check with respect to the remapping
-        Set<String> goldSenses = new HashSet<String>();
-        for (Map.Entry<String,Map<String,Map<String,Double>>> e : goldKey.entrySet()) {
-            String word = e.getKey();
-            for (Map<String,Double> ratings : e.getValue().values())
-                goldSenses.addAll(ratings.keySet());
-        }
+        Set<String> goldSenses = new HashSet<String>(gold.getGoldSenses());
         
         Set<String> testSenses = new HashSet<String>();
         for (Map.Entry<String,Map<String,Map<String,Double>>> e : testKey.entrySet()) {
@@ -228,77 +327,86 @@ public abstract class BaseScorer {
             new HashMap<String,Integer>();
         for (Map.Entry<String,Map<String,Map<String,Double>>> e : goldKey.entrySet()) {
             String term = e.getKey();
-            Set<String> senses = new HashSet<String>();
-            for (Map<String,Double> ratings : e.getValue().values())
-                senses.addAll(ratings.keySet());
-            if (keyMapper == null) {
-                Map<String,Map<String,Double>> m = testKey.get(term);
-                if (m != null) {
-                    for (Map<String,Double> ratings : m.values())
-                        senses.addAll(ratings.keySet());
-                }
+            Set<String> senses = gold.getSenses(term);
+            Map<String,Map<String,Double>> m = 
+                (keyMapper == null) ? testKey.get(term) : null;
+            if (m != null) {
+                senses = new HashSet<String>(senses);
+                for (Map<String,Double> ratings : m.values())
+                    senses.addAll(ratings.keySet());
             }
             termToNumberSenses.put(term, senses.size());
         }
 
+        // If the user has specified that we need to produce the output key,
+        // keep the remapped labels of the gold instances
+        Map<String,Map<String,Map<String,Double>>> remappedTestKey =
+            (keyMapper != null && outputKeyFile != null)
+            ? new LinkedHashMap<String,Map<String,Map<String,Double>>>()
+            : null;
+
         // Score the test key
-        Map<String,Double> instanceScores  
-            = runEval(getEvaluation(), keyMapper,
-                      goldKey, testKey, trainingSets, 
-                      allInstances, outputKeyFile, keyMapper != null,
-                      termToNumberSenses);
-        
-        
-        Map<String,String> instanceToWord = new HashMap<String,String>();
-        for (Map.Entry<String,Map<String,Map<String,Double>>> e : goldKey.entrySet()) {
-            String word = e.getKey();
-            for (String instance : e.getValue().keySet())
-                instanceToWord.put(instance, word);
+        Evaluation evaluation = getEvaluation();
+        if (evaluation instanceof AbstractEvaluation) {
+            ((AbstractEvaluation)evaluation).usePreparedGold(gold);
+            if (scoreCache != null)
+                ((AbstractEvaluation)evaluation).setScoreCache(scoreCache);
+        }
+        // Only keep the scores of the individual instances if they are
+        // needed after the totals have been reported
+        boolean retainScores = instanceResultFile != null 
+            || !subsets.isEmpty() || confidenceSweep != null;
+        ScoreAccumulator scores = new ScoreAccumulator(gold, retainScores);
+        if (incrementalCacheFile == null) {
+            runEval(evaluation, keyMapper, gold, goldKey, testKey,
+                    remappedTestKey, termToNumberSenses, scores);
+        }
+        else {
+            for (Map.Entry<String,Double> e : runIncrementalEval(
+                     evaluation, keyMapper, gold, testKey, remappedTestKey, 
+                     termToNumberSenses).entrySet())
+                scores.add(e.getKey(), e.getValue());
         }
 
-        Map<String,List<Double>> termToScores = new LinkedHashMap<String,List<Double>>();
-        for (String term : goldKey.keySet())
-            termToScores.put(term, new ArrayList<Double>());
+        if (scoreCache != null)
+            verbose(LOGGER, "Memoized instance scores: %s", scoreCache);
 
-        for (Map.Entry<String,Double> e : instanceScores.entrySet()) {
-            String inst = e.getKey();
-            String term = instanceToWord.get(inst);
-            List<Double> scores = termToScores.get(term);
-            scores.add(e.getValue());
+        // Write the remapped key
+        if (remappedTestKey != null) {
+            verbose(LOGGER, "Saving remapped key file to %s", outputKeyFile);
+            RemappedKeyWriter outputKeyWriter = new RemappedKeyWriter(goldKey);
+            outputKeyWriter.add(remappedTestKey);
+            outputKeyWriter.write(outputKeyFile);
         }
 
+        if (instanceResultFile != null)
+            writeInstanceResults(evaluation, gold, scores);
+
         // Generate the report
         double allScoresSum = 0;
         double numAnswered = 0;
         int na = 0;
-        System.out.println("===================================================================");
-        System.out.printf("term\taverage_score\trecall\tf-score%n");
-        System.out.println("-------------------------------------------------------------------");
-        for (Map.Entry<String,List<Double>> e : termToScores.entrySet()) {
-            String term = e.getKey();
+        Report report = 
+            new Report("term", "average_score", "recall", "f-score");
+        for (int t = 0; t < scores.numTerms(); ++t) {
+            String term = scores.getTerm(t);
             double numInstances = goldKey.get(term).size();
-            List<Double> scores = e.getValue();
-            double recall = scores.size() / numInstances;
-            numAnswered += scores.size();
-            na += scores.size();
-            double sum = 0;
-            for (Double d : scores) {
-                if (Double.isNaN(d) || Double.isInfinite(d)) 
-                    throw new Error();
-                sum += d;
-            }
+            int count = scores.getCount(t);
+            double recall = count / numInstances;
+            numAnswered += count;
+            na += count;
+            double sum = scores.getSum(t);
             allScoresSum += sum;
-            double avg = (scores.size() > 0) ? sum / scores.size() : 0;
+            double avg = (count > 0) ? sum / count : 0;
             if (Double.isNaN(avg) || Double.isInfinite(avg)) 
                 throw new IllegalStateException();
             double fscore = (avg + recall > 0) 
                 ? (2 * avg * recall) / (avg + recall)
                 : 0;
             
-            System.out.println(term + "\t" + avg + "\t" + recall + "\t" + fscore);
+            report.addRow(term, avg, recall, fscore);
         }
-         System.out.println("-------------------------------------------------------------------");
-        // Print out the aggregate
+        // Compute the aggregate
         double avg = (numAnswered > 0) ? allScoresSum / numAnswered : 0;
         // Recall is the percentage of all instances that were answered
         // correctly.  If a test key answers all instances, recall is the same
@@ -310,9 +418,18 @@ public abstract class BaseScorer {
             ? (2 * avg * recall) / (avg + recall)
             : 0;
             
-         System.out.println("all\t" + avg + "\t" + recall + "\t" + fscore);        
-         System.out.println("===================================================================");
-         return new double[] { avg, recall, fscore };
+        report.setTotal("all", avg, recall, fscore);
+        reportSink.write(report);
+        if (!subsets.isEmpty()) {
+            Report breakdown = breakdown(gold, scores);
+            breakdown.setTotal("all", avg, recall, fscore);
+            reportSink.write(breakdown);
+        }
+        if (confidenceSweep != null) {
+            reportSink.write(confidenceSweep.sweep(scores.getInstanceScores(),
+                                                   allInstances.size()));
+        }
+        return new double[] { avg, recall, fscore };
     }
 
     /**
@@ -321,145 +438,257 @@ public abstract class BaseScorer {
     protected abstract Evaluation getEvaluation();
 
     /**
-     * Computes the evaluation over the all the test-training splits.
+     * Returns the report of each subset's average score, recall and F-score,
+     * which are computed in the same way as those of the full key.  The
+     * instances are visited once, adding each one's score to all of the
+     * subsets that contain it.
      */
-    Map<String,Double> runEval(Evaluation evaluation,
-                               KeyMapper keyMapper, 
-                               Map<String,Map<String,Map<String,Double>>> goldKey,
-                               Map<String,Map<String,Map<String,Double>>> testKey,
-                               List<Set<String>> trainingSets,
-                               List<String> allInstances,
-                               File outputKey, 
-                               boolean performRemapping,
-                               Map<String,Integer> termToNumberSenses) throws IOException {
-        
-        Map<String,Double> instanceScores = new LinkedHashMap<String,Double>();
+    private Report breakdown(PreparedGold gold, ScoreAccumulator scores) {
+        int numSubsets = subsets.size();
+        KeyViews.InstanceFilter[] filters = subsets.values().toArray(
+            new KeyViews.InstanceFilter[numSubsets]);
+        int[] numInstances = new int[numSubsets];
+        int[] numAnswered = new int[numSubsets];
+        double[] sums = new double[numSubsets];
+        int instanceId = 0;
+        for (Map.Entry<String,Map<String,Map<String,Double>>> e 
+                 : gold.getKey().entrySet()) {
+            String term = e.getKey();
+            for (Map.Entry<String,Map<String,Double>> e2 
+                     : e.getValue().entrySet()) {
+                String instance = e2.getKey();
+                double score = scores.getScore(instanceId++);
+                for (int s = 0; s < numSubsets; ++s) {
+                    if (!filters[s].accept(term, instance, e2.getValue()))
+                        continue;
+                    numInstances[s]++;
+                    if (!Double.isNaN(score)) {
+                        numAnswered[s]++;
+                        sums[s] += score;
+                    }
+                }
+            }
+        }
 
-        PrintWriter outputKeyWriter = (outputKey == null) 
-            ? null : new PrintWriter(outputKey);
+        Report report = 
+            new Report("subset", "average_score", "recall", "f-score");
+        int s = 0;
+        for (String name : subsets.keySet()) {
+            double avg = (numAnswered[s] > 0) ? sums[s] / numAnswered[s] : 0;
+            double recall = (numInstances[s] > 0) 
+                ? avg * ((double)numAnswered[s] / numInstances[s]) 
+                : 0;
+            double fscore = (avg + recall > 0) 
+                ? (2 * avg * recall) / (avg + recall)
+                : 0;
+            report.addRow(name, avg, recall, fscore);
+            s++;
+        }
+        return report;
+    }
 
-        Map<String,Map<String,Map<String,Double>>> allRemappedTestKey        
-            = (performRemapping && outputKeyWriter != null) 
-            ? new TreeMap<String,Map<String,Map<String,Double>>>()
-            : null;
+    /**
+     * Writes the score of each gold instance to the instance result file, in
+     * the order of the gold key, with unanswered instances scored as 0.
+     */
+    private void writeInstanceResults(Evaluation evaluation, PreparedGold gold,
+                                      ScoreAccumulator scores)
+            throws IOException {
+        verbose(LOGGER, "Saving instance scores to %s", instanceResultFile);
+        String metric = evaluation.getClass().getSimpleName();
+        if (metric.length() == 0)
+            metric = evaluation.getClass().getName();
+        InstanceResultWriter writer = 
+            new InstanceResultWriter(instanceResultFile);
+        try {
+            int instanceId = 0;
+            for (Map.Entry<String,Map<String,Map<String,Double>>> e 
+                     : gold.getKey().entrySet()) {
+                String term = e.getKey();
+                for (String instance : e.getValue().keySet()) {
+                    boolean isAnswered = scores.isScored(instanceId);
+                    writer.add(instance, term, gold.getFold(instance), metric,
+                               (isAnswered) ? scores.getScore(instanceId) : 0,
+                               isAnswered);
+                    instanceId++;
+                }
+            }
+        } finally {
+            writer.close();
+        }
+    }
 
-        int round = 0;
-        for (Set<String> trainingInstances : trainingSets) {
+    /**
+     * Computes the evaluation over the all the test-training splits.
+     *
+     * @param goldKey the terms of the gold key that should be evaluated
+     * @param remappedTestKey if non-{@code null}, the remapped labels of all
+     *        the gold instances are added to this key
+     * @param scores the accumulator to which the instance scores are added
+     */
+    void runEval(Evaluation evaluation,
+                 KeyMapper keyMapper, 
+                 PreparedGold gold,
+                 Map<String,Map<String,Map<String,Double>>> goldKey,
+                 Map<String,Map<String,Map<String,Double>>> testKey,
+                 Map<String,Map<String,Map<String,Double>>> remappedTestKey,
+                 Map<String,Integer> termToNumberSenses,
+                 ScoreAccumulator scores) {
+
+        for (int round = 0; round < gold.numFolds(); ++round) {
+            Set<String> trainingInstances = gold.getTrainingSets().get(round);
 
             // Map the induced senses to gold standard senses
-            Map<String,Map<String,Map<String,Double>>> remappedTestKey = 
-                (performRemapping)
+            Map<String,Map<String,Map<String,Double>>> remappedSplit = 
+                (keyMapper != null)
                 ? keyMapper.convert(goldKey, testKey, trainingInstances)
                 : testKey;
             
-            // If the user has specified that we need to produce the output key,
-            // write it now
-            if (performRemapping && outputKeyWriter != null) {
-                // Merge this remapped test set with the total key
+            // Record the remapped gold instances from this split
+            if (keyMapper != null && remappedTestKey != null) {
                 for (Map.Entry<String,Map<String,Map<String,Double>>> e 
-                         : remappedTestKey.entrySet()) {
-                    String doc = e.getKey();
-                    Map<String,Map<String,Double>> instRatings = e.getValue();
-                    Map<String,Map<String,Double>> curInstRatings = 
-                        allRemappedTestKey.get(doc);
-                    if (curInstRatings == null) {
-                        // Sort them so that term.pos.2 < term.pos.10
-                        curInstRatings = new TreeMap<String,Map<String,Double>>(
-                            new InstanceComparator());
-                        curInstRatings.putAll(instRatings);
-                        allRemappedTestKey.put(doc, curInstRatings);
+                         : remappedSplit.entrySet()) {
+                    String term = e.getKey();
+                    Map<String,Map<String,Double>> goldInstances = 
+                        goldKey.get(term);
+                    if (goldInstances == null)
+                        continue;
+                    Map<String,Map<String,Double>> remapped = 
+                        remappedTestKey.get(term);
+                    if (remapped == null) {
+                        remapped = 
+                            new LinkedHashMap<String,Map<String,Double>>();
+                        remappedTestKey.put(term, remapped);
                     }
-                    else {
-                        assert Collections.disjoint(
-                            curInstRatings.keySet(), instRatings.keySet())
-                            : "Overlapping instances in the test / train sets";
-                        curInstRatings.putAll(instRatings);
+                    for (Map.Entry<String,Map<String,Double>> e2 
+                             : e.getValue().entrySet()) {
+                        if (goldInstances.containsKey(e2.getKey()))
+                            remapped.put(e2.getKey(), e2.getValue());
                     }
                 }
             }
-                
 
             // Determine which set of instances should be tested
-            Set<String> instancesToTest = new LinkedHashSet<String>();
-            for (Map<String,?> m : goldKey.values())
-                instancesToTest.addAll(m.keySet());
-            instancesToTest.removeAll(trainingInstances);
+            Set<String> instancesToTest = gold.getTestSets().get(round);
             
             verbose(LOGGER, "Testing split %d ", round);
             
-            Map<String,Double> scores = 
-                evaluation.test(remappedTestKey, goldKey, instancesToTest,
-                                termToNumberSenses);
-            instanceScores.putAll(scores);
-            round++;
-        }
-
-        // Finish writing the key 
-        if (outputKeyWriter != null) {
-
-            for (Map.Entry<String,Map<String,Map<String,Double>>> e : 
-                     goldKey.entrySet()) {
-                String t = e.getKey();
-                Set<String> toRetain = e.getValue().keySet();
-                Map<String,Map<String,Double>> test = allRemappedTestKey.get(t);
-                if (test != null)
-                    test.keySet().retainAll(toRetain);
+            if (evaluation instanceof AbstractEvaluation) {
+                ((AbstractEvaluation)evaluation).test(
+                    remappedSplit, goldKey, instancesToTest, 
+                    termToNumberSenses, scores);
+            }
+            else {
+                for (Map.Entry<String,Double> e : evaluation.test(
+                         remappedSplit, goldKey, instancesToTest, 
+                         termToNumberSenses).entrySet())
+                    scores.add(e.getKey(), e.getValue());
             }
+        }
+    }
 
-            verbose(LOGGER, "Saving remapped key file to ", outputKey);
-            writeKey(allRemappedTestKey, outputKeyWriter);
-            outputKeyWriter.close();  
-        }      
-        
-        return instanceScores;
-    }        
-    
     /**
-     * Writes the Senseval key file for this remapping
+     * Computes the evaluation over the all the test-training splits, reusing
+     * the cached results of any term whose labelings have not changed since
+     * they were last scored and only evaluating the remaining terms.
+     *
+     * @param remappedTestKey if non-{@code null}, the remapped labels of all
+     *        the gold instances are added to this key
      */
-    static void writeKey(Map<String,Map<String,Map<String,Double>>> remappedTestKey,
-                         PrintWriter pw) {
-
+    private Map<String,Double> runIncrementalEval(
+            Evaluation evaluation,
+            KeyMapper keyMapper, 
+            PreparedGold gold,
+            Map<String,Map<String,Map<String,Double>>> testKey,
+            Map<String,Map<String,Map<String,Double>>> remappedTestKey,
+            Map<String,Integer> termToNumberSenses) throws IOException {
+
+        Map<String,Map<String,Map<String,Double>>> goldKey = gold.getKey();
+        IncrementalScoreCache cache = new IncrementalScoreCache(
+            incrementalCacheFile, evaluation, keyMapper);
+
+        // Find which terms have changed and need to be scored
+        Map<String,String> termToHash = new HashMap<String,String>();
+        Map<String,Map<String,Map<String,Double>>> changedGold = 
+            new LinkedHashMap<String,Map<String,Map<String,Double>>>();
+        Map<String,Map<String,Map<String,Double>>> changedTest = 
+            new LinkedHashMap<String,Map<String,Map<String,Double>>>();
         for (Map.Entry<String,Map<String,Map<String,Double>>> e 
-                 : remappedTestKey.entrySet()) {
+                 : goldKey.entrySet()) {
             String term = e.getKey();
-            Map<String,Map<String,Double>> instances = e.getValue();
-            for (Map.Entry<String,Map<String,Double>> e2 
-                     : instances.entrySet()) {
-                String instance = e2.getKey();
-                Map<String,Double> senses = e2.getValue();
-                StringBuilder sb = new StringBuilder(term);
-                sb.append(' ').append(instance);
-                for (Map.Entry<String,Double> e3 : senses.entrySet()) {
-                    sb.append(' ').append(e3.getKey())
-                        .append('/').append(e3.getValue());
-                }
-                pw.println(sb);
+            Map<String,Map<String,Double>> testInstances = testKey.get(term);
+            String hash = IncrementalScoreCache.hash(
+                term, termToNumberSenses.get(term), e.getValue(),
+                testInstances, gold);
+            termToHash.put(term, hash);
+            if (cache.get(term, hash) == null) {
+                changedGold.put(term, e.getValue());
+                if (testInstances != null)
+                    changedTest.put(term, testInstances);
             }
         }
-    }
+        verbose(LOGGER, "Scoring %d of %d terms; the rest are cached",
+                changedGold.size(), goldKey.size());
+
+        Map<String,Map<String,Map<String,Double>>> changedRemapped = 
+            new LinkedHashMap<String,Map<String,Map<String,Double>>>();
+        ScoreAccumulator changed = new ScoreAccumulator(gold, true);
+        if (!changedGold.isEmpty()) {
+            runEval(evaluation, keyMapper, gold, changedGold, changedTest,
+                    changedRemapped, termToNumberSenses, changed);
+        }
+        Map<String,Double> changedScores = changed.getInstanceScores();
+
+        // Group the new scores by term, keeping the order in which they were
+        // computed so that the sums are the same as for a full run
+        Map<String,List<String>> termToInstances = 
+            new HashMap<String,List<String>>();
+        for (String instance : changedScores.keySet()) {
+            String term = gold.getWord(instance);
+            List<String> instances = termToInstances.get(term);
+            if (instances == null) {
+                instances = new ArrayList<String>();
+                termToInstances.put(term, instances);
+            }
+            instances.add(instance);
+        }
 
-    static class InstanceComparator implements Comparator<String> {
-
-        /**
-         * Compares instances labeled as term.pos.number, sorting them by term,
-         * pos, and number.
-         */
-        public int compare(String s1, String s2) {
-            String[] arr1 = s1.split("\\.");
-            String[] arr2 = s2.split("\\.");
-            // Sort by term first
-            int m = arr1[0].compareTo(arr2[0]);
-            if (m != 0)
-                return m;
-            // Then by pos
-            m = arr1[1].compareTo(arr2[1]);
-            if (m != 0)
-                return m;
-            // Last by number
-            int i = Integer.parseInt(arr1[2]);
-            int j = Integer.parseInt(arr2[2]);
-            return i - j;
+        Map<String,Double> instanceScores = new LinkedHashMap<String,Double>();
+        for (String term : goldKey.keySet()) {
+            String hash = termToHash.get(term);
+            IncrementalScoreCache.TermResult result = cache.get(term, hash);
+            if (result == null) {
+                List<String> instances = termToInstances.get(term);
+                if (instances == null)
+                    instances = Collections.<String>emptyList();
+                double[] scores = new double[instances.size()];
+                for (int i = 0; i < scores.length; ++i)
+                    scores[i] = changedScores.get(instances.get(i));
+                // Copy the remapped ratings into maps whose iteration order
+                // survives being cached
+                Map<String,Map<String,Double>> remapped = null;
+                if (keyMapper != null) {
+                    remapped = new LinkedHashMap<String,Map<String,Double>>();
+                    Map<String,Map<String,Double>> m = changedRemapped.get(term);
+                    if (m != null) {
+                        for (Map.Entry<String,Map<String,Double>> e : m.entrySet())
+                            remapped.put(e.getKey(), 
+                                new LinkedHashMap<String,Double>(e.getValue()));
+                    }
+                }
+                result = new IncrementalScoreCache.TermResult(
+                    hash, instances.toArray(new String[instances.size()]), 
+                    scores, remapped);
+                cache.put(term, result);
+            }
+            for (int i = 0; i < result.instances.length; ++i)
+                instanceScores.put(result.instances[i], result.scores[i]);
+            if (remappedTestKey != null && result.remapped != null)
+                remappedTestKey.put(term, result.remapped);
         }
+
+        cache.retainAll(goldKey.keySet());
+        cache.save();
+        return instanceScores;
     }
 }
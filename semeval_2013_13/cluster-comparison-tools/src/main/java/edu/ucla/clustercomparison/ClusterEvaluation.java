@@ -0,0 +1,56 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+import java.util.List;
+
+
+/**
+ * An evaluation that compares the gold and test clusterings of each term's
+ * instances, such as {@link FuzzyBCubed}, {@link
+ * FuzzyNormalizedMutualInformation} or {@link FuzzyRandIndex}.  Unlike an
+ * {@link Evaluation}, which scores each instance, a clustering evaluation
+ * scores each term as a whole.  Implementations should not keep any state
+ * between terms, as a {@link ClusterEvaluator} may evaluate several terms at
+ * once.
+ */
+public interface ClusterEvaluation {
+
+    /**
+     * Returns the names of the scores computed for each term, which are the
+     * columns of the report after the term
+     */
+    public String[] getScoreNames();
+
+    /**
+     * Returns the scores of a term's labelings, in the order of {@link
+     * #getScoreNames()}.
+     */
+    public TermScore evaluate(TermLabelings labelings);
+
+    /**
+     * Returns the scores for all terms from the scores of each term.  A term
+     * that the test key does not label scores 0 for each of its scores.
+     */
+    public double[] summarize(List<double[]> termScores);
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+import java.io.File;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import java.util.logging.Logger;
+
+import static edu.ucla.sspace.util.LoggerUtil.verbose;
+
+
+/**
+ * The driver that scores every term of a gold key with one or more {@link
+ * ClusterEvaluation} instances.  Each term's labelings are converted into a
+ * {@link TermLabelings} once and shared by all of the evaluations, and the
+ * terms are evaluated in parallel.  The keys are only read, so the same loaded
+ * keys may be scored any number of times.
+ */
+public class ClusterEvaluator {
+
+    /**
+     * The logger for this class
+     */
+    private static final Logger LOGGER = 
+        Logger.getLogger(ClusterEvaluator.class.getName());
+
+    /**
+     * The number of threads with which terms are evaluated
+     */
+    private final int numThreads;
+
+    /**
+     * Creates an evaluator that uses one thread per available processor.
+     */
+    public ClusterEvaluator() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ClusterEvaluator(int numThreads) {
+        if (numThreads < 1)
+            throw new IllegalArgumentException(
+                "Must use at least one thread: " + numThreads);
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * Prints the reports of Fuzzy B-Cubed, Fuzzy Normalized Mutual Information
+     * and the Fuzzy Rand Index between two keys, which are only loaded once.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.out.println("java ClusterEvaluator gold.key to-evaluate.key");
+            return;
+        }
+        Map<String,Map<String,Map<String,Double>>> goldKey = 
+            KeyUtil.loadKey(new File(args[0]));
+        Map<String,Map<String,Map<String,Double>>> testKey = 
+            KeyUtil.loadKey(new File(args[1]));
+        ReportSink sink = new TextReportSink();
+        for (Report report : new ClusterEvaluator().evaluate(
+                 goldKey, testKey, new FuzzyBCubed(),
+                 new FuzzyNormalizedMutualInformation(), new FuzzyRandIndex()))
+            sink.write(report);
+    }
+
+    /**
+     * Scores the test key against every term in the gold key with each of the
+     * evaluations, returning their reports in the same order.  The rows of a
+     * report follow the order of the terms in the gold key, and its total row
+     * is labeled {@code all}.
+     */
+    public Report[] evaluate(
+            final Map<String,Map<String,Map<String,Double>>> goldKey,
+            final Map<String,Map<String,Map<String,Double>>> testKey,
+            final ClusterEvaluation... evaluations) {
+
+        List<String> terms = new ArrayList<String>(goldKey.keySet());
+        List<Future<TermScore[]>> futures = 
+            new ArrayList<Future<TermScore[]>>(terms.size());
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            for (final String term : terms) {
+                final Map<String,Map<String,Double>> testInstances = 
+                    testKey.get(term);
+                // Terms the test key does not label are scored as 0 below
+                if (testInstances == null) {
+                    futures.add(null);
+                    continue;
+                }
+                futures.add(executor.submit(new Callable<TermScore[]>() {
+                        public TermScore[] call() {
+                            TermLabelings labelings = new TermLabelings(
+                                goldKey.get(term), testInstances);
+                            TermScore[] scores = 
+                                new TermScore[evaluations.length];
+                            for (int i = 0; i < scores.length; ++i)
+                                scores[i] = evaluations[i].evaluate(labelings);
+                            return scores;
+                        }
+                    }));
+            }
+
+            Report[] reports = new Report[evaluations.length];
+            List<List<double[]>> termScores = new ArrayList<List<double[]>>();
+            for (int i = 0; i < evaluations.length; ++i) {
+                String[] names = evaluations[i].getScoreNames();
+                String[] columns = new String[names.length + 1];
+                columns[0] = "term";
+                System.arraycopy(names, 0, columns, 1, names.length);
+                reports[i] = new Report(columns);
+                termScores.add(new ArrayList<double[]>(terms.size()));
+            }
+
+            for (int t = 0; t < terms.size(); ++t) {
+                String term = terms.get(t);
+                Future<TermScore[]> f = futures.get(t);
+                TermScore[] scores = (f == null) ? null : f.get();
+                verbose(LOGGER, "Evaluated %s", term);
+                for (int i = 0; i < evaluations.length; ++i) {
+                    if (scores == null) {
+                        double[] zeros = 
+                            new double[evaluations[i].getScoreNames().length];
+                        reports[i].addNote(term + 
+                            " had no instances labeled in the evaluation key");
+                        reports[i].addRow(term, zeros);
+                        termScores.get(i).add(zeros);
+                    }
+                    else {
+                        double[] values = scores[i].getValues();
+                        reports[i].addRow(term, scores[i].getComment(), values);
+                        termScores.get(i).add(values);
+                    }
+                }
+            }
+
+            for (int i = 0; i < evaluations.length; ++i) {
+                reports[i].setTotal(
+                    "all", evaluations[i].summarize(termScores.get(i)));
+            }
+            return reports;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(
+                "Interrupted while evaluating the terms", ie);
+        } catch (ExecutionException ee) {
+            throw new IllegalStateException(
+                "Could not evaluate the terms", ee.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+import java.util.Arrays;
+
+
+/**
+ * A sparse matrix in <a
+ * href="http://en.wikipedia.org/wiki/Sparse_matrix#Compressed_sparse_row_.28CSR_or_CRS.29">compressed
+ * sparse row</a> format.  Matrices are built from a list of {@code (row, col,
+ * value)} entries, where entries for the same cell are summed in the order in
+ * which they were added, so that the cell values are exactly those that would
+ * have been accumulated in a dense {@code double[][]}.
+ */
+class CompressedRowMatrix {
+
+    /**
+     * The number of rows
+     */
+    private final int rows;
+
+    /**
+     * The number of columns
+     */
+    private final int cols;
+
+    /**
+     * The offset into {@link #colIndices} and {@link #values} at which each row
+     * starts.  The last element is the number of non-zero cells.
+     */
+    private final int[] rowStarts;
+
+    /**
+     * The column of each non-zero cell, sorted within each row
+     */
+    private final int[] colIndices;
+
+    /**
+     * The value of each non-zero cell
+     */
+    private final double[] values;
+
+    private CompressedRowMatrix(int rows, int cols, int[] rowStarts,
+                                int[] colIndices, double[] values) {
+        this.rows = rows;
+        this.cols = cols;
+        this.rowStarts = rowStarts;
+        this.colIndices = colIndices;
+        this.values = values;
+    }
+
+    /**
+     * Returns the number of rows
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * Returns the number of columns
+     */
+    public int columns() {
+        return cols;
+    }
+
+    /**
+     * Returns the number of cells that have an entry
+     */
+    public int entries() {
+        return rowStarts[rows];
+    }
+
+    /**
+     * Returns the fraction of the matrix's cells that have an entry
+     */
+    public double fillRatio() {
+        return (rows == 0 || cols == 0)
+            ? 0 : entries() / ((double)rows * cols);
+    }
+
+    /**
+     * Returns {@code true} if any row has no entries or has entries that sum
+     * to zero.
+     */
+    public boolean hasEmptyRow() {
+        for (int r = 0; r < rows; ++r) {
+            double sum = 0;
+            for (int i = rowStarts[r]; i < rowStarts[r+1]; ++i)
+                sum += values[i];
+            if (sum == 0)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Divides each row by the sum of its values.
+     */
+    public void normalizeRows() {
+        for (int r = 0; r < rows; ++r) {
+            double sum = 0;
+            for (int i = rowStarts[r]; i < rowStarts[r+1]; ++i)
+                sum += values[i];
+            for (int i = rowStarts[r]; i < rowStarts[r+1]; ++i)
+                values[i] /= sum;
+        }
+    }
+
+    /**
+     * Multiplies the sparse row vector by this matrix, writing the product
+     * into {@code result}.
+     *
+     * @param vectorIndices the rows that are non-zero in the vector, in
+     *        increasing order
+     * @param vectorValues the value for each of the indices
+     * @param length the number of non-zero values in the vector
+     * @param result an array of length {@link #columns()} into which the
+     *        product is written
+     */
+    public void multiply(int[] vectorIndices, double[] vectorValues,
+                         int length, double[] result) {
+        Arrays.fill(result, 0);
+        for (int k = 0; k < length; ++k) {
+            int r = vectorIndices[k];
+            double v = vectorValues[k];
+            for (int i = rowStarts[r]; i < rowStarts[r+1]; ++i)
+                result[colIndices[i]] += v * values[i];
+        }
+    }
+
+    /**
+     * Returns this matrix as a dense array
+     */
+    public double[][] toDense() {
+        double[][] dense = new double[rows][cols];
+        for (int r = 0; r < rows; ++r) {
+            for (int i = rowStarts[r]; i < rowStarts[r+1]; ++i)
+                dense[r][colIndices[i]] = values[i];
+        }
+        return dense;
+    }
+
+    /**
+     * A builder that accumulates {@code (row, col, value)} entries for a
+     * matrix.  Each entry is summed into its cell as it is added, so the
+     * memory used depends on the number of distinct cells rather than on the
+     * number of entries.  Small matrices are accumulated in a dense array,
+     * and larger ones in an open-addressed table of the cells of each row.
+     */
+    static class Builder {
+
+        /**
+         * The largest number of cells for which the entries are accumulated
+         * in a dense array
+         */
+        static final int DENSE_THRESHOLD = 1 << 20;
+
+        private final int rows;
+
+        private final int cols;
+
+        /**
+         * The value of each cell in row-major order, or {@code null} if the
+         * matrix is too large to accumulate densely
+         */
+        private final double[] dense;
+
+        /**
+         * Whether an entry has been added for each cell of {@link #dense}
+         */
+        private final boolean[] hasEntry;
+
+        /**
+         * The cells of each row, or {@code null} if the matrix is accumulated
+         * densely.  A row's table is created with its first entry.
+         */
+        private final RowTable[] sparse;
+
+        public Builder(int rows, int cols) {
+            this.rows = rows;
+            this.cols = cols;
+            if ((long)rows * cols <= DENSE_THRESHOLD) {
+                dense = new double[rows * cols];
+                hasEntry = new boolean[rows * cols];
+                sparse = null;
+            }
+            else {
+                dense = null;
+                hasEntry = null;
+                sparse = new RowTable[rows];
+            }
+        }
+
+        /**
+         * Adds {@code value} to the cell at {@code (row, col)}.
+         */
+        public void add(int row, int col, double value) {
+            if (row < 0 || row >= rows || col < 0 || col >= cols)
+                throw new IndexOutOfBoundsException(
+                    "(" + row + ", " + col + ") is outside the " + rows +
+                    " x " + cols + " matrix");
+            if (dense != null) {
+                int cell = row * cols + col;
+                dense[cell] += value;
+                hasEntry[cell] = true;
+            }
+            else {
+                RowTable table = sparse[row];
+                if (table == null) {
+                    table = new RowTable();
+                    sparse[row] = table;
+                }
+                table.add(col, value);
+            }
+        }
+
+        /**
+         * Returns the matrix of all the entries added so far.
+         */
+        public CompressedRowMatrix build() {
+            int[] rowStarts = new int[rows + 1];
+            int numEntries = 0;
+            for (int r = 0; r < rows; ++r) {
+                if (dense != null) {
+                    for (int c = 0; c < cols; ++c) {
+                        if (hasEntry[r * cols + c])
+                            numEntries++;
+                    }
+                }
+                else if (sparse[r] != null)
+                    numEntries += sparse[r].size;
+                rowStarts[r + 1] = numEntries;
+            }
+
+            int[] colIndices = new int[numEntries];
+            double[] values = new double[numEntries];
+            for (int r = 0; r < rows; ++r) {
+                int n = rowStarts[r];
+                if (dense != null) {
+                    for (int c = 0; c < cols; ++c) {
+                        int cell = r * cols + c;
+                        if (hasEntry[cell]) {
+                            colIndices[n] = c;
+                            values[n] = dense[cell];
+                            n++;
+                        }
+                    }
+                }
+                else if (sparse[r] != null)
+                    sparse[r].copyTo(colIndices, values, n);
+            }
+            return new CompressedRowMatrix(rows, cols, rowStarts,
+                                           colIndices, values);
+        }
+    }
+
+    /**
+     * An open-addressed hash table from the columns of a row to their values,
+     * which uses linear probing
+     */
+    private static class RowTable {
+
+        /**
+         * The column of each slot plus one, or 0 if the slot is empty
+         */
+        private int[] keys;
+
+        /**
+         * The value of each slot
+         */
+        private double[] values;
+
+        /**
+         * The number of occupied slots
+         */
+        int size;
+
+        RowTable() {
+            keys = new int[8];
+            values = new double[8];
+        }
+
+        void add(int col, double value) {
+            int slot = find(keys, col);
+            if (keys[slot] == 0) {
+                // Keep the table at most half full
+                if ((size + 1) * 2 > keys.length) {
+                    grow();
+                    slot = find(keys, col);
+                }
+                keys[slot] = col + 1;
+                size++;
+            }
+            values[slot] += value;
+        }
+
+        /**
+         * Returns the slot holding {@code col}, or the empty slot where it
+         * would be added
+         */
+        private static int find(int[] keys, int col) {
+            int mask = keys.length - 1;
+            int slot = (col * 0x9E3779B9) >>> 1 & mask;
+            while (keys[slot] != 0 && keys[slot] != col + 1)
+                slot = (slot + 1) & mask;
+            return slot;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            double[] oldValues = values;
+            keys = new int[oldKeys.length * 2];
+            values = new double[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; ++i) {
+                if (oldKeys[i] != 0) {
+                    int slot = find(keys, oldKeys[i] - 1);
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        /**
+         * Writes the columns of the row in increasing order and their values
+         * into the arrays, starting at {@code offset}
+         */
+        void copyTo(int[] colIndices, double[] cellValues, int offset) {
+            int n = offset;
+            for (int i = 0; i < keys.length; ++i) {
+                if (keys[i] != 0)
+                    colIndices[n++] = keys[i] - 1;
+            }
+            Arrays.sort(colIndices, offset, n);
+            for (int k = offset; k < n; ++k)
+                cellValues[k] = values[find(keys, colIndices[k])];
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * A sweep over thresholds on the confidence of a test key's labels, which
+ * reports the precision, recall and F-score that the key would have if every
+ * instance labeled with less confidence than the threshold were left
+ * unanswered.  The instances are scored once, with the sense mapping learned
+ * from the full test key, and sorted by decreasing confidence, so that the
+ * scores at every threshold come from prefix sums over the sorted scores.
+ * Answered instances without a confidence are kept at every threshold.
+ *
+ * <p> The thresholds are either every distinct confidence or the confidences
+ * at evenly spaced quantiles.  With {@code n} quantiles, threshold {@code i}
+ * is the confidence at rank {@code floor(i * m / n)} of the {@code m} answered
+ * confidences in increasing order, so threshold 0 keeps every instance.
+ */
+public class ConfidenceSweep {
+
+    /**
+     * The confidence of each instance's labels
+     */
+    private final Map<String,Double> confidences;
+
+    /**
+     * The number of quantiles used as thresholds, or 0 to use every distinct
+     * confidence
+     */
+    private final int numQuantiles;
+
+    /**
+     * Creates a sweep over every distinct confidence, none of which may be
+     * {@code NaN}.
+     */
+    public ConfidenceSweep(Map<String,Double> confidences) {
+        this(confidences, 0);
+    }
+
+    /**
+     * Creates a sweep over the confidences at {@code numQuantiles} evenly
+     * spaced quantiles, or over every distinct confidence if {@code
+     * numQuantiles} is 0.
+     */
+    public ConfidenceSweep(Map<String,Double> confidences, int numQuantiles) {
+        if (numQuantiles < 0)
+            throw new IllegalArgumentException(
+                "The number of quantiles must be non-negative: " + 
+                numQuantiles);
+        this.confidences = confidences;
+        this.numQuantiles = numQuantiles;
+    }
+
+    /**
+     * Loads the confidence of each instance from a file with one instance per
+     * line, followed by its confidence after a space or tab.  Lines that are
+     * empty or start with {@code #} are ignored.
+     */
+    public static Map<String,Double> loadConfidences(File file) 
+            throws IOException {
+        Map<String,Double> confidences = new HashMap<String,Double>();
+        BufferedReader br = new BufferedReader(new FileReader(file));
+        try {
+            int lineNo = 1;
+            for (String line = null; (line = br.readLine()) != null; lineNo++) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#"))
+                    continue;
+                String[] arr = line.split("\\s+");
+                try {
+                    if (arr.length != 2)
+                        throw new NumberFormatException();
+                    double confidence = Double.parseDouble(arr[1]);
+                    if (Double.isNaN(confidence))
+                        throw new NumberFormatException();
+                    confidences.put(arr[0], confidence);
+                } catch (NumberFormatException nfe) {
+                    throw new IllegalStateException(
+                        "Malformed confidence on line " + lineNo + 
+                        " in file " + file + ":\n" + line);
+                }
+            }
+        } finally {
+            br.close();
+        }
+        return confidences;
+    }
+
+    /**
+     * Returns the report of the precision, recall, F-score and fraction of
+     * answered instances at each threshold, with thresholds in increasing
+     * order.  Precision and recall are computed as by {@link BaseScorer}.
+     *
+     * @param instanceScores the score of each answered instance
+     * @param numInstances the number of instances in the gold key
+     */
+    public Report sweep(Map<String,Double> instanceScores, int numInstances) {
+        // Sort the answered instances by decreasing confidence
+        int m = instanceScores.size();
+        Scored[] scored = new Scored[m];
+        int i = 0;
+        for (Map.Entry<String,Double> e : instanceScores.entrySet()) {
+            Double c = confidences.get(e.getKey());
+            scored[i++] = new Scored((c == null) 
+                                     ? Double.POSITIVE_INFINITY : c,
+                                     e.getValue());
+        }
+        Arrays.sort(scored);
+
+        // prefix[k] is the sum of the scores of the k most confident instances
+        double[] prefix = new double[m + 1];
+        for (i = 0; i < m; ++i)
+            prefix[i + 1] = prefix[i] + scored[i].score;
+
+        Report report = new Report("threshold", "precision", "recall", 
+                                   "f-score", "coverage");
+        double[] thresholds = thresholds(scored);
+        for (double threshold : thresholds) {
+            int k = numAtLeast(scored, threshold);
+            double precision = (k > 0) ? prefix[k] / k : 0;
+            double recall = (k == numInstances) 
+                ? precision
+                : precision * ((double)k / numInstances);
+            double fscore = (precision + recall > 0) 
+                ? (2 * precision * recall) / (precision + recall)
+                : 0;
+            report.addRow(String.valueOf(threshold), precision, recall, 
+                          fscore, (double)k / numInstances);
+        }
+        return report;
+    }
+
+    /**
+     * Returns the thresholds in increasing order, given the instances in
+     * order of decreasing confidence
+     */
+    private double[] thresholds(Scored[] scored) {
+        // The instances without a confidence come first and are not used as
+        // thresholds
+        int start = 0;
+        while (start < scored.length 
+                   && scored[start].confidence == Double.POSITIVE_INFINITY)
+            start++;
+        // The remaining confidences in increasing order
+        double[] sorted = new double[scored.length - start];
+        for (int i = 0; i < sorted.length; ++i)
+            sorted[i] = scored[scored.length - 1 - i].confidence;
+
+        double[] thresholds = new double[(numQuantiles == 0) 
+                                         ? sorted.length : numQuantiles];
+        int n = 0;
+        for (int i = 0; i < thresholds.length; ++i) {
+            double t = (numQuantiles == 0)
+                ? sorted[i]
+                : (sorted.length == 0) 
+                    ? Double.NEGATIVE_INFINITY
+                    : sorted[(int)((long)i * sorted.length / numQuantiles)];
+            if (n == 0 || t != thresholds[n - 1])
+                thresholds[n++] = t;
+        }
+        return Arrays.copyOf(thresholds, n);
+    }
+
+    /**
+     * Returns the number of instances whose confidence is at least {@code
+     * threshold}, given the instances in order of decreasing confidence
+     */
+    private static int numAtLeast(Scored[] scored, double threshold) {
+        int lo = 0;
+        int hi = scored.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (scored[mid].confidence >= threshold)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * The confidence and score of an answered instance, which are ordered by
+     * decreasing confidence
+     */
+    private static class Scored implements Comparable<Scored> {
+
+        final double confidence;
+
+        final double score;
+
+        Scored(double confidence, double score) {
+            this.confidence = confidence;
+            this.score = score;
+        }
+
+        public int compareTo(Scored s) {
+            return Double.compare(s.confidence, confidence);
+        }
+    }
+}
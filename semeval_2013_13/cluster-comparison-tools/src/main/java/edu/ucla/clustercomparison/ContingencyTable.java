@@ -0,0 +1,308 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+import java.util.Map;
+
+
+/**
+ * The sparse contingency table between the hard gold and test clusterings of
+ * one term's instances, from which measures such as {@link VMeasure}, {@link
+ * PairedFScore} and {@link AdjustedRandIndex} are computed in time linear in
+ * the number of instances.  The cell of gold cluster {@code g} and test cluster
+ * {@code k} holds the number of instances in both, and only the nonzero cells
+ * are stored, in rows by gold cluster.  The number of pairs of instances that
+ * share a cluster is computed from the cells and the marginal sizes of the
+ * clusters, so no pairs of instances are visited.
+ *
+ * <p> A graded labeling is made hard by assigning each instance to its highest
+ * rated sense, with ties broken in favor of the sense seen first.  An instance
+ * without any senses, such as a gold instance the test key does not label, is
+ * put in a cluster of its own.
+ */
+public class ContingencyTable {
+
+    /**
+     * The number of instances in the table
+     */
+    private final int numInstances;
+
+    /**
+     * The number of instances in each gold and test cluster
+     */
+    private final int[] goldSizes;
+    private final int[] testSizes;
+
+    /**
+     * The index in {@link #cellClusters} and {@link #cellCounts} of the first
+     * cell of each gold cluster, with an extra entry for the end of the last
+     */
+    private final int[] rowStarts;
+
+    /**
+     * The test cluster of each nonzero cell
+     */
+    private final int[] cellClusters;
+
+    /**
+     * The number of instances in each nonzero cell
+     */
+    private final int[] cellCounts;
+
+    /**
+     * Creates the table of two hard clusterings of the same instances.
+     *
+     * @param goldClusters the gold cluster of each instance, in [0, {@code
+     *        numGoldClusters})
+     * @param testClusters the test cluster of each instance, in [0, {@code
+     *        numTestClusters})
+     */
+    public ContingencyTable(int[] goldClusters, int numGoldClusters,
+                            int[] testClusters, int numTestClusters) {
+        if (goldClusters.length != testClusters.length)
+            throw new IllegalArgumentException(
+                "The clusterings have different numbers of instances: " +
+                goldClusters.length + " and " + testClusters.length);
+        numInstances = goldClusters.length;
+        goldSizes = sizes(goldClusters, numGoldClusters);
+        testSizes = sizes(testClusters, numTestClusters);
+
+        // Group the instances by their gold cluster with a counting sort
+        int[] next = new int[numGoldClusters + 1];
+        for (int g = 0; g < numGoldClusters; ++g)
+            next[g + 1] = next[g] + goldSizes[g];
+        int[] byGold = new int[numInstances];
+        for (int i = 0; i < numInstances; ++i)
+            byGold[next[goldClusters[i]]++] = i;
+
+        // Count the test clusters of each gold cluster's instances, using a
+        // dense row of counts that is cleared by revisiting the cells touched
+        int[] row = new int[numTestClusters];
+        int[] clusters = new int[numInstances];
+        int[] counts = new int[numInstances];
+        rowStarts = new int[numGoldClusters + 1];
+        int numCells = 0;
+        int start = 0;
+        for (int g = 0; g < numGoldClusters; ++g) {
+            rowStarts[g] = numCells;
+            int end = start + goldSizes[g];
+            for (int k = start; k < end; ++k) {
+                int t = testClusters[byGold[k]];
+                if (row[t]++ == 0)
+                    clusters[numCells++] = t;
+            }
+            for (int c = rowStarts[g]; c < numCells; ++c) {
+                counts[c] = row[clusters[c]];
+                row[clusters[c]] = 0;
+            }
+            start = end;
+        }
+        rowStarts[numGoldClusters] = numCells;
+        cellClusters = new int[numCells];
+        cellCounts = new int[numCells];
+        System.arraycopy(clusters, 0, cellClusters, 0, numCells);
+        System.arraycopy(counts, 0, cellCounts, 0, numCells);
+    }
+
+    /**
+     * Returns the number of instances in each cluster, checking that every
+     * instance's cluster is in range
+     */
+    private static int[] sizes(int[] clusters, int numClusters) {
+        int[] sizes = new int[numClusters];
+        for (int i = 0; i < clusters.length; ++i) {
+            int c = clusters[i];
+            if (c < 0 || c >= numClusters)
+                throw new IllegalArgumentException(
+                    "Instance " + i + " has an invalid cluster: " + c);
+            sizes[c]++;
+        }
+        return sizes;
+    }
+
+    /**
+     * Returns the table of the hard clusterings of a term's instances in the
+     * two keys.  Test labels for instances that are not in the gold labeling
+     * are ignored.
+     */
+    public static ContingencyTable create(
+            Map<String,Map<String,Double>> instanceToGoldRatings,
+            Map<String,Map<String,Double>> instanceToTestRatings) {
+        return create(new TermLabelings(instanceToGoldRatings,
+                                        instanceToTestRatings));
+    }
+
+    /**
+     * Returns the table of the hard clusterings of the labelings
+     */
+    public static ContingencyTable create(TermLabelings l) {
+        int n = l.numInstances();
+        int[] goldClusters = new int[n];
+        int[] testClusters = new int[n];
+        int numGoldClusters = harden(l.goldLabels, l.goldRatings, 
+                                     l.numGoldSenses(), goldClusters);
+        int numTestClusters = harden(l.testLabels, l.testRatings, 
+                                     l.numTestSenses(), testClusters);
+        return new ContingencyTable(goldClusters, numGoldClusters,
+                                    testClusters, numTestClusters);
+    }
+
+    /**
+     * Writes the highest rated sense of each instance into {@code clusters},
+     * giving the instances without senses clusters of their own after the
+     * senses, and returns the number of clusters.
+     */
+    private static int harden(int[][] labels, double[][] ratings, 
+                              int numSenses, int[] clusters) {
+        int numClusters = numSenses;
+        for (int i = 0; i < labels.length; ++i) {
+            int[] senses = labels[i];
+            if (senses.length == 0) {
+                clusters[i] = numClusters++;
+                continue;
+            }
+            // The senses are sorted, so ties go to the sense seen first
+            int best = senses[0];
+            for (int k = 1; k < senses.length; ++k) {
+                if (ratings[i][senses[k]] > ratings[i][best])
+                    best = senses[k];
+            }
+            clusters[i] = best;
+        }
+        return numClusters;
+    }
+
+    public int numInstances() {
+        return numInstances;
+    }
+
+    public int numGoldClusters() {
+        return goldSizes.length;
+    }
+
+    public int numTestClusters() {
+        return testSizes.length;
+    }
+
+    /**
+     * Returns the number of nonzero cells in the table
+     */
+    public int numCells() {
+        return cellCounts.length;
+    }
+
+    /**
+     * Returns the number of pairs of instances that share a gold cluster
+     */
+    public long goldPairs() {
+        return pairs(goldSizes);
+    }
+
+    /**
+     * Returns the number of pairs of instances that share a test cluster
+     */
+    public long testPairs() {
+        return pairs(testSizes);
+    }
+
+    /**
+     * Returns the number of pairs of instances that share both a gold and a
+     * test cluster
+     */
+    public long sharedPairs() {
+        return pairs(cellCounts);
+    }
+
+    /**
+     * Returns the number of pairs of instances
+     */
+    public long totalPairs() {
+        return pairs(numInstances);
+    }
+
+    private static long pairs(int[] sizes) {
+        long pairs = 0;
+        for (int size : sizes)
+            pairs += pairs(size);
+        return pairs;
+    }
+
+    private static long pairs(int size) {
+        return ((long)size * (size - 1)) / 2;
+    }
+
+    /**
+     * Returns the entropy of the gold clustering, H(C)
+     */
+    public double goldEntropy() {
+        return entropy(goldSizes);
+    }
+
+    /**
+     * Returns the entropy of the test clustering, H(K)
+     */
+    public double testEntropy() {
+        return entropy(testSizes);
+    }
+
+    private double entropy(int[] sizes) {
+        double entropy = 0;
+        for (int size : sizes) {
+            if (size > 0) {
+                double p = size / (double)numInstances;
+                entropy -= p * Math.log(p);
+            }
+        }
+        return entropy;
+    }
+
+    /**
+     * Returns the conditional entropy of the gold clustering given the test
+     * clustering, H(C|K)
+     */
+    public double goldEntropyGivenTest() {
+        double entropy = 0;
+        for (int c = 0; c < cellCounts.length; ++c) {
+            double count = cellCounts[c];
+            entropy -= (count / numInstances)
+                * Math.log(count / testSizes[cellClusters[c]]);
+        }
+        return entropy;
+    }
+
+    /**
+     * Returns the conditional entropy of the test clustering given the gold
+     * clustering, H(K|C)
+     */
+    public double testEntropyGivenGold() {
+        double entropy = 0;
+        for (int g = 0; g < goldSizes.length; ++g) {
+            for (int c = rowStarts[g]; c < rowStarts[g + 1]; ++c) {
+                double count = cellCounts[c];
+                entropy -= (count / numInstances)
+                    * Math.log(count / goldSizes[g]);
+            }
+        }
+        return entropy;
+    }
+}
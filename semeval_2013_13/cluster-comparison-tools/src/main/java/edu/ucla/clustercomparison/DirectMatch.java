@@ -62,4 +62,49 @@ public class DirectMatch extends AbstractEvaluation {
         String s2 = testSenseRatings.keySet().iterator().next();
         return (s1.equals(s2)) ? 1 : 0;
     }
+
+    /**
+     * Returns the gold sense as a {@link SenseSet} of the term's senses.
+     */
+    @Override final Object prepareGold(SenseDictionary termSenses,
+                                       Map<String,Double> goldSenseRatings) {
+        return termSenses.encode(goldSenseRatings);
+    }
+
+    /**
+     * Returns this class, so every direct match shares the encoded gold senses.
+     */
+    @Override final Object getPreparationKey() {
+        return DirectMatch.class;
+    }
+
+    /**
+     * Returns 1 if the ratings have the same sense and 0 if they do not,
+     * comparing the bits of the senses if the gold sense was prepared as a
+     * {@link SenseSet}.
+     *
+     * @throws IllegalArgumentException if either rating contains more than one
+     *         sense
+     */
+    @Override protected double evaluateInstance(
+            Object preparedGold,
+            Map<String,Double> goldSenseRatings,
+            Map<String,Double> testSenseRatings,
+            int numSenses) {
+        if (preparedGold == null) 
+            return evaluateInstance(goldSenseRatings, testSenseRatings, 
+                                    numSenses);
+        if (goldSenseRatings.size() > 1 || testSenseRatings.size() > 1) {
+            throw new IllegalArgumentException(
+                "The DirectMatch Evaluation cannot be computed for ratings " +
+                "with more than one sense per instance.");
+        }
+
+        if (goldSenseRatings.isEmpty() || testSenseRatings.isEmpty())
+            return 0;
+
+        SenseSet gold = (SenseSet)preparedGold;
+        return gold.hasSameSenses(gold.getDictionary().encode(testSenseRatings))
+            ? 1 : 0;
+    }
 }
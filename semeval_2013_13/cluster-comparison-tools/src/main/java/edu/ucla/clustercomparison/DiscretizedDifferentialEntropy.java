@@ -22,6 +22,8 @@
 
 package edu.ucla.clustercomparison;
 
+import java.util.Arrays;
+
 
 /**
  * A class for computing an approximation of <a
@@ -63,6 +65,11 @@ public class DiscretizedDifferentialEntropy {
      */
     private static final int DEFAULT_NUMBER_OF_BINS = 10;
 
+    /**
+     * The loops used to discretize the samples
+     */
+    private static final VectorOps OPS = VectorOps.get();
+
     /**
      * Computes the multinomial approximation of the probability density
      * function of the variable samples in {@code var1samples}, and returns the
@@ -96,17 +103,17 @@ public class DiscretizedDifferentialEntropy {
         
         double numSamples = var1samples.length;
         
-        Counter<Integer> binCounts = new Counter<Integer>();
+        int[] binCounts = new int[numBins];
         // Discretizes the samples into bins
-        for (int i = 0; i < var1samples.length; ++i) {
-            double v1 = var1samples[i];
-            binCounts.count(bin(v1, numBins));
-        }
+        int[] bins = new int[var1samples.length];
+        OPS.bin(var1samples, var1samples.length, numBins, bins);
+        for (int b : bins)
+            binCounts[b]++;
         
         double entropy = 0;
         for (int i = 0; i < numBins; ++i) {
             // Count how many items appeared in this bin
-            int count = binCounts.get(i);
+            int count = binCounts[i];
             if (count > 0) {
                 double prob = count / numSamples;
                 entropy += prob * Log.log2(prob);
@@ -160,19 +167,21 @@ public class DiscretizedDifferentialEntropy {
         
         double numSamples = var1samples.length;
         
-        Counter<Pair> jointBins = new Counter<Pair>();
+        // The count of joint bin (i, j) is at i * numBins + j
+        int[] jointBins = new int[numBins * numBins];
         // Discretizes the samples into bins
-        for (int i = 0; i < var1samples.length; ++i) {
-            double v1 = var1samples[i];
-            double v2 = var2samples[i];
-            jointBins.count(new Pair(bin(v1, numBins), bin(v2, numBins)));
-        }
+        int[] bins1 = new int[var1samples.length];
+        int[] bins2 = new int[var1samples.length];
+        OPS.bin(var1samples, var1samples.length, numBins, bins1);
+        OPS.bin(var2samples, var1samples.length, numBins, bins2);
+        for (int i = 0; i < bins1.length; ++i)
+            jointBins[bins1[i] * numBins + bins2[i]]++;
         
         double jointEntropy = 0;
         for (int i = 0; i < numBins; ++i) {
             for (int j = 0; j < numBins; ++j) {
                 // Count how many items appeared in this joint bin
-                int count = jointBins.get(new Pair(i, j));
+                int count = jointBins[i * numBins + j];
                 if (count > 0) {
                     double prob = count / numSamples;
                     jointEntropy += prob * Log.log2(prob);
@@ -182,6 +191,69 @@ public class DiscretizedDifferentialEntropy {
         return -jointEntropy - compute(var2samples);
     }
 
+    /**
+     * Returns the entropy of the multinomial approximating the distribution
+     * of the sparse samples, which is the same as {@link #compute(double[],int)
+     * compute} would return for the dense samples.
+     */
+    static double compute(SparseSamples var1samples) {
+        return var1samples.entropy;
+    }
+
+    /**
+     * Returns the conditional entropy of the multinomials approximating the
+     * distributions of the two sparse samples, which is the same as {@link
+     * #compute(double[],double[],int) compute} would return for the dense
+     * samples.  The joint counts are built by merging the nonzero samples of
+     * the two variables, with the samples that are zero in both counted by
+     * subtraction, so the cost depends only on the number of nonzero samples.
+     */
+    static double compute(SparseSamples var1samples, 
+                          SparseSamples var2samples) {
+        if (var1samples.numSamples != var2samples.numSamples
+                || var1samples.numBins != var2samples.numBins)
+            throw new IllegalArgumentException(
+                "The samples have different sizes or numbers of bins");
+        final int numBins = var1samples.numBins;
+        double numSamples = var1samples.numSamples;
+
+        // The count of joint bin (i, j) is at i * numBins + j
+        int[] jointBins = new int[numBins * numBins];
+        int[] indices1 = var1samples.indices;
+        int[] indices2 = var2samples.indices;
+        int[] bins1 = var1samples.bins;
+        int[] bins2 = var2samples.bins;
+        int a = 0;
+        int b = 0;
+        int numNonzero = 0;
+        while (a < indices1.length || b < indices2.length) {
+            int i1 = (a < indices1.length) ? indices1[a] : Integer.MAX_VALUE;
+            int i2 = (b < indices2.length) ? indices2[b] : Integer.MAX_VALUE;
+            // A sample that is zero falls into the first bin
+            if (i1 < i2)
+                jointBins[bins1[a++] * numBins]++;
+            else if (i1 > i2)
+                jointBins[bins2[b++]]++;
+            else
+                jointBins[bins1[a++] * numBins + bins2[b++]]++;
+            numNonzero++;
+        }
+        jointBins[0] += var1samples.numSamples - numNonzero;
+
+        double jointEntropy = 0;
+        for (int i = 0; i < numBins; ++i) {
+            for (int j = 0; j < numBins; ++j) {
+                // Count how many items appeared in this joint bin
+                int count = jointBins[i * numBins + j];
+                if (count > 0) {
+                    double prob = count / numSamples;
+                    jointEntropy += prob * Log.log2(prob);
+                }
+            }
+        }
+        return -jointEntropy - var2samples.entropy;
+    }
+
     /**
      * Returns {@code true} if all the values in the sample are in the expected
      * range of [0,1].  This methods is used entirely for assertion-based input
@@ -206,4 +278,108 @@ public class DiscretizedDifferentialEntropy {
         }
         return numBins - 1;
     }
+
+    /**
+     * The samples of a variable, most of which are zero, stored as the
+     * indices and bins of the nonzero samples in increasing order of index.
+     * The entropy of the samples is computed once when they are created.
+     */
+    static class SparseSamples {
+
+        /**
+         * The total number of samples, including those that are zero
+         */
+        final int numSamples;
+
+        /**
+         * The number of bins into which the samples are discretized
+         */
+        final int numBins;
+
+        /**
+         * The sorted indices of the nonzero samples
+         */
+        final int[] indices;
+
+        /**
+         * The bin of each nonzero sample
+         */
+        final int[] bins;
+
+        /**
+         * The entropy of the discretized samples
+         */
+        final double entropy;
+
+        /**
+         * Creates the samples using the default number of bins.
+         *
+         * @param numSamples the total number of samples
+         * @param indices the increasing indices of the nonzero samples, of
+         *        which the first {@code length} are used
+         * @param values the value of each nonzero sample, bounded in (0,1]
+         * @param length the number of nonzero samples
+         */
+        SparseSamples(int numSamples, int[] indices, double[] values,
+                      int length) {
+            this(numSamples, indices, values, length, DEFAULT_NUMBER_OF_BINS);
+        }
+
+        SparseSamples(int numSamples, int[] indices, double[] values,
+                      int length, int numBins) {
+            if (length > numSamples)
+                throw new IllegalArgumentException(
+                    "More nonzero samples than samples: " + length);
+            this.numSamples = numSamples;
+            this.numBins = numBins;
+            this.indices = Arrays.copyOf(indices, length);
+            this.bins = new int[length];
+            OPS.bin(values, length, numBins, bins);
+
+            int[] binCounts = new int[numBins];
+            for (int b : bins)
+                binCounts[b]++;
+            // The zero samples all fall into the first bin
+            binCounts[0] += numSamples - length;
+            double e = 0;
+            for (int i = 0; i < numBins; ++i) {
+                int count = binCounts[i];
+                if (count > 0) {
+                    double prob = count / (double)numSamples;
+                    e += prob * Log.log2(prob);
+                }
+            }
+            entropy = -e;
+        }
+
+        /**
+         * Returns the number of nonzero samples
+         */
+        int numNonzero() {
+            return indices.length;
+        }
+
+        /**
+         * Returns the number of indices at which both these samples and
+         * {@code other} are nonzero
+         */
+        int overlap(SparseSamples other) {
+            int[] indices2 = other.indices;
+            int overlap = 0;
+            int a = 0;
+            int b = 0;
+            while (a < indices.length && b < indices2.length) {
+                if (indices[a] < indices2[b])
+                    a++;
+                else if (indices[a] > indices2[b])
+                    b++;
+                else {
+                    overlap++;
+                    a++;
+                    b++;
+                }
+            }
+            return overlap;
+        }
+    }
 }
@@ -24,20 +24,16 @@ package edu.ucla.clustercomparison;
 
 import java.io.File;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Random;
 
 
 /**
  * A command-line class for computing Fuzzy B-Cubed between two senses labelings
  */
-public class FuzzyBCubed {
+public class FuzzyBCubed implements ClusterEvaluation {
 
     public static void main(String[] args) throws Exception {
         if (args.length != 2) {
@@ -46,9 +42,41 @@ public class FuzzyBCubed {
         }
         score(new File(args[0]), new File(args[1]));
     }
+
+    /**
+     * The settings for when and how a term's scores are estimated by sampling
+     */
+    private final PairSampling sampling;
+
+    /**
+     * Creates the evaluation with the {@link PairSampling#DEFAULT default}
+     * sampling settings.
+     */
+    public FuzzyBCubed() {
+        this(PairSampling.DEFAULT);
+    }
+
+    public FuzzyBCubed(PairSampling sampling) {
+        this.sampling = sampling;
+    }
         
+    /**
+     * Computes Fuzzy B-Cubed between the two keys, printing the report as text
+     * to {@code System.out} and returning the precision, recall and F-score
+     * averaged over all terms.
+     */
     public static double[] score(File goldKeyFile, 
                                  File testKeyFile) throws Exception {
+        return score(goldKeyFile, testKeyFile, new TextReportSink());
+    }
+
+    /**
+     * Computes Fuzzy B-Cubed between the two keys, writing the report to
+     * {@code reportSink} and returning the precision, recall and F-score
+     * averaged over all terms.
+     */
+    public static double[] score(File goldKeyFile, File testKeyFile,
+                                 ReportSink reportSink) throws Exception {
         
         // Load both keys
         Map<String,Map<String,Map<String,Double>>> goldKey = 
@@ -56,106 +84,66 @@ public class FuzzyBCubed {
         Map<String,Map<String,Map<String,Double>>> testKey = 
             KeyUtil.loadKey(testKeyFile);
 
-        Map<String,Double> termToAvgPrecision = new HashMap<String,Double>();
-        Map<String,Double> termToAvgRecall = new HashMap<String,Double>();
-
-        for (Map.Entry<String,Map<String,Map<String,Double>>> e : goldKey.entrySet()) {
-            String term = e.getKey();
-            Map<String,Map<String,Double>> instanceToGoldRatings = e.getValue();
-            Map<String,Map<String,Double>> instanceToTestRatings = testKey.get(term);
-
-            // Check that there are ratings for this word, and if not, note that
-            // it had zero for both scores and continue to the next work
-            if (instanceToTestRatings == null) {
-                System.out.printf("%s had no instances labeled in the evaluation key%n",
-                                  term);
-                termToAvgPrecision.put(term, 0d);
-                termToAvgRecall.put(term, 0d);
-                continue;
-            }
-
-            // NOTE: sometimes the gold key will contain fewer instances than
-            // the test key, e.g., when the provided gold key is only a subset
-            // of the instances and the user is providing their same systems
-            // key.  In such cases, the correct behavior is to filter down the
-            // test key to only contain those instances in the gold key.  Thanks
-            // to Jing Wang for noticing this bug.
-            instanceToTestRatings.keySet()
-                .retainAll(instanceToGoldRatings.keySet());
-
-            double[] result = computeBCubed(instanceToGoldRatings, 
-                                            instanceToTestRatings);
+        Report report = new ClusterEvaluator()
+            .evaluate(goldKey, testKey, new FuzzyBCubed())[0];
+        reportSink.write(report);
+        Report.Row all = report.getTotal();
+        return new double[] { all.getValue(0), all.getValue(1), 
+                              all.getValue(2) };
+    }
 
-            double avgPrecision = result[0];
-            double avgRecall = result[1];
+    public String[] getScoreNames() {
+        return new String[] { "precision", "recall", "f-score" };
+    }
 
-            termToAvgPrecision.put(term, avgPrecision);
-            termToAvgRecall.put(term, avgRecall);            
+    /**
+     * Returns the term's precision, recall and F-score.  Large terms are
+     * estimated by sampling, in which case the confidence intervals are
+     * reported in the comment.
+     */
+    public TermScore evaluate(TermLabelings labelings) {
+        if (sampling.shouldSample(labelings.numInstances())) {
+            PairSampling.Estimate[] est = estimate(labelings, sampling);
+            return new TermScore(
+                "sampled: 95% CI precision " + est[0].lower() + " - " 
+                + est[0].upper() + ", recall " + est[1].lower() + " - " 
+                + est[1].upper() + ", " + est[0].numSamples() + " pairs",
+                est[0].value(), est[1].value(), 
+                fScore(est[0].value(), est[1].value()));
         }
+        double[] result = compute(labelings, sampling);
+        return new TermScore(result[0], result[1], 
+                             fScore(result[0], result[1]));
+    }
 
+    /**
+     * Returns the precision and recall averaged over all terms, and their
+     * F-score.
+     */
+    public double[] summarize(List<double[]> termScores) {
         double pSum = 0;
         double rSum = 0;
-
-        // Generate the report
-        System.out.println("===================================================================");
-        System.out.println("term\tprecision\trecall\tf-score");
-        System.out.println("-------------------------------------------------------------------");
-        for (Map.Entry<String,Double> e : termToAvgPrecision.entrySet()) {
-            String term = e.getKey();
-            double avgPrecision = e.getValue();
-            double avgRecall = termToAvgRecall.get(term);
-            double fScore = 
-                (avgPrecision + avgRecall > 0) 
-                ? (2 * avgPrecision * avgRecall) / (avgPrecision + avgRecall)
-                : 0;
-
-            System.out.println(term + "\t" + avgPrecision + "\t" + avgRecall + "\t" + fScore);
-            pSum += avgPrecision;
-            rSum += avgRecall;
+        for (double[] scores : termScores) {
+            pSum += scores[0];
+            rSum += scores[1];
         }
-        System.out.println("-------------------------------------------------------------------");
-        // Print out the aggregate
-        double precision = pSum / termToAvgPrecision.size();
-        double recall = rSum / termToAvgPrecision.size();
-        double fscore = (precision + recall > 0) 
-            ? (2 * precision * recall) / (precision + recall)
-            : 0;
-            
-        System.out.println("all\t" + precision + "\t" + recall + "\t" + fscore);        
-        System.out.println("===================================================================");
-        
-        return new double[] { precision, recall, fscore };
+        double precision = pSum / termScores.size();
+        double recall = rSum / termScores.size();
+        return new double[] { precision, recall, fScore(precision, recall) };
     }
 
-    /**
-     * Computes the fuzzy agreement between two items, each represented as
-     * mappings from their assigned clusters to those clusters' membership
-     * weights.
-     */
-    static double fuzzyAgreement(Map<String,Double> c1weights, 
-                                 Map<String,Double> c2weights) {
-        Set<String> clusters = new HashSet<String>(c1weights.keySet());
-        clusters.retainAll(c2weights.keySet());
-        
-        if (clusters.isEmpty())
-            return 0;
-        
-        double agreement = 0;
-        for (String c : clusters) {
-            Double w1 = c1weights.get(c);
-            if (w1 == null)
-                w1 = 0d;
-            Double w2 = c2weights.get(c);
-            if (w2 == null)
-                w2 = 0d;
-            agreement += 1 - Math.abs(w1 - w2);
-        }
-        return agreement;
+    private static double fScore(double precision, double recall) {
+        return (precision + recall > 0) 
+            ? (2 * precision * recall) / (precision + recall)
+            : 0;
     }
 
     /**
      * Computes Fuzzy B-Cubed between two labeings for the instances of a term,
      * returning an array containg the fuzzy precision and recall values.
+     * Terms with more instances than the {@link PairSampling#DEFAULT default}
+     * size threshold are estimated by sampling.  Test labels for instances
+     * that are not in the gold labeling are ignored.
      *
      * @param instanceToGoldRatings a mapping from the instance identifier to
      *        the sense ratings for that instance, represented as a map from
@@ -163,121 +151,250 @@ public class FuzzyBCubed {
      */
     public static double[] computeBCubed(Map<String,Map<String,Double>> instanceToGoldRatings,
                                          Map<String,Map<String,Double>> instanceToTestRatings) {
+        return computeBCubed(instanceToGoldRatings, instanceToTestRatings,
+                             PairSampling.DEFAULT);
+    }
 
-        double precisionSum = 0;        
-        double recallSum = 0;        
-        
-        // For each pair-wise comparison of elements, compute the precision
-        for (Map.Entry<String,Map<String,Double>> e
-                 : instanceToGoldRatings.entrySet()) {
-            String instance1Id = e.getKey();
-            Map<String,Double> i1goldRatings = e.getValue();
-            Map<String,Double> i1testRatings = instanceToTestRatings.get(instance1Id);
-            if (i1testRatings == null)
-                i1testRatings = Collections.<String,Double>emptyMap();
-
-            Set<String> i1clusters = i1goldRatings.keySet();
-           
-            int i1precisionCount = 0;
-            double i1precisionSum = 0;
-
-            // Find all the instances in the gold key that have any of its clusters
-            for (Map.Entry<String,Map<String,Double>> e2
-                 : instanceToGoldRatings.entrySet()) {
-
-                if (instance1Id.equals(e2.getKey()))
+    /**
+     * Computes Fuzzy B-Cubed between two labeings for the instances of a term,
+     * returning an array containg the fuzzy precision and recall values.
+     * Terms with more instances than the size threshold of {@code sampling}
+     * are estimated by sampling.
+     */
+    public static double[] computeBCubed(Map<String,Map<String,Double>> instanceToGoldRatings,
+                                         Map<String,Map<String,Double>> instanceToTestRatings,
+                                         PairSampling sampling) {
+        return compute(new TermLabelings(instanceToGoldRatings, 
+                                         instanceToTestRatings), sampling);
+    }
+
+    private static double[] compute(TermLabelings l, PairSampling sampling) {
+        if (sampling.shouldSample(l.numInstances())) {
+            PairSampling.Estimate[] est = estimate(l, sampling);
+            return new double[] { est[0].value(), est[1].value() };
+        }
+
+        final int n = l.numInstances();
+
+        // The running precision and recall sums of each instance, and the
+        // number of instances with which it shares a gold or test cluster
+        double[] i1precisionSums = new double[n];
+        int[] i1precisionCounts = new int[n];
+        double[] i1recallSums = new double[n];
+        int[] i1recallCounts = new int[n];
+
+        // Visit each unordered pair of instances that share a cluster in
+        // either labeling once.  The fuzzy agreements are symmetric, so the
+        // pair's precision and recall are the same for both of its instances.
+        // As the pairs are visited in order of their first instance and then
+        // their second, each instance's sums are accumulated in order of its
+        // partner, as they would be by a separate pass for each instance.
+        for (int i = 0; i < n; ++i) {
+            for (int j = i + 1; j < n; ++j) {
+                boolean inGold = 
+                    TermLabelings.intersects(l.goldLabels[i], l.goldLabels[j]);
+                boolean inTest = 
+                    TermLabelings.intersects(l.testLabels[i], l.testLabels[j]);
+                if (!inGold && !inTest)
                     continue;
 
-                Set<String> i2clusters = e2.getValue().keySet();
+                double goldFuzzyAgreement = goldAgreement(l, i, j);
+                double testFuzzyAgreement = testAgreement(l, i, j);
+                double overlap = 
+                    Math.min(goldFuzzyAgreement, testFuzzyAgreement);
 
                 // If they share at least one common label in the gold standard
-                if (!Collections.disjoint(i1clusters, i2clusters)) {
-                    // Get the second instance's ratings
-                    Map<String,Double> i2goldRatings = e2.getValue();
-                    Map<String,Double> i2testRatings = instanceToTestRatings.get(e2.getKey());
-                    if (i2testRatings == null)
-                        i2testRatings = Collections.<String,Double>emptyMap();
-                    
-                    double goldFuzzyAgreement = 
-                        fuzzyAgreement(i1goldRatings, i2goldRatings);
-                    double testFuzzyAgreement = 
-                        fuzzyAgreement(i1testRatings, i2testRatings);
-                    
-                    if (goldFuzzyAgreement > 0)
-                        i1precisionSum += Math.min(goldFuzzyAgreement, testFuzzyAgreement)
-                            / goldFuzzyAgreement;
-                    i1precisionCount++;
+                if (inGold) {
+                    if (goldFuzzyAgreement > 0) {
+                        double precision = overlap / goldFuzzyAgreement;
+                        i1precisionSums[i] += precision;
+                        i1precisionSums[j] += precision;
+                    }
+                    i1precisionCounts[i]++;
+                    i1precisionCounts[j]++;
                 }
-            }
-
-            // Compute the average precision for this item.  Check for if it was
-            // a singleton cluster
-            double i1precision = (i1precisionCount == 0)
-                ? 0 : i1precisionSum  / i1precisionCount;
-
-            // Add this to the total precision for the solution
-            precisionSum += i1precision;
-        }
-        
-        // For each pair-wise comparison of elements, compute the recall
-        for (Map.Entry<String,Map<String,Double>> e
-                 : instanceToTestRatings.entrySet()) {
-            String instance1Id = e.getKey();
-            Map<String,Double> i1goldRatings = instanceToGoldRatings.get(instance1Id);
-            Map<String,Double> i1testRatings = e.getValue();
-            if (i1goldRatings == null)
-                i1goldRatings = Collections.<String,Double>emptyMap();
-
-            Set<String> i1clusters = i1testRatings.keySet();
-            if (i1clusters.isEmpty())
-                continue;
-            
-            int i1recallCount = 0;
-            double i1recallSum = 0;
-
-            // Find all the instances in the gold key that have any of its clusters
-            for (Map.Entry<String,Map<String,Double>> e2
-                 : instanceToTestRatings.entrySet()) {
-
-                if (instance1Id.equals(e2.getKey()))
-                    continue;
-
-                Set<String> i2clusters = e2.getValue().keySet();
 
                 // If they share at least one common label in the test labeling
-                if (!Collections.disjoint(i1clusters, i2clusters)) {
-                    // Get the second instance's ratings
-                    Map<String,Double> i2goldRatings = instanceToGoldRatings.get(e2.getKey());
-                    Map<String,Double> i2testRatings = e2.getValue();
-                    if (i2goldRatings == null)
-                        i2goldRatings = Collections.<String,Double>emptyMap();
-                    
-                    double goldFuzzyAgreement = 
-                        fuzzyAgreement(i1goldRatings, i2goldRatings);
-                    double testFuzzyAgreement = 
-                        fuzzyAgreement(i1testRatings, i2testRatings);
-                    
-                    if (testFuzzyAgreement > 0)
-                        i1recallSum += Math.min(goldFuzzyAgreement, testFuzzyAgreement)
-                            / testFuzzyAgreement;
- 
-                    i1recallCount++;
+                if (inTest) {
+                    if (testFuzzyAgreement > 0) {
+                        double recall = overlap / testFuzzyAgreement;
+                        i1recallSums[i] += recall;
+                        i1recallSums[j] += recall;
+                    }
+                    i1recallCounts[i]++;
+                    i1recallCounts[j]++;
                 }
             }
+        }
 
-            // Compute the average recall for this item.  Check for if it was a
-            // singleton cluster
-            double i1recall = (i1recallCount == 0) 
-                ? 0 : i1recallSum  / i1recallCount;
-
-            // Add this to the total recall for the solution
-            recallSum += i1recall;
+        double precisionSum = 0;        
+        double recallSum = 0;        
+        for (int i = 0; i < n; ++i) {
+            // Compute the average precision and recall for this item.  Check
+            // for if it was a singleton cluster
+            if (i1precisionCounts[i] > 0)
+                precisionSum += i1precisionSums[i] / i1precisionCounts[i];
+            if (i1recallCounts[i] > 0)
+                recallSum += i1recallSums[i] / i1recallCounts[i];
         }
 
         // Average the scores across all times
-        double precision = precisionSum / instanceToGoldRatings.size();
-        double recall = recallSum / instanceToGoldRatings.size();
+        double precision = precisionSum / n;
+        double recall = recallSum / n;
 
         return new double[] { precision, recall };
     }
+
+    /**
+     * Returns the fuzzy agreement between two instances in the gold labeling
+     */
+    private static double goldAgreement(TermLabelings l, int i, int j) {
+        return TermLabelings.fuzzyAgreement(l.goldLabels[i], l.goldRatings[i],
+                                            l.goldLabels[j], l.goldRatings[j]);
+    }
+
+    /**
+     * Returns the fuzzy agreement between two instances in the test labeling
+     */
+    private static double testAgreement(TermLabelings l, int i, int j) {
+        return TermLabelings.fuzzyAgreement(l.testLabels[i], l.testRatings[i],
+                                            l.testLabels[j], l.testRatings[j]);
+    }
+
+    /**
+     * Estimates Fuzzy B-Cubed between two labelings for the instances of a
+     * term, regardless of their size, returning the estimates of the fuzzy
+     * precision and recall.
+     *
+     * <p> Each sample draws an instance uniformly from the gold labeling and
+     * then one of the instances it shares a cluster with uniformly, so the
+     * mean of the pair scores is an unbiased estimate of the average of the
+     * per-instance precision (or recall) averages.  As in {@link
+     * #computeBCubed(Map,Map)}, instances without such neighbors contribute
+     * zero, and only test instances that are also in the gold labeling are
+     * considered.
+     */
+    public static PairSampling.Estimate[] estimateBCubed(
+            Map<String,Map<String,Double>> instanceToGoldRatings,
+            Map<String,Map<String,Double>> instanceToTestRatings,
+            PairSampling sampling) {
+        return estimate(new TermLabelings(instanceToGoldRatings,
+                                          instanceToTestRatings), sampling);
+    }
+
+    private static PairSampling.Estimate[] estimate(TermLabelings l,
+                                                    PairSampling sampling) {
+        final int n = l.numInstances();
+        if (n == 0) {
+            PairSampling.Estimate zero = new PairSampling.Estimate(0, 0, 0);
+            return new PairSampling.Estimate[] { zero, zero };
+        }
+
+        ClusterIndex goldClusters = 
+            new ClusterIndex(l.goldLabels, l.numGoldSenses());
+        ClusterIndex testClusters = 
+            new ClusterIndex(l.testLabels, l.numTestSenses());
+
+        Random rand = sampling.newRandom();
+        PairSampling.Accumulator precision = new PairSampling.Accumulator();
+        PairSampling.Accumulator recall = new PairSampling.Accumulator();
+        do {
+            int i = rand.nextInt(n);
+
+            double p = 0;
+            int j = goldClusters.sampleNeighbor(i, rand);
+            if (j >= 0) {
+                double goldFuzzyAgreement = goldAgreement(l, i, j);
+                double testFuzzyAgreement = testAgreement(l, i, j);
+                if (goldFuzzyAgreement > 0)
+                    p = Math.min(goldFuzzyAgreement, testFuzzyAgreement)
+                        / goldFuzzyAgreement;
+            }
+            precision.add(p);
+
+            double r = 0;
+            j = testClusters.sampleNeighbor(i, rand);
+            if (j >= 0) {
+                double goldFuzzyAgreement = goldAgreement(l, i, j);
+                double testFuzzyAgreement = testAgreement(l, i, j);
+                if (testFuzzyAgreement > 0)
+                    r = Math.min(goldFuzzyAgreement, testFuzzyAgreement)
+                        / testFuzzyAgreement;
+            }
+            recall.add(r);
+        } while (!sampling.isDone(precision) || !sampling.isDone(recall));
+
+        return new PairSampling.Estimate[] {
+            precision.toEstimate(0, 1), recall.toEstimate(0, 1) };
+    }
+
+    /**
+     * The members of each cluster of a labeling, used to sample the instances
+     * that share a cluster with a given instance
+     */
+    private static class ClusterIndex {
+
+        /**
+         * The sorted clusters of each instance
+         */
+        private final int[][] labels;
+
+        /**
+         * The instances labeled with each cluster
+         */
+        private final int[][] clusterMembers;
+
+        ClusterIndex(int[][] labels, int numClusters) {
+            this.labels = labels;
+            int[] sizes = new int[numClusters];
+            for (int[] clusters : labels) {
+                for (int c : clusters)
+                    sizes[c]++;
+            }
+            clusterMembers = new int[numClusters][];
+            for (int c = 0; c < numClusters; ++c)
+                clusterMembers[c] = new int[sizes[c]];
+            int[] filled = new int[numClusters];
+            for (int i = 0; i < labels.length; ++i) {
+                for (int c : labels[i])
+                    clusterMembers[c][filled[c]++] = i;
+            }
+        }
+
+        /**
+         * Returns an instance drawn uniformly from those other than {@code i}
+         * that share at least one cluster with {@code i}, or -1 if there are
+         * none.  A cluster is picked in proportion to its size and a member
+         * of it uniformly, and a member in {@code m} of {@code i}'s clusters
+         * is then kept with probability {@code 1/m}, which makes every
+         * neighbor equally likely.
+         */
+        int sampleNeighbor(int i, Random rand) {
+            int[] clusters = labels[i];
+            int total = 0;
+            int numNeighbors = 0;
+            for (int c : clusters) {
+                total += clusterMembers[c].length;
+                numNeighbors += clusterMembers[c].length - 1;
+            }
+            if (numNeighbors == 0)
+                return -1;
+            while (true) {
+                int pick = rand.nextInt(total);
+                int k = 0;
+                while (pick >= clusterMembers[clusters[k]].length)
+                    pick -= clusterMembers[clusters[k++]].length;
+                int j = clusterMembers[clusters[k]][pick];
+                if (j == i)
+                    continue;
+                int shared = 0;
+                for (int c : labels[j]) {
+                    if (Arrays.binarySearch(clusters, c) >= 0)
+                        shared++;
+                }
+                if (shared == 1 || rand.nextInt(shared) == 0)
+                    return j;
+            }
+        }
+    }
 }
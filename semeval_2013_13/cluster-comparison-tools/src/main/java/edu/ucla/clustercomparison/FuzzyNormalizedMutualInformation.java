@@ -27,11 +27,10 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+
+import edu.ucla.clustercomparison.DiscretizedDifferentialEntropy.SparseSamples;
 
 
 /**
@@ -41,7 +40,7 @@ import java.util.Set;
  * al. (2009)</a> for computing Normalized Mutual Information between
  * overlapping clusters.
  */
-public class FuzzyNormalizedMutualInformation {
+public class FuzzyNormalizedMutualInformation implements ClusterEvaluation {
 
     public static void main(String[] args) throws Exception {
         if (args.length != 2) {
@@ -51,8 +50,23 @@ public class FuzzyNormalizedMutualInformation {
         score(new File(args[0]), new File(args[1]));
     }
         
+    /**
+     * Computes the Fuzzy Normalized Mutual Information between the two keys,
+     * printing the report as text to {@code System.out} and returning the
+     * average over all terms.
+     */
     public static double score(File goldKeyFile, 
                                File testKeyFile) throws Exception {
+        return score(goldKeyFile, testKeyFile, new TextReportSink());
+    }
+
+    /**
+     * Computes the Fuzzy Normalized Mutual Information between the two keys,
+     * writing the report to {@code reportSink} and returning the average over
+     * all terms.
+     */
+    public static double score(File goldKeyFile, File testKeyFile,
+                               ReportSink reportSink) throws Exception {
 
         // Load the keys, which are returned as mapping from terms to all of
         // their instances' graded sense labelings.
@@ -61,136 +75,69 @@ public class FuzzyNormalizedMutualInformation {
         Map<String,Map<String,Map<String,Double>>> testKey = 
             KeyUtil.loadKey(testKeyFile);
 
-        Map<String,Double> termToNmi = new HashMap<String,Double>();
-
-
-        for (Map.Entry<String,Map<String,Map<String,Double>>> e4 : goldKey.entrySet()) {
-            String term = e4.getKey();
-            Map<String,Map<String,Double>> instanceToGoldRatings = e4.getValue();
-            Map<String,Map<String,Double>> instanceToTestRatings = testKey.get(term);
-
-            // Check that there are ratings for this word, and if not, note that
-            // it had zero for both scores and continue to the next work
-            if (instanceToTestRatings == null) {
-                System.out.printf("%s had no instances labeled in the evaluation key%n",
-                                  term);
-                termToNmi.put(term, 0d);
-                continue;
-            }
-
-            // NOTE: sometimes the gold key will contain fewer instances than
-            // the test key, e.g., when the provided gold key is only a subset
-            // of the instances and the user is providing their same systems
-            // key.  In such cases, the correct behavior is to filter down the
-            // test key to only contain those instances in the gold key.  Thanks
-            // to Jing Wang for noticing this bug.
-            instanceToTestRatings.keySet()
-                .retainAll(instanceToGoldRatings.keySet());
+        Report report = new ClusterEvaluator()
+            .evaluate(goldKey, testKey, 
+                      new FuzzyNormalizedMutualInformation())[0];
+        reportSink.write(report);
+        return report.getTotal().getValue(0);
+    }
 
-            double nmi = computeNmi(instanceToGoldRatings, instanceToTestRatings);
+    public String[] getScoreNames() {
+        return new String[] { "Fuzzy Normalized Mutual Information" };
+    }
 
-            termToNmi.put(term, nmi);
-        }
+    public TermScore evaluate(TermLabelings labelings) {
+        return new TermScore(compute(labelings));
+    }
 
-        // Generate the report
-        System.out.println("===================================================================");
-        System.out.println("term\tFuzzy Normalized Mutual Information");
-        System.out.println("-------------------------------------------------------------------");
+    /**
+     * Returns the Fuzzy Normalized Mutual Information averaged over all terms
+     */
+    public double[] summarize(List<double[]> termScores) {
         double nmiSum = 0;
-        for (Map.Entry<String,Double> e : termToNmi.entrySet()) {
-            String term = e.getKey();
-            double nmi = e.getValue();
-            nmiSum += nmi;
-            System.out.println(term + "\t" + nmi);
-        }
-        System.out.println("-------------------------------------------------------------------");
-        // Print out the aggregate
-        double avgNmi = nmiSum / termToNmi.size();
-        System.out.println("all\t" + avgNmi);
-        System.out.println("===================================================================");
-        return avgNmi;
-
+        for (double[] scores : termScores)
+            nmiSum += scores[0];
+        return new double[] { nmiSum / termScores.size() };
     }
 
     /**
      * Computes the Fuzzy Normalized Mutual Information between the two
-     * clusterings.
+     * clusterings.  Test labels for instances that are not in the gold
+     * clustering are ignored.
      */
     public static double computeNmi(Map<String,Map<String,Double>> instanceToGoldRatings,
                                     Map<String,Map<String,Double>> instanceToTestRatings) {
-            // Compute the set of instances that are mutually labeled with both
-            // gold and test instances
-            Set<String> allInstances = 
-                new HashSet<String>(instanceToGoldRatings.keySet());
-            allInstances.addAll(instanceToTestRatings.keySet());
-            final int N = allInstances.size();
-
-            // Cache the set of gold and test senses
-            Set<String> goldSenses = new HashSet<String>();
-            for (Map<String,Double> m : instanceToGoldRatings.values())
-                for (String s : m.keySet())
-                    goldSenses.add(s);
-            Set<String> testSenses = new HashSet<String>();
-            for (Map<String,Double> m : instanceToTestRatings.values())
-                for (String s : m.keySet())
-                    testSenses.add(s);
-            
-            // Creating a mapping from all senses to their distribution over all
-            // the instances
-            Map<String,double[]> testSensesToDistribution 
-                = new HashMap<String,double[]>();
-            Map<String,double[]> goldSensesToDistribution 
-                = new HashMap<String,double[]>();
-
-            for (String g : goldSenses)
-                goldSensesToDistribution.put(g, new double[N]);
-            for (String t : testSenses)
-                testSensesToDistribution.put(t, new double[N]);
-
-            // Create a maping for all instances to a unique set of indices
-            Indexer<String> instanceToIndex = new Indexer<String>();
-            for (String i : allInstances)
-                instanceToIndex.index(i);
+        return compute(new TermLabelings(instanceToGoldRatings, 
+                                         instanceToTestRatings));
+    }
 
-            // Creating a mapping from all senses to their ratings over all the
-            // instances
-            for (Map.Entry<String,Map<String,Double>> e 
-                     : instanceToGoldRatings.entrySet()) {
-                String instance = e.getKey();
-                for (Map.Entry<String,Double> e2 : e.getValue().entrySet())
-                    goldSensesToDistribution.
-                        get(e2.getKey())[instanceToIndex.get(instance)] = e2.getValue();
-            }
-            for (Map.Entry<String,Map<String,Double>> e 
-                     : instanceToTestRatings.entrySet()) {
-                String instance = e.getKey();
-                for (Map.Entry<String,Double> e2 : e.getValue().entrySet())
-                    testSensesToDistribution.
-                        get(e2.getKey())[instanceToIndex.get(instance)] = e2.getValue();
-            }
+    private static double compute(TermLabelings l) {
+            // Create a mapping from all senses to their distribution over all
+            // the instances.  Most instances are not labeled with a given
+            // sense, so only the nonzero ratings are kept.
+            SparseSamples[] goldSensesToDistribution = distributions(
+                l.goldRatings, l.goldLabels, l.numGoldSenses());
+            SparseSamples[] testSensesToDistribution = distributions(
+                l.testRatings, l.testLabels, l.numTestSenses());
 
             // Compute the entropy for each label set as a whole
             double h_G = 0;
             double h_T = 0;
-            for (Map.Entry<String,double[]> e : testSensesToDistribution.entrySet()) {
-                double de = DiscretizedDifferentialEntropy.compute(e.getValue());
+            for (SparseSamples distribution : testSensesToDistribution) {
+                double de = DiscretizedDifferentialEntropy.compute(distribution);
                 h_T += de;
             }
-            for (Map.Entry<String,double[]> e : goldSensesToDistribution.entrySet()) {
-                double de = DiscretizedDifferentialEntropy.compute(e.getValue());
+            for (SparseSamples distribution : goldSensesToDistribution) {
+                double de = DiscretizedDifferentialEntropy.compute(distribution);
                 h_G += de;
             }
 
             // Compute the conditional entropy of the gold senses given the test
             // senses, i.e., H(G|T)
             double h_GT = 0;
-            for (String gold : goldSenses) {
-                double[] gInstanceRatings = 
-                    goldSensesToDistribution.get(gold);
+            for (SparseSamples gInstanceRatings : goldSensesToDistribution) {
                 double h_gT = Double.MAX_VALUE;
-                for (String test : testSenses) {
-                    double[] tInstanceRatings = 
-                        testSensesToDistribution.get(test);
+                for (SparseSamples tInstanceRatings : testSensesToDistribution) {
                     if (skip(gInstanceRatings, tInstanceRatings))
                         continue;
                     // Compute the relative entropy between the test and gold
@@ -216,13 +163,9 @@ public class FuzzyNormalizedMutualInformation {
             // Compute the conditional entropy of the test senses given the gold
             // senses, i.e., H(G|T)
             double h_TG = 0;
-            for (String test : testSenses) {
-                double[] tInstanceRatings = 
-                    testSensesToDistribution.get(test);
+            for (SparseSamples tInstanceRatings : testSensesToDistribution) {
                 double h_tG = Double.MAX_VALUE;
-                for (String gold : goldSenses) {
-                    double[] gInstanceRatings = 
-                        goldSensesToDistribution.get(gold);
+                for (SparseSamples gInstanceRatings : goldSensesToDistribution) {
                     if (skip(tInstanceRatings, gInstanceRatings))
                         continue;
 
@@ -256,6 +199,45 @@ public class FuzzyNormalizedMutualInformation {
             return nmi;
     }
     
+    /**
+     * Returns the nonzero ratings of each sense over all the instances, in
+     * order of instance
+     */
+    private static SparseSamples[] distributions(double[][] ratings,
+                                                 int[][] labels,
+                                                 int numSenses) {
+        // Count the instances labeled with each sense to size the arrays
+        int[] counts = new int[numSenses];
+        for (int[] senses : labels) {
+            for (int s : senses)
+                counts[s]++;
+        }
+        int[][] indices = new int[numSenses][];
+        double[][] values = new double[numSenses][];
+        for (int s = 0; s < numSenses; ++s) {
+            indices[s] = new int[counts[s]];
+            values[s] = new double[counts[s]];
+        }
+        int[] lengths = new int[numSenses];
+        for (int i = 0; i < labels.length; ++i) {
+            for (int s : labels[i]) {
+                // A sense may be listed with a rating of 0, which is the same
+                // as not being labeled with it
+                double rating = ratings[i][s];
+                if (rating == 0)
+                    continue;
+                indices[s][lengths[s]] = i;
+                values[s][lengths[s]] = rating;
+                lengths[s]++;
+            }
+        }
+        SparseSamples[] distributions = new SparseSamples[numSenses];
+        for (int s = 0; s < numSenses; ++s)
+            distributions[s] = new SparseSamples(
+                labels.length, indices[s], values[s], lengths[s]);
+        return distributions;
+    }
+
     /**
      * Returns the entropy of the value
      */ 
@@ -268,30 +250,26 @@ public class FuzzyNormalizedMutualInformation {
      * (denoted as X and Y) is higher because one is the complement of the
      * other.  See Eq. B.14 in Lancichetti et al. for details.
      */
-    private static boolean skip(double[] X, double[] Y) {
-
-        Counter<String> c = new Counter<String>();
-
-        for (int i = 0; i < X.length; ++i) {
-            double x = X[i];
-            double y = Y[i];
-            String state = null;
-            if (x > 0 && y > 0) 
-                state = "+X+Y";
-            else if (x > 0 && y == 0) 
-                state = "+X-Y";
-            else if (x == 0 && y > 0) 
-                state = "-X+Y";
-            else if (x == 0 && y == 0) 
-                state = "-X-Y";
-            else
-                throw new AssertionError();
-            c.count(state);
-        }
+    private static boolean skip(SparseSamples X, SparseSamples Y) {
+        // Count the items in each of the four membership states from the
+        // items that are in X, Y, or both
+        int both = X.overlap(Y);
+        int xOnly = X.numNonzero() - both;
+        int yOnly = Y.numNonzero() - both;
+        int neither = X.numSamples - xOnly - yOnly - both;
+        double n = X.numSamples;
 
         // NOTE: This is the inverse predicate of what is in Lancichetti et
         // al. since we're testing whether to skip this comparison
-        return h(c.getProbability("+X+Y")) + h(c.getProbability("-X-Y")) 
-            < h(c.getProbability("+X-Y")) + h(c.getProbability("-X+Y"));
+        return h(p(both, n)) + h(p(neither, n)) 
+            < h(p(xOnly, n)) + h(p(yOnly, n));
+    }
+
+    /**
+     * Returns the probability of a state that occurs {@code count} times out
+     * of {@code n}
+     */
+    private static double p(int count, double n) {
+        return (n == 0) ? 0 : count / n;
     }
 }
@@ -22,14 +22,11 @@
 
 package edu.ucla.clustercomparison;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.io.File;
+
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Random;
 
 
 /**
@@ -38,103 +35,124 @@ import java.util.Set;
  * and Rifqi (2009)</a> for comparing to fuzzy sense clusterings, possibly in
  * different sense inventories.
  */
-public class FuzzyRandIndex {
+public class FuzzyRandIndex implements ClusterEvaluation {
+
+    /**
+     * The loops used to compute the distances between ratings
+     */
+    private static final VectorOps OPS = VectorOps.get();
 
     public static void main(String[] args) throws Exception {
         if (args.length != 2) {
             System.out.println("java rand-index.jar gold.key to-evaluate.key");
             return;
         }
+        score(new File(args[0]), new File(args[1]));
+    }
+
+    /**
+     * The settings for when and how a term's index is estimated by sampling
+     */
+    private final PairSampling sampling;
+
+    /**
+     * Creates the evaluation with the {@link PairSampling#DEFAULT default}
+     * sampling settings.
+     */
+    public FuzzyRandIndex() {
+        this(PairSampling.DEFAULT);
+    }
+
+    public FuzzyRandIndex(PairSampling sampling) {
+        this.sampling = sampling;
+    }
+
+    /**
+     * Computes the Fuzzy Rand Index between the two keys, printing the report
+     * as text to {@code System.out} and returning the average over all terms.
+     */
+    public static double score(File goldKeyFile, 
+                               File testKeyFile) throws Exception {
+        return score(goldKeyFile, testKeyFile, new TextReportSink());
+    }
+
+    /**
+     * Computes the Fuzzy Rand Index between the two keys, writing the report
+     * to {@code reportSink} and returning the average over all terms.
+     */
+    public static double score(File goldKeyFile, File testKeyFile,
+                               ReportSink reportSink) throws Exception {
         
         // Load the keys, which are returned as mapping from terms to all of
         // their instances' graded sense labelings.
         Map<String,Map<String,Map<String,Double>>> goldKey = 
-            KeyUtil.loadKey(args[0]);
+            KeyUtil.loadKey(goldKeyFile);
         Map<String,Map<String,Map<String,Double>>> testKey = 
-            KeyUtil.loadKey(args[1]);
-
-        Map<String,Double> termToFri = new HashMap<String,Double>();
-
+            KeyUtil.loadKey(testKeyFile);
 
-        for (Map.Entry<String,Map<String,Map<String,Double>>> e : goldKey.entrySet()) {
-            String term = e.getKey();
-            Map<String,Map<String,Double>> instanceToGoldRatings = e.getValue();
-            Map<String,Map<String,Double>> instanceToTestRatings = testKey.get(term);
-
-            // Check that there are ratings for this word, and if not, note that
-            // it had zero for both scores and continue to the next work
-            if (instanceToTestRatings == null) {
-                System.out.printf("%s had no instances labeled in the evaluation key%n",
-                                  term);
-                termToFri.put(term, 0d);
-                continue;
-            }
-
-            // NOTE: sometimes the gold key will contain fewer instances than
-            // the test key, e.g., when the provided gold key is only a subset
-            // of the instances and the user is providing their same systems
-            // key.  In such cases, the correct behavior is to filter down the
-            // test key to only contain those instances in the gold key.  Thanks
-            // to Jing Wang for noticing this bug.
-            instanceToTestRatings.keySet()
-                .retainAll(instanceToGoldRatings.keySet());
+        Report report = new ClusterEvaluator()
+            .evaluate(goldKey, testKey, new FuzzyRandIndex())[0];
+        reportSink.write(report);
+        return report.getTotal().getValue(0);
+    }
 
-            double fuzzyRandIndex = computeRI(instanceToGoldRatings,
-                                              instanceToTestRatings);
+    public String[] getScoreNames() {
+        return new String[] { "Fuzzy Rand Index" };
+    }
 
-            termToFri.put(term, fuzzyRandIndex);
+    /**
+     * Returns the term's Fuzzy Rand Index.  Large terms are estimated by
+     * sampling, in which case the confidence interval is reported in the
+     * comment.
+     */
+    public TermScore evaluate(TermLabelings labelings) {
+        RatingVectors v = new RatingVectors(labelings);
+        if (sampling.shouldSample(v.gRatings.length)) {
+            PairSampling.Estimate est = estimate(v, sampling);
+            return new TermScore("sampled: 95% CI " + est.lower() + " - " 
+                                 + est.upper() + ", " + est.numSamples() 
+                                 + " pairs", est.value());
         }
+        return new TermScore(compute(v, sampling));
+    }
 
-        // Generate the report
-        System.out.println("===================================================================");
-        System.out.println("term\tFuzzy Rand Index");
-        System.out.println("-------------------------------------------------------------------");
+    /**
+     * Returns the Fuzzy Rand Index averaged over all terms
+     */
+    public double[] summarize(List<double[]> termScores) {
         double friSum = 0;
-        for (Map.Entry<String,Double> e : termToFri.entrySet()) {
-            String term = e.getKey();
-            double fri = e.getValue();
-            friSum += fri;
-            System.out.println(term + "\t" + fri);
-        }
-        System.out.println("-------------------------------------------------------------------");
-        // Print out the aggregate
-        double avgFri = friSum / termToFri.size();
-        System.out.println("all\t" + avgFri);
-        System.out.println("===================================================================");
-
+        for (double[] scores : termScores)
+            friSum += scores[0];
+        return new double[] { friSum / termScores.size() };
     }
 
     /**
-     * Computes the fuzzy Rand Index of the two clusterings
+     * Computes the fuzzy Rand Index of the two clusterings, estimating it by
+     * sampling if the clusterings are larger than the {@link
+     * PairSampling#DEFAULT default} size threshold.
      */
     public static double computeRI(Map<String,Map<String,Double>> instanceToGoldRatings,
                                    Map<String,Map<String,Double>> instanceToTestRatings) {
-            // Compute the set of instances that are mutually labeled with both
-            // gold and test instances
-            Set<String> instancesInCommon = 
-                new HashSet<String>(instanceToGoldRatings.keySet());
-            instancesInCommon.retainAll(instanceToTestRatings.keySet());
-
-            // Get a record of how many senses we see for each labeling in the
-            // mutually labeled set of instances.
-            Set<String> gSenses = new HashSet<String>();
-            Set<String> tSenses = new HashSet<String>();
-            for (String i : instancesInCommon) {
-                gSenses.addAll(instanceToGoldRatings.get(i).keySet());
-                tSenses.addAll(instanceToTestRatings.get(i).keySet());
-            }            
-
-            // Record how many senses were in each label set
-            final int numGoldSenses = gSenses.size();
-            final int numTestSenses = tSenses.size();
-
-            // Compute the maximum distances between two labeling in each label
-            // set.  This is compute on the fly since the number of senses may
-            // change between terms.
-            final double gMaxDist = 
-                distance(fill(gSenses, 1), fill(gSenses, 0), numGoldSenses);
-            final double tMaxDist = 
-                distance(fill(tSenses, 1), fill(tSenses, 0), numTestSenses);
+        return computeRI(instanceToGoldRatings, instanceToTestRatings,
+                         PairSampling.DEFAULT);
+    }
+
+    /**
+     * Computes the fuzzy Rand Index of the two clusterings, estimating it by
+     * sampling if the clusterings are larger than the size threshold of
+     * {@code sampling}.
+     */
+    public static double computeRI(Map<String,Map<String,Double>> instanceToGoldRatings,
+                                   Map<String,Map<String,Double>> instanceToTestRatings,
+                                   PairSampling sampling) {
+        return compute(new RatingVectors(new TermLabelings(
+            instanceToGoldRatings, instanceToTestRatings)), sampling);
+    }
+
+    private static double compute(RatingVectors v, PairSampling sampling) {
+            final int n = v.gRatings.length;
+            if (sampling.shouldSample(n))
+                return estimate(v, sampling).value();
 
             // This is a running sum of the level of discordance between the
             // pairs in the two label sets
@@ -142,32 +160,11 @@ public class FuzzyRandIndex {
 
             // Iterate over all pairs of instances, recording the degree of
             // concordance between the labelings
-            for (String instance1Id : instancesInCommon) {
-                
-                Map<String,Double> gRating1 = instanceToGoldRatings.get(instance1Id);
-                Map<String,Double> tRating1 = instanceToTestRatings.get(instance1Id);
-
-                for (String instance2Id : instancesInCommon) {
-                    // Skip evaluating duplicate pairs
-                    if (instance1Id.equals(instance2Id))
-                        break;
-
-                    Map<String,Double> gRating2 = 
-                        instanceToGoldRatings.get(instance2Id);
-                    Map<String,Double> tRating2 = 
-                        instanceToTestRatings.get(instance2Id);
-                    
-                    // Normalize the values to [0,1]
-                    double gDistance = 
-                        distance(gRating1, gRating2, numGoldSenses) / gMaxDist;
-                    double tDistance = 
-                        distance(tRating1, tRating2, numTestSenses) / tMaxDist;
-                    
-                    fuzzyDiscordanceSum += Math.abs(gDistance - tDistance);
-                }
+            for (int i = 0; i < n; ++i) {
+                for (int j = 0; j < i; ++j)
+                    fuzzyDiscordanceSum += v.discordance(i, j);
             }
 
-            final int n = instancesInCommon.size();
             double fuzzyRandIndex = (n > 1) 
                 ? 1 - (fuzzyDiscordanceSum / ((n * (n-1)) / 2)) 
                 : 0;
@@ -175,32 +172,115 @@ public class FuzzyRandIndex {
     }
 
     /**
-     * Returns a {@link Map} where all the items in {@code s} are associated
-     * with the value {@code d}.
+     * Estimates the fuzzy Rand Index of the two clusterings from a uniform
+     * sample of instance pairs, regardless of their size.
      */
-    private static Map<String,Double> fill(Set<String> s, double d) {
-        Map<String,Double> m = new HashMap<String,Double>();
-        for (String str : s)
-            m.put(str, d);
-        return m;
+    public static PairSampling.Estimate estimateRI(
+            Map<String,Map<String,Double>> instanceToGoldRatings,
+            Map<String,Map<String,Double>> instanceToTestRatings,
+            PairSampling sampling) {
+        return estimate(new RatingVectors(new TermLabelings(
+            instanceToGoldRatings, instanceToTestRatings)), sampling);
+    }
+
+    private static PairSampling.Estimate estimate(RatingVectors v,
+                                                  PairSampling sampling) {
+        final int n = v.gRatings.length;
+        if (n < 2)
+            return new PairSampling.Estimate(0, 0, 0);
+        Random rand = sampling.newRandom();
+        PairSampling.Accumulator acc = new PairSampling.Accumulator();
+        do {
+            // Draw two distinct instances uniformly at random
+            int i = rand.nextInt(n);
+            int j = rand.nextInt(n - 1);
+            if (j >= i)
+                j++;
+            acc.add(v.discordance(i, j));
+        } while (!sampling.isDone(acc));
+        return acc.toEstimate(1, -1);
     }
 
     /**
-     * Returns the Manhattan distance between the instance ratings in the
-     * <i>same</i> label set.
+     * The dense rating vectors of the instances labeled in both clusterings
      */
-    private static double distance(Map<String,Double> rating1,
-                                   Map<String,Double> rating2,
-                                   int numDimensions) {
-        Set<String> union = new HashSet<String>(rating1.keySet());
-        union.addAll(rating2.keySet());
-        double dist = 0;
-        for (String s : union) {
-            double r1 = rating1.containsKey(s) ? rating1.get(s) : 0;
-            double r2 = rating2.containsKey(s) ? rating2.get(s) : 0;
-            dist += Math.abs(r1 - r2);
+    private static class RatingVectors {
+
+        final double[][] gRatings;
+
+        final double[][] tRatings;
+
+        /**
+         * The number of dimensions of the rating vectors
+         */
+        final int gLength;
+
+        final int tLength;
+
+        /**
+         * The maximum distances between two labeling in each label set, which
+         * is between a labeling with all senses rated 1 and one with all
+         * senses rated 0.  This is the number of senses used by the mutually
+         * labeled instances, as the number of senses may change between terms.
+         */
+        final double gMaxDist;
+
+        final double tMaxDist;
+
+        RatingVectors(TermLabelings l) {
+            // Find the instances that are mutually labeled with both gold and
+            // test instances
+            int n = 0;
+            for (int i = 0; i < l.numInstances(); ++i) {
+                if (l.isAnswered(i))
+                    n++;
+            }
+            gRatings = new double[n][];
+            tRatings = new double[n][];
+            boolean[] gSenses = new boolean[l.numGoldSenses()];
+            boolean[] tSenses = new boolean[l.numTestSenses()];
+            int k = 0;
+            for (int i = 0; i < l.numInstances(); ++i) {
+                if (!l.isAnswered(i))
+                    continue;
+                gRatings[k] = l.goldRatings[i];
+                tRatings[k] = l.testRatings[i];
+                for (int s : l.goldLabels[i])
+                    gSenses[s] = true;
+                for (int s : l.testLabels[i])
+                    tSenses[s] = true;
+                k++;
+            }
+            gLength = gSenses.length;
+            tLength = tSenses.length;
+
+            // Record how many senses were in each label set.  The senses only
+            // used by instances without test labels are 0 in every vector and
+            // do not affect the distances.
+            gMaxDist = count(gSenses);
+            tMaxDist = count(tSenses);
+        }
+
+        private static int count(boolean[] flags) {
+            int count = 0;
+            for (boolean b : flags) {
+                if (b)
+                    count++;
+            }
+            return count;
+        }
+
+        /**
+         * Returns the discordance between the two labelings for the pair of
+         * instances
+         */
+        double discordance(int i, int j) {
+            // Normalize the values to [0,1]
+            double gDistance = OPS.l1Distance(
+                gRatings[i], gRatings[j], gLength) / gMaxDist;
+            double tDistance = OPS.l1Distance(
+                tRatings[i], tRatings[j], tLength) / tMaxDist;
+            return Math.abs(gDistance - tDistance);
         }
-        
-        return dist;
     }
 }
@@ -42,9 +42,19 @@ public class GoodmanKruskalGamma extends AbstractEvaluation {
     /**
      * Computes Goodman and Kruskal's gamma between the two sense rankings.
      */
-    public double evaluateInstance(final Map<String,Double> goldSensePerceptions,
-                                   final Map<String,Double> testSensePerceptions,
+    public double evaluateInstance(Map<String,Double> goldSensePerceptions,
+                                   Map<String,Double> testSensePerceptions,
                                    int numSenses) {
+        return evaluateInstance(prepareGold(goldSensePerceptions),
+                                goldSensePerceptions, testSensePerceptions,
+                                numSenses);
+    }
+
+    /**
+     * Returns the {@link GoldRanking} of the gold standard senses.
+     */
+    @Override protected final Object prepareGold(
+            final Map<String,Double> goldSensePerceptions) {
 
         // Sort the gold standard senses so the most perceptible sense is first
         // in the list
@@ -57,41 +67,47 @@ public class GoodmanKruskalGamma extends AbstractEvaluation {
                 }
             });
 
-        // To account for ties, reorder the List as a List<Set<String>> so that
-        // sense with tied positions have the same rank (index).  We need this
-        // list so that we can later add in all the senses from the test ranking
-        // that were not in the gold ranking.
-        List<Set<String>> goldRanking = new ArrayList<Set<String>>();
+        // To account for ties, group the senses so that senses with tied
+        // positions have the same rank, counting the number of tied pairs
         Map<String,Integer> senseToGoldRanking = new HashMap<String,Integer>();
-        for (int i = 0, rank = 0; i < goldSenseOrder.size(); ++i) {
-            String sense = goldSenseOrder.get(i);
-            // If this is the first sense, the we'll have to create a new set
-            // for it
-            if (i == 0) {
-                Set<String> senses = new HashSet<String>();
-                senses.add(sense);
-                goldRanking.add(senses);
-            }
-            // Otherwise, check if the current sense has the same perceptibility
-            // as the previous senses.  If so, then it has the same rank as the
-            // other senses
-            else {
-                double d1 = goldSensePerceptions.get(sense);
-                double d2 = goldSensePerceptions.get(goldSenseOrder.get(i-1));
-                if (d1 == d2) {
-                    goldRanking.get(rank).add(sense);
-                }            
-                // Last, if a later sense does not have the same perceptibility,
-                // then it takes on a lower rank and gets put in its own set.
-                else {
-                    rank++;
-                    Set<String> senses = new HashSet<String>();
-                    senses.add(sense);
-                    goldRanking.add(senses);
-                }
-            }
-            senseToGoldRanking.put(sense, rank);
+        int numRanks = 0;
+        double tiedPairs = 0;
+        for (int i = 0; i < goldSenseOrder.size(); ) {
+            // Find the run of senses with the same perceptibility as the i'th
+            // sense, which all share its rank
+            double d = goldSensePerceptions.get(goldSenseOrder.get(i));
+            int j = i;
+            while (j < goldSenseOrder.size()
+                       && goldSensePerceptions.get(goldSenseOrder.get(j)) == d)
+                senseToGoldRanking.put(goldSenseOrder.get(j++), numRanks);
+            int ties = j - i;
+            if (ties > 1) 
+                tiedPairs += (ties * (ties-1)) * .5;
+            numRanks++;
+            i = j;
         }
+        return new GoldRanking(senseToGoldRanking, numRanks, tiedPairs);
+    }
+
+    /**
+     * Returns this class, so that every instance of the evaluation shares the
+     * gold rankings.
+     */
+    @Override final Object getPreparationKey() {
+        return GoodmanKruskalGamma.class;
+    }
+
+    /**
+     * Computes Goodman and Kruskal's gamma between the two sense rankings,
+     * using the gold ranking computed by {@link #prepareGold(Map)}.
+     */
+    @Override protected double evaluateInstance(
+            Object preparedGold,
+            final Map<String,Double> goldSensePerceptions,
+            final Map<String,Double> testSensePerceptions,
+            int numSenses) {
+
+        GoldRanking goldRanking = (GoldRanking)preparedGold;
 
         // Create a list of the test senses.  Note that this list may contain
         // more senses than are present in the gold standard list.
@@ -149,18 +165,12 @@ public class GoodmanKruskalGamma extends AbstractEvaluation {
         // of making explicit a lower rank that denotes senses who were not
         // perceptible in the first place (i.e., senses whose perceptiblity is
         // 0).
-        Set<String> sensesNotInGold = new HashSet<String>();
+        // The senses not in the gold ranking are added as its last rank
+        // when they are looked up below.
+        int sensesNotInGold = 0;
         for (String sense : testSensePerceptions.keySet()) {
             if (!goldSensePerceptions.containsKey(sense))
-                sensesNotInGold.add(sense);
-        }
-        // If the test ranking contained senses not in the gold standard, add
-        // them as the last ranked
-        if (!sensesNotInGold.isEmpty()) {
-            int lastRankInGold = goldRanking.size();
-            goldRanking.add(sensesNotInGold);
-            for (String sense : sensesNotInGold)
-                senseToGoldRanking.put(sense, lastRankInGold);
+                sensesNotInGold++;
         }
 
         Set<String> sensesNotInTest = new HashSet<String>();
@@ -198,8 +208,8 @@ public class GoodmanKruskalGamma extends AbstractEvaluation {
                 
                 // Get the ranks of each of the two senses in both the gold and
                 // test sense lists
-                int s1goldRank = senseToGoldRanking.get(sense1);
-                int s2goldRank = senseToGoldRanking.get(sense2);
+                int s1goldRank = goldRanking.rank(sense1);
+                int s2goldRank = goldRanking.rank(sense2);
                 int s1testRank = senseToTestRanking.get(sense1);
                 int s2testRank = senseToTestRanking.get(sense2);                
 
@@ -226,13 +236,9 @@ public class GoodmanKruskalGamma extends AbstractEvaluation {
         double d = (.5 * (length * (length-1)));
 
         if (foundTies) {
-            double n1 = 0;
-            for (int i = 0; i < goldRanking.size(); ++i) {
-                Set<String> senses = goldRanking.get(i);
-                int ties = senses.size();
-                if (ties > 1) 
-                    n1 += (ties * (ties-1)) * .5;                
-            }
+            double n1 = goldRanking.tiedPairs;
+            if (sensesNotInGold > 1)
+                n1 += (sensesNotInGold * (sensesNotInGold-1)) * .5;
 
             double n2 = 0;
             for (int i = 0; i < testRanking.size(); ++i) {
@@ -263,4 +269,40 @@ public class GoodmanKruskalGamma extends AbstractEvaluation {
             return (gamma + 1) / 2;
         }
     }
+
+    /**
+     * The ranks of the gold standard senses, where tied senses share the same
+     * rank
+     */
+    private static class GoldRanking {
+
+        private final Map<String,Integer> senseToRank;
+
+        /**
+         * The number of distinct ranks, which is also the rank of any sense
+         * not in the gold standard
+         */
+        private final int numRanks;
+
+        /**
+         * The number of pairs of senses that are tied in the ranking
+         */
+        final double tiedPairs;
+
+        GoldRanking(Map<String,Integer> senseToRank, int numRanks,
+                    double tiedPairs) {
+            this.senseToRank = senseToRank;
+            this.numRanks = numRanks;
+            this.tiedPairs = tiedPairs;
+        }
+
+        /**
+         * Returns the rank of the sense, with senses not in the gold standard
+         * ranked last
+         */
+        int rank(String sense) {
+            Integer rank = senseToRank.get(sense);
+            return (rank == null) ? numRanks : rank;
+        }
+    }
 }
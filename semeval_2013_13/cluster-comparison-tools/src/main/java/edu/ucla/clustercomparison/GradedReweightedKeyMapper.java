@@ -42,6 +42,42 @@ import java.util.logging.Logger;
  */
 public class GradedReweightedKeyMapper implements KeyMapper {
 
+    /**
+     * The default fraction of the mapping matrix's cells that may be non-zero
+     * for the sparse representation to be used.
+     */
+    public static final double DEFAULT_SPARSE_FILL_RATIO = 
+        SenseMapping.DEFAULT_SPARSE_FILL_RATIO;
+
+    /**
+     * The maximum fraction of non-zero cells in a term's mapping matrix for
+     * which the matrix is kept in sparse form.  Terms whose matrices are more
+     * dense are remapped using a {@code double[][]}.
+     */
+    private final double sparseFillRatio;
+
+    /**
+     * Creates a mapper that uses a sparse mapping matrix for terms whose
+     * matrices have at most {@link #DEFAULT_SPARSE_FILL_RATIO} of their cells
+     * filled.
+     */
+    public GradedReweightedKeyMapper() {
+        this(DEFAULT_SPARSE_FILL_RATIO);
+    }
+
+    /**
+     * Creates a mapper that uses a sparse mapping matrix for terms whose
+     * matrices have at most {@code sparseFillRatio} of their cells filled.  A
+     * ratio of {@code 0} always uses a dense matrix and a ratio of {@code 1}
+     * always uses a sparse one.
+     */
+    public GradedReweightedKeyMapper(double sparseFillRatio) {
+        if (sparseFillRatio < 0 || sparseFillRatio > 1)
+            throw new IllegalArgumentException(
+                "The fill ratio must be in [0, 1]: " + sparseFillRatio);
+        this.sparseFillRatio = sparseFillRatio;
+    }
+
     /**
      * Performs a supervised mapping from the senses in the test key file to the
      * gold standard senses using only the specified instances for constructing
@@ -80,7 +116,7 @@ public class GradedReweightedKeyMapper implements KeyMapper {
     /**
      * Performs the remapping process for a single term's instances
      */
-    private static Map<String,Map<String,Double>> 
+    private Map<String,Map<String,Double>> 
             remap(Map<String,Map<String,Double>> goldInstances,
                   Map<String,Map<String,Double>> testInstances,
                   Set<String> trainingInstanceIds) {
@@ -92,105 +128,27 @@ public class GradedReweightedKeyMapper implements KeyMapper {
         if (testInstances == null)
             return remapped;
 
-        // Create a mapping from each of the sense labels to an index in the
-        // mapping matrix
-        Map<String,Integer> goldSenseIds = new LinkedHashMap<String,Integer>();
-        Map<String,Integer> testSenseIds = new LinkedHashMap<String,Integer>();
-
-        for (String instanceId : trainingInstanceIds) {
-            Map<String,Double> gsPerceptions = goldInstances.get(instanceId);
-            Map<String,Double> tsPerceptions = testInstances.get(instanceId);
-            // Check that we had a sense labeling in both keys for this
-            // particular instance
-            if (gsPerceptions == null || tsPerceptions == null)
-                continue;
-            for (String ts : tsPerceptions.keySet()) {
-                if (!testSenseIds.containsKey(ts))
-                    testSenseIds.put(ts, testSenseIds.size());
-            }
-
-            for (String gs : gsPerceptions.keySet()) {
-                if (!goldSenseIds.containsKey(gs))
-                    goldSenseIds.put(gs, goldSenseIds.size());
-            }
-        }
+        SenseMapping mapping = SenseMapping.learn(
+            goldInstances, testInstances, trainingInstanceIds, sparseFillRatio);
 
         // If there were no instances in common
-        if (testSenseIds.size() == 0 || goldSenseIds.size() == 0)
+        if (mapping == null)
             return remapped;
 
-        double[][] mappingMatrix = 
-            new double[testSenseIds.size()][goldSenseIds.size()];
-
-        for (String instanceId : trainingInstanceIds) {
-            Map<String,Double> gsPerceptions = goldInstances.get(instanceId);
-            Map<String,Double> tsPerceptions = testInstances.get(instanceId);
-            // Check that we had a sense labeling in both keys for this
-            // particular instance
-            if (gsPerceptions == null || tsPerceptions == null)
-                continue;
-            for (Map.Entry<String,Double> test : tsPerceptions.entrySet()) {
-                String ts = test.getKey();
-                double tsRating = test.getValue();
-                int tsIndex = testSenseIds.get(ts);
-                for (Map.Entry<String,Double> gold : gsPerceptions.entrySet()) {
-                    String gs = gold.getKey();
-                    double gsRating = gold.getValue();
-                    int gsIndex = goldSenseIds.get(gs);
-                    double score = tsRating * gsRating;
-
-                    mappingMatrix[tsIndex][gsIndex] += score;
-                }
-            }
-        }
-
-        // Normalize the rows of the matrix
-        for (int r = 0; r < mappingMatrix.length; ++r) {
-            double sum = 0;
-            for (int c = 0; c < mappingMatrix[0].length; ++c)
-                sum += mappingMatrix[r][c];
-            for (int c = 0; c < mappingMatrix[0].length; ++c)
-                mappingMatrix[r][c] /= sum;
-        }
-
         // Once the mapping matrix is built, identify the test instances that we
         // should remap
         Set<String> testInstanceIds 
             = new HashSet<String>(testInstances.keySet());
         testInstanceIds.removeAll(trainingInstanceIds);
 
+        double[] result = new double[mapping.numGoldSenses()];
+
         // Iterate over each 
         for (String testInstanceId : testInstanceIds) {
             
-            // This instance's perceptions need to be converted to a row bector
-            // for all these senses
-            Map<String,Double> tsPerceptions = 
-                testInstances.get(testInstanceId);
-            
-            // The result of multiplying the test vector by the
-            // induced-reference sense matrix
-            double[] testVector = new double[mappingMatrix.length];
-            
-            for (Map.Entry<String,Integer> e : testSenseIds.entrySet()) {
-                int col = e.getValue();
-                Double testSensePerception = tsPerceptions.get(e.getKey());
-                // testSensePerception might be null if the test rating is for
-                // an induced sense that was not seen during the mapping stage
-                if (testSensePerception != null) {
-                    testVector[col] = testSensePerception;
-                }
-            }
-            
-            // Multiply the vector by the sense matrix
-            int rows = testVector.length;
-            int cols = mappingMatrix[0].length;
-            double[] result = new double[cols];
-            for (int c = 0; c < cols; ++c) {
-                double resultValue = 0;
-                for (int i = 0; i < rows; ++i)
-                    resultValue += testVector[i] * mappingMatrix[i][c];
-                result[c] = resultValue;
-            }
+            // Multiply this instance's perceptions by the induced-reference
+            // sense matrix
+            mapping.map(testInstances.get(testInstanceId), result);
 
             // Create a mapping from each gold sense to the test senses
             Map<String,Double> remappedPerceptions =
@@ -198,20 +156,8 @@ public class GradedReweightedKeyMapper implements KeyMapper {
 
             for (int i = 0; i < result.length; ++i) {
                 double score = result[i];
-                if (score > 0) {
-                    String gs = null;
-                    for (Map.Entry<String,Integer> e : goldSenseIds.entrySet()) {
-                        if (e.getValue().equals(i)) {
-                            gs = e.getKey();
-                            break;
-                        }
-                    }
-                    if (gs == null)
-                        throw new IllegalStateException(
-                            "Unmapped index " + i + " in " + goldSenseIds);
-
-                    remappedPerceptions.put(gs, score);
-                }
+                if (score > 0) 
+                    remappedPerceptions.put(mapping.goldSense(i), score);
             }
 
             // If we were able to map the test key labeling to at least one
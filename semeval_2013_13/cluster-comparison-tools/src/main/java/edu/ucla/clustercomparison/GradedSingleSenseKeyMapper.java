@@ -45,13 +45,26 @@ import java.util.logging.Logger;
 public class GradedSingleSenseKeyMapper implements KeyMapper {
 
     /**
-     * The {@link KeyMapper} that does the distribution-based remapping, from
-     * which this class selects the highest weighted sense.
+     * The maximum fraction of non-zero cells in a term's mapping matrix for
+     * which the matrix is kept in sparse form.
      */
-    private final GradedReweightedKeyMapper mapper;
+    private final double sparseFillRatio;
     
     public GradedSingleSenseKeyMapper() {
-        mapper = new GradedReweightedKeyMapper();
+        this(GradedReweightedKeyMapper.DEFAULT_SPARSE_FILL_RATIO);
+    }
+
+    /**
+     * Creates a mapper that uses a sparse mapping matrix for terms whose
+     * matrices have at most {@code sparseFillRatio} of their cells filled.
+     *
+     * @see GradedReweightedKeyMapper#GradedReweightedKeyMapper(double)
+     */
+    public GradedSingleSenseKeyMapper(double sparseFillRatio) {
+        if (sparseFillRatio < 0 || sparseFillRatio > 1)
+            throw new IllegalArgumentException(
+                "The fill ratio must be in [0, 1]: " + sparseFillRatio);
+        this.sparseFillRatio = sparseFillRatio;
     }
 
     /**
@@ -76,50 +89,79 @@ public class GradedSingleSenseKeyMapper implements KeyMapper {
                 Map<String,Map<String,Map<String,Double>>> testKey,
                 Set<String> trainingInstanceIds) {
 
-        // Get the graded sense assignments from the mapping using the regular
-        // approach
         Map<String,Map<String,Map<String,Double>>> outputKey 
-            = mapper.convert(goldKey, testKey, trainingInstanceIds);
+            = new LinkedHashMap<String,Map<String,Map<String,Double>>>();
 
-        // Then remove all but the highest weighted sense
-        for (Map<String,Map<String,Double>> m : outputKey.values()) {
-            for (Map<String,Double> m2 : m.values()) {
-                clean(m2);
-            }
+        for (String term : goldKey.keySet()) {
+            Map<String,Map<String,Double>> goldInstances = goldKey.get(term);
+            Map<String,Map<String,Double>> testInstances = testKey.get(term);
+            Map<String,Map<String,Double>> remappedInstances
+                = remap(goldInstances, testInstances, trainingInstanceIds);
+
+            outputKey.put(term, remappedInstances);
         }
-        
         return outputKey;
     }
 
     /**
-     * Removes all but the highest-weighted sense from the sense ratings,
-     * deterministically breaking ties by keeping the sense whose label is
-     * lexicographically least.
+     * Performs the remapping process for a single term's instances, keeping
+     * only the highest weighted sense as each mapped vector is computed.
      */
-    private void clean(Map<String,Double> senseRatings) {
-        if (senseRatings.isEmpty())
-            return;
-
-        Double max = 0d;
-        Set<String> senses = new HashSet<String>();
-        for (Map.Entry<String,Double> e : senseRatings.entrySet()) {
-            if (e.getValue() > max) {
-                max = e.getValue();
-                senses.clear();
-                senses.add(e.getKey());
+    private Map<String,Map<String,Double>> 
+            remap(Map<String,Map<String,Double>> goldInstances,
+                  Map<String,Map<String,Double>> testInstances,
+                  Set<String> trainingInstanceIds) {
+        
+        Map<String,Map<String,Double>> remapped = 
+            new LinkedHashMap<String,Map<String,Double>>();
+
+        // If there were no instances
+        if (testInstances == null)
+            return remapped;
+
+        SenseMapping mapping = SenseMapping.learn(
+            goldInstances, testInstances, trainingInstanceIds, sparseFillRatio);
+
+        // If there were no instances in common
+        if (mapping == null)
+            return remapped;
+
+        // Iterate over the test instances in the same order as the graded
+        // remapping so that the resulting keys are identical
+        Set<String> testInstanceIds 
+            = new HashSet<String>(testInstances.keySet());
+        testInstanceIds.removeAll(trainingInstanceIds);
+
+        double[] result = new double[mapping.numGoldSenses()];
+
+        for (String testInstanceId : testInstanceIds) {
+            mapping.map(testInstances.get(testInstanceId), result);
+
+            // Find the highest-weighted sense, deterministically breaking ties
+            // by keeping the sense whose label is lexicographically least.
+            // Senses with a non-positive weight are never reported.
+            int best = -1;
+            double max = 0;
+            for (int i = 0; i < result.length; ++i) {
+                double score = result[i];
+                if (score > max) {
+                    max = score;
+                    best = i;
+                }
+                else if (best >= 0 && score == max
+                         && mapping.goldSense(i).compareTo(
+                                mapping.goldSense(best)) < 0) {
+                    best = i;
+                }
+            }
+
+            // If the labeling could not be mapped to any gold sense, omit it
+            if (best >= 0) {
+                remapped.put(testInstanceId, Collections.<String,Double>
+                             singletonMap(mapping.goldSense(best), max));
             }
-            else if (e.getValue().equals(max))
-                senses.add(e.getKey());
-        }
-       
-        if (senses.size() == 1) {
-            senseRatings.keySet().retainAll(senses);
-        }
-        // Sort the tied senses so that tie-breaking is deterministic
-        else {
-            SortedSet<String> sorted = new TreeSet<String>(senses);
-            senseRatings.keySet().retainAll(
-                Collections.<String>singleton(sorted.iterator().next()));
         }
+
+        return remapped;
     }
 }
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+
+/**
+ * A persistent cache of the per-term results of a {@link BaseScorer} run,
+ * which allows a later run to only remap and evaluate the terms whose gold or
+ * test labelings have changed.  Each term's results are stored with a content
+ * hash of everything that can affect them: the term's gold instances and their
+ * train/test splits, the term's test instances and its number of senses.  The
+ * cache is only valid for a single evaluation and sense mapping algorithm,
+ * including the inventory files and settings of an {@link
+ * InventoryKeyMapper}, so results for a different configuration are discarded
+ * on loading.  A cache file that cannot be read is also discarded, and the
+ * file is replaced atomically when saved so that an interrupted run does not
+ * leave it truncated.
+ */
+class IncrementalScoreCache {
+
+    /**
+     * The logger for this class
+     */
+    private static final Logger LOGGER =
+        Logger.getLogger(IncrementalScoreCache.class.getName());
+
+    /**
+     * The file in which the cache is stored
+     */
+    private final File cacheFile;
+
+    /**
+     * A description of the evaluation and mapping algorithm for which the
+     * results were computed
+     */
+    private final String configuration;
+
+    /**
+     * The cached results for each term
+     */
+    private final Map<String,TermResult> termToResult;
+
+    /**
+     * The results of a single term
+     */
+    static class TermResult implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The content hash of the term's labelings
+         */
+        final String hash;
+
+        /**
+         * The scored instances, in the order they were evaluated
+         */
+        final String[] instances;
+
+        /**
+         * The score for each instance
+         */
+        final double[] scores;
+
+        /**
+         * The remapped labelings of the term's gold instances, or {@code null}
+         * if the test key was not remapped
+         */
+        final Map<String,Map<String,Double>> remapped;
+
+        TermResult(String hash, String[] instances, double[] scores,
+                   Map<String,Map<String,Double>> remapped) {
+            this.hash = hash;
+            this.instances = instances;
+            this.scores = scores;
+            this.remapped = remapped;
+        }
+    }
+
+    /**
+     * Loads the cache from {@code cacheFile}, or creates an empty cache if the
+     * file does not exist or was created for a different configuration.
+     */
+    IncrementalScoreCache(File cacheFile, Evaluation evaluation,
+                          KeyMapper keyMapper) {
+        this.cacheFile = cacheFile;
+        this.configuration = evaluation.getClass().getName() + " "
+            + describe(keyMapper);
+        Map<String,TermResult> loaded = null;
+        if (cacheFile.exists()) {
+            try {
+                loaded = load(cacheFile, configuration);
+            } catch (IOException ioe) {
+                // This includes truncated and corrupt files, and those
+                // written by an incompatible version of the classes
+                LOGGER.log(Level.WARNING, "Ignoring unreadable cache file " +
+                           cacheFile, ioe);
+            } catch (ClassNotFoundException cnfe) {
+                LOGGER.log(Level.WARNING, "Ignoring unreadable cache file " +
+                           cacheFile, cnfe);
+            } catch (ClassCastException cce) {
+                LOGGER.log(Level.WARNING, "Ignoring unreadable cache file " +
+                           cacheFile, cce);
+            }
+        }
+        termToResult = (loaded == null)
+            ? new HashMap<String,TermResult>() : loaded;
+    }
+
+    /**
+     * Returns the description of the mapping algorithm stored with the
+     * results.  The remapped labels of an {@link InventoryKeyMapper} depend on
+     * its inventories and settings, while those of the other mappers depend
+     * only on the training instances, which are part of each term's hash.
+     */
+    private static String describe(KeyMapper keyMapper) {
+        if (keyMapper == null)
+            return "none";
+        if (keyMapper instanceof InventoryKeyMapper)
+            return ((InventoryKeyMapper)keyMapper).getConfiguration();
+        return keyMapper.getClass().getName();
+    }
+
+    /**
+     * Returns the results stored in the file if they were computed for the
+     * configuration, or {@code null} otherwise.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String,TermResult> load(File cacheFile,
+                                               String configuration)
+            throws IOException, ClassNotFoundException {
+        ObjectInputStream ois = new ObjectInputStream(
+            new GZIPInputStream(new BufferedInputStream(
+                new FileInputStream(cacheFile))));
+        try {
+            String cachedConfiguration = (String)ois.readObject();
+            if (configuration.equals(cachedConfiguration))
+                return (Map<String,TermResult>)ois.readObject();
+            LOGGER.info("Ignoring cached results computed for " +
+                        cachedConfiguration);
+            return null;
+        } finally {
+            ois.close();
+        }
+    }
+
+    /**
+     * Returns the cached results for the term if they were computed for
+     * labelings with the same hash, or {@code null} otherwise.
+     */
+    TermResult get(String term, String hash) {
+        TermResult r = termToResult.get(term);
+        return (r != null && r.hash.equals(hash)) ? r : null;
+    }
+
+    /**
+     * Records the results for the term, replacing any previous results.
+     */
+    void put(String term, TermResult result) {
+        termToResult.put(term, result);
+    }
+
+    /**
+     * Removes the results of all terms not in {@code terms}
+     */
+    void retainAll(Set<String> terms) {
+        termToResult.keySet().retainAll(terms);
+    }
+
+    /**
+     * Writes the cache back to its file.  The cache is first written to a
+     * temporary file in the same directory, which is then renamed over the
+     * cache file.
+     */
+    void save() throws IOException {
+        File dir = cacheFile.getAbsoluteFile().getParentFile();
+        File tmp = File.createTempFile(cacheFile.getName(), ".tmp", dir);
+        boolean saved = false;
+        try {
+            ObjectOutputStream oos = new ObjectOutputStream(
+                new GZIPOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tmp))));
+            try {
+                oos.writeObject(configuration);
+                oos.writeObject(termToResult);
+            } finally {
+                oos.close();
+            }
+            // Some platforms cannot rename over an existing file
+            if (!tmp.renameTo(cacheFile)
+                    && !(cacheFile.delete() && tmp.renameTo(cacheFile)))
+                throw new IOException(
+                    "Could not replace " + cacheFile + " with " + tmp);
+            saved = true;
+        } finally {
+            if (!saved)
+                tmp.delete();
+        }
+    }
+
+    /**
+     * Returns a content hash of everything that can affect the scores of a
+     * term: its gold instances and their splits, its test instances and its
+     * number of senses.
+     */
+    static String hash(String term, int numSenses,
+                       Map<String,Map<String,Double>> goldInstances,
+                       Map<String,Map<String,Double>> testInstances,
+                       PreparedGold gold) {
+        StringBuilder sb = new StringBuilder(term);
+        sb.append('\n').append(numSenses).append('\n');
+        for (Map.Entry<String,Map<String,Double>> e
+                 : goldInstances.entrySet()) {
+            sb.append(e.getKey()).append(' ').append(gold.getFold(e.getKey()));
+            append(sb, e.getValue());
+        }
+        sb.append('\n');
+        if (testInstances != null) {
+            for (Map.Entry<String,Map<String,Double>> e
+                     : testInstances.entrySet()) {
+                sb.append(e.getKey());
+                append(sb, e.getValue());
+            }
+        }
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] digest = md.digest(sb.toString().getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest)
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16))
+                    .append(Character.forDigit(b & 0xF, 16));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new AssertionError(nsae);
+        } catch (UnsupportedEncodingException uee) {
+            throw new AssertionError(uee);
+        }
+    }
+
+    /**
+     * Appends the sense ratings of an instance to the hashed content.
+     */
+    private static void append(StringBuilder sb, Map<String,Double> ratings) {
+        for (Map.Entry<String,Double> e : ratings.entrySet())
+            sb.append(' ').append(e.getKey()).append('/').append(e.getValue());
+        sb.append('\n');
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A writer of per-instance scores in a compact, column-oriented binary format
+ * that can be read back without parsing the text report.  Each row records an
+ * instance, its term, the split in which it was tested, the name of the
+ * evaluation, its score and whether the test key answered it.  Rows are
+ * buffered into blocks of at most {@link #BLOCK_SIZE} rows, and each full
+ * block is written out column by column, so the writer's memory does not grow
+ * with the number of rows.
+ *
+ * <p> All values are big-endian.  A file starts with the {@code int} values
+ * {@link #MAGIC} and {@link #VERSION}, followed by the blocks and a final
+ * {@code int} 0.  A string is written as its {@code int} length in bytes
+ * followed by its UTF-8 bytes.  Each block is written as
+ *
+ * <ol>
+ * <li> the {@code int} number of rows in the block
+ * <li> the {@code int} number of strings added to the dictionary of terms and
+ *      evaluation names by the block, followed by those strings.  Strings are
+ *      numbered from 0 in the order in which they were added, and the
+ *      dictionary is shared by all blocks of the file.
+ * <li> the instance identifiers, as one string per row
+ * <li> the terms, as one {@code int} dictionary number per row
+ * <li> the splits, as one {@code int} per row
+ * <li> the evaluation names, as one {@code int} dictionary number per row
+ * <li> the scores, as one {@code double} per row
+ * <li> the answered flags, packed eight rows per byte, where row {@code i} of
+ *      the block is the bit {@code 1 << (i % 8)} of byte {@code i / 8}
+ * </ol>
+ *
+ * The score of an unanswered instance is 0, which is how it counts towards the
+ * recall of the report.
+ */
+public class InstanceResultWriter implements Closeable {
+
+    /**
+     * The first four bytes of a result file, which are {@code CCIR} in ASCII
+     */
+    static final int MAGIC = 0x43434952;
+
+    /**
+     * The version of the file format
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The maximum number of rows in a block
+     */
+    static final int BLOCK_SIZE = 1 << 16;
+
+    /**
+     * The stream to which the blocks are written
+     */
+    private final DataOutputStream out;
+
+    /**
+     * The number given to each term and evaluation name in the dictionary
+     */
+    private final Map<String,Integer> dictionary;
+
+    /**
+     * The strings added to the dictionary since the last block was written
+     */
+    private final List<String> newStrings;
+
+    /**
+     * The columns of the rows in the current block
+     */
+    private final String[] instances;
+    private final int[] terms;
+    private final int[] folds;
+    private final int[] metrics;
+    private final double[] scores;
+    private final byte[] answered;
+
+    /**
+     * The number of rows in the current block
+     */
+    private int numRows;
+
+    /**
+     * Creates a writer of the rows to {@code file}, replacing any existing
+     * contents.
+     */
+    public InstanceResultWriter(File file) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(file), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        dictionary = new HashMap<String,Integer>();
+        newStrings = new ArrayList<String>();
+        instances = new String[BLOCK_SIZE];
+        terms = new int[BLOCK_SIZE];
+        folds = new int[BLOCK_SIZE];
+        metrics = new int[BLOCK_SIZE];
+        scores = new double[BLOCK_SIZE];
+        answered = new byte[BLOCK_SIZE / 8];
+    }
+
+    /**
+     * Adds the result of one instance, writing out the current block if it is
+     * full.
+     *
+     * @param instance the instance's identifier
+     * @param term the term of the instance
+     * @param fold the split in which the instance was tested
+     * @param metric the name of the evaluation that scored the instance
+     * @param score the instance's score, which should be 0 if the instance
+     *        was not answered
+     * @param isAnswered whether the test key labeled the instance
+     */
+    public void add(String instance, String term, int fold, String metric,
+                    double score, boolean isAnswered) throws IOException {
+        if (numRows == BLOCK_SIZE)
+            writeBlock();
+        int row = numRows++;
+        instances[row] = instance;
+        terms[row] = lookup(term);
+        folds[row] = fold;
+        metrics[row] = lookup(metric);
+        scores[row] = score;
+        if (row % 8 == 0)
+            answered[row / 8] = 0;
+        if (isAnswered)
+            answered[row / 8] |= (byte)(1 << (row % 8));
+    }
+
+    /**
+     * Writes out any remaining rows and the end of the file and closes it.
+     */
+    public void close() throws IOException {
+        try {
+            if (numRows > 0)
+                writeBlock();
+            out.writeInt(0);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns the dictionary number of {@code s}, adding it to the dictionary
+     * if it has not been seen
+     */
+    private int lookup(String s) {
+        Integer i = dictionary.get(s);
+        if (i == null) {
+            i = dictionary.size();
+            dictionary.put(s, i);
+            newStrings.add(s);
+        }
+        return i;
+    }
+
+    /**
+     * Writes the rows of the current block and starts a new one
+     */
+    private void writeBlock() throws IOException {
+        out.writeInt(numRows);
+        out.writeInt(newStrings.size());
+        for (String s : newStrings)
+            writeString(out, s);
+        newStrings.clear();
+        for (int i = 0; i < numRows; ++i)
+            writeString(out, instances[i]);
+        for (int i = 0; i < numRows; ++i)
+            out.writeInt(terms[i]);
+        for (int i = 0; i < numRows; ++i)
+            out.writeInt(folds[i]);
+        for (int i = 0; i < numRows; ++i)
+            out.writeInt(metrics[i]);
+        for (int i = 0; i < numRows; ++i)
+            out.writeDouble(scores[i]);
+        out.write(answered, 0, (numRows + 7) / 8);
+        numRows = 0;
+    }
+
+    private static void writeString(DataOutputStream dos, String s)
+            throws IOException {
+        byte[] bytes = s.getBytes("UTF-8");
+        dos.writeInt(bytes.length);
+        dos.write(bytes);
+    }
+
+    private static String readString(DataInputStream dis) throws IOException {
+        byte[] bytes = new byte[dis.readInt()];
+        dis.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * Prints the rows of a result file as tab-separated text.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("usage: java InstanceResultWriter results.bin");
+            return;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+            new FileInputStream(args[0]), 1 << 16));
+        try {
+            if (in.readInt() != MAGIC)
+                throw new IOException("Not an instance result file: " +
+                                      args[0]);
+            int version = in.readInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported result file version " +
+                                      version + ": " + args[0]);
+            List<String> strings = new ArrayList<String>();
+            System.out.println("instance\tterm\tfold\tmetric\tscore\tanswered");
+            int rows;
+            while ((rows = in.readInt()) > 0) {
+                int added = in.readInt();
+                for (int i = 0; i < added; ++i)
+                    strings.add(readString(in));
+                String[] instances = new String[rows];
+                for (int i = 0; i < rows; ++i)
+                    instances[i] = readString(in);
+                int[][] ints = new int[3][rows];
+                for (int[] column : ints) {
+                    for (int i = 0; i < rows; ++i)
+                        column[i] = in.readInt();
+                }
+                double[] scores = new double[rows];
+                for (int i = 0; i < rows; ++i)
+                    scores[i] = in.readDouble();
+                byte[] answered = new byte[(rows + 7) / 8];
+                in.readFully(answered);
+                for (int i = 0; i < rows; ++i) {
+                    boolean isAnswered = (answered[i / 8] & (1 << (i % 8))) != 0;
+                    System.out.println(instances[i] + "\t" 
+                                       + strings.get(ints[0][i]) + "\t"
+                                       + ints[1][i] + "\t"
+                                       + strings.get(ints[2][i]) + "\t"
+                                       + scores[i] + "\t" + isAnswered);
+                }
+            }
+        } catch (EOFException eofe) {
+            throw new IOException("Truncated instance result file: " + args[0]);
+        } finally {
+            in.close();
+        }
+    }
+}
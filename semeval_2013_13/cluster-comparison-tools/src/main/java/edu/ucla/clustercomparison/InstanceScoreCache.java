@@ -0,0 +1,229 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * A bounded, thread-safe cache of the scores an {@link AbstractEvaluation}
+ * computes for individual instances, keyed by the gold and test sense ratings
+ * and the number of senses.  Hard clusterings, and keys remapped with a {@link
+ * GradedSingleSenseKeyMapper}, repeat the same few rating patterns across a
+ * large number of instances, so each distinct pattern only needs to be
+ * scored once.  Once the cache holds its maximum number of patterns, the
+ * scores of new patterns are computed but no longer stored.
+ *
+ * <p> Patterns are matched regardless of the names of their senses, only by
+ * how the names are ordered, so that the same pattern is shared across terms.
+ * The cache is therefore only suitable for evaluations whose scores depend on
+ * the sense names solely through their equality and order, as is the case for
+ * every evaluation in this package.
+ *
+ * <p> A cache may be shared by several evaluations, possibly in different
+ * threads, as long as they are all of the same class, since the cached scores
+ * are only valid for the evaluation that computed them.
+ *
+ * @see AbstractEvaluation#setScoreCache(InstanceScoreCache)
+ */
+public class InstanceScoreCache {
+
+    /**
+     * The default maximum number of rating patterns stored
+     */
+    public static final int DEFAULT_MAX_SIZE = 100000;
+
+    /**
+     * The scores of each encoded rating pattern
+     */
+    private final ConcurrentMap<String,Double> scores;
+
+    /**
+     * The maximum number of patterns stored
+     */
+    private final int maxSize;
+
+    /**
+     * The number of patterns stored, which is tracked separately as the
+     * concurrent map's size is costly to compute
+     */
+    private final AtomicInteger size;
+
+    private final AtomicLong hits;
+
+    private final AtomicLong misses;
+
+    /**
+     * The class of the evaluations using this cache
+     */
+    private final AtomicReference<Class<?>> owner;
+
+    /**
+     * Creates a cache holding at most {@link #DEFAULT_MAX_SIZE} patterns.
+     */
+    public InstanceScoreCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Creates a cache holding at most {@code maxSize} rating patterns.
+     */
+    public InstanceScoreCache(int maxSize) {
+        if (maxSize < 1)
+            throw new IllegalArgumentException(
+                "The cache must hold at least one pattern: " + maxSize);
+        this.maxSize = maxSize;
+        scores = new ConcurrentHashMap<String,Double>();
+        size = new AtomicInteger();
+        hits = new AtomicLong();
+        misses = new AtomicLong();
+        owner = new AtomicReference<Class<?>>();
+    }
+
+    /**
+     * Records that evaluations of {@code evaluationClass} use this cache.
+     *
+     * @throws IllegalStateException if the cache is already used by another
+     *         class of evaluation
+     */
+    void bind(Class<?> evaluationClass) {
+        if (!owner.compareAndSet(null, evaluationClass)
+                && owner.get() != evaluationClass) {
+            throw new IllegalStateException(
+                "The cache holds scores from " + owner.get().getName() + 
+                " and cannot be used by " + evaluationClass.getName());
+        }
+    }
+
+    /**
+     * Returns the key of the rating pattern, which encodes the number of
+     * senses and the gold and test ratings of each sense.  Rather than by its
+     * name, each sense is identified by its position among all of the
+     * instance's senses in sorted order, so that the same pattern over the
+     * senses of different terms has the same key.
+     */
+    static String key(Map<String,Double> goldSenseRatings,
+                      Map<String,Double> testSenseRatings,
+                      int numSenses) {
+        Set<String> all = new TreeSet<String>(goldSenseRatings.keySet());
+        all.addAll(testSenseRatings.keySet());
+        StringBuilder sb = new StringBuilder();
+        sb.append(numSenses);
+        encode(all, goldSenseRatings, sb.append('|'));
+        encode(all, testSenseRatings, sb.append('|'));
+        return sb.toString();
+    }
+
+    /**
+     * Appends the position and rating of each rated sense in {@code senses} to
+     * {@code sb}.
+     */
+    private static void encode(Set<String> senses, Map<String,Double> ratings,
+                               StringBuilder sb) {
+        int i = 0;
+        for (String sense : senses) {
+            Double rating = ratings.get(sense);
+            if (rating != null)
+                sb.append(i).append('=').append(rating).append(';');
+            i++;
+        }
+    }
+
+    /**
+     * Returns the cached score for the rating pattern, or {@code null} if the
+     * pattern has not been scored, recording the hit or miss.
+     */
+    Double get(String key) {
+        Double score = scores.get(key);
+        if (score == null)
+            misses.incrementAndGet();
+        else
+            hits.incrementAndGet();
+        return score;
+    }
+
+    /**
+     * Stores the score of the rating pattern if the cache is not full.
+     */
+    void put(String key, double score) {
+        // Reserve a place for the pattern before adding it so that concurrent
+        // puts cannot exceed the maximum size
+        int n;
+        do {
+            n = size.get();
+            if (n >= maxSize)
+                return;
+        } while (!size.compareAndSet(n, n + 1));
+        if (scores.putIfAbsent(key, score) != null)
+            size.decrementAndGet();
+    }
+
+    /**
+     * Returns the number of instances whose score was found in the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of instances whose score had to be computed
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of rating patterns stored
+     */
+    public int size() {
+        return size.get();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Removes all the stored scores and resets the counters.
+     */
+    public void clear() {
+        scores.clear();
+        size.set(0);
+        hits.set(0);
+        misses.set(0);
+    }
+
+    public String toString() {
+        return "InstanceScoreCache[" + size() + " patterns, " + getHits() +
+            " hits, " + getMisses() + " misses]";
+    }
+}
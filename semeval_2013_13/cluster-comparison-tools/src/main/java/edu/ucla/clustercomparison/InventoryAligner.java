@@ -0,0 +1,483 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import java.util.logging.Logger;
+
+import static edu.ucla.sspace.util.LoggerUtil.verbose;
+
+
+/**
+ * Aligns the senses of a test inventory to those of a gold inventory by
+ * assigning each induced sense the gold sense of the same word whose cluster
+ * has the highest cosine similarity with its own.  Ties are broken in favor of
+ * the gold sense listed first, and induced senses that share no cluster terms
+ * with any gold sense are left unaligned.  Words are split into blocks that
+ * are aligned in parallel, and the blocks are collected in order so that the
+ * alignment does not depend on the number of threads.
+ *
+ * <p> An exhaustive alignment compares every induced sense with every gold
+ * sense of its word.  Alternatively, the gold inventory's inverted index can
+ * be used to only compare an induced sense with the gold senses whose clusters
+ * contain at least one of its {@code maxQueryTerms} highest weighted terms.
+ * The cosine similarity of these candidates is still computed exactly, so
+ * querying with every term gives the same alignment as the exhaustive
+ * search, while fewer query terms trade recall for speed.  A number of query
+ * terms at least as large as the largest induced sense is therefore aligned
+ * exhaustively.  The {@link
+ * #main(String[]) main} method reports how a pruned alignment compares with
+ * the exhaustive one.
+ */
+public class InventoryAligner {
+
+    /**
+     * The logger for this class
+     */
+    private static final Logger LOGGER =
+        Logger.getLogger(InventoryAligner.class.getName());
+
+    /**
+     * The value of {@code maxQueryTerms} that compares every induced sense
+     * with every gold sense of its word.
+     */
+    public static final int EXHAUSTIVE = 0;
+
+    /**
+     * The number of words aligned by each task
+     */
+    static final int BLOCK_SIZE = 256;
+
+    /**
+     * The inventory of the gold senses
+     */
+    private final SenseInventory gold;
+
+    /**
+     * The inventory of the induced senses
+     */
+    private final SenseInventory test;
+
+    /**
+     * The index in the gold vocabulary of each term in the test vocabulary, or
+     * -1 for terms only in the test inventory
+     */
+    private final int[] testToGoldTerms;
+
+    /**
+     * The gold and test index of each word in both inventories
+     */
+    private final List<int[]> words;
+
+    /**
+     * The number of threads used to align the words
+     */
+    private final int numThreads;
+
+    /**
+     * The largest number of cluster entries of any induced sense
+     */
+    private final int maxTestEntries;
+
+    /**
+     * The result of aligning two inventories
+     */
+    public static class Alignment {
+
+        /**
+         * For each word, the gold sense aligned to each of its induced senses
+         */
+        final Map<String,Map<String,String>> senses;
+
+        /**
+         * The number of pairs of senses whose similarity was computed
+         */
+        final long comparisons;
+
+        Alignment(Map<String,Map<String,String>> senses, long comparisons) {
+            this.senses = senses;
+            this.comparisons = comparisons;
+        }
+
+        /**
+         * Returns the gold sense aligned to each of the word's induced senses,
+         * or {@code null} if the word is not in both inventories.
+         */
+        public Map<String,String> get(String word) {
+            return senses.get(word);
+        }
+
+        /**
+         * Returns the number of pairs of senses whose similarity was computed
+         */
+        public long comparisons() {
+            return comparisons;
+        }
+    }
+
+    public InventoryAligner(SenseInventory gold, SenseInventory test,
+                            int numThreads) {
+        if (numThreads < 1)
+            throw new IllegalArgumentException(
+                "Must use at least one thread: " + numThreads);
+        this.gold = gold;
+        this.test = test;
+        this.numThreads = numThreads;
+        testToGoldTerms = test.translateTerms(gold);
+        int maxEntries = 0;
+        for (int s = 0; s < test.numSenses(); ++s)
+            maxEntries = Math.max(maxEntries, 
+                                  test.endEntry(s) - test.firstEntry(s));
+        maxTestEntries = maxEntries;
+        words = new ArrayList<int[]>();
+        for (int w = 0; w < test.numWords(); ++w) {
+            int g = gold.findWord(test.word(w));
+            if (g >= 0)
+                words.add(new int[] { g, w });
+        }
+    }
+
+    /**
+     * Aligns the senses of every word in both inventories.
+     *
+     * @param maxQueryTerms the number of highest weighted terms of each induced
+     *        sense used to find candidate gold senses, or {@link #EXHAUSTIVE}
+     *        to compare against all gold senses.  Values at least as large as
+     *        the largest induced sense are also exhaustive.
+     */
+    public Alignment align(int maxQueryTerms) {
+        if (maxQueryTerms < 0)
+            throw new IllegalArgumentException(
+                "The number of query terms must be non-negative: " +
+                maxQueryTerms);
+        // Querying with every term of each sense finds the same candidates as
+        // comparing against all gold senses, which is faster
+        final int numQueryTerms = (maxQueryTerms >= maxTestEntries)
+            ? EXHAUSTIVE : maxQueryTerms;
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<BlockResult>> blocks = new ArrayList<Future<BlockResult>>();
+        try {
+            for (int start = 0; start < words.size(); start += BLOCK_SIZE) {
+                final List<int[]> block = words.subList(
+                    start, Math.min(start + BLOCK_SIZE, words.size()));
+                blocks.add(executor.submit(new Callable<BlockResult>() {
+                        public BlockResult call() {
+                            return alignBlock(block, numQueryTerms);
+                        }
+                    }));
+            }
+
+            Map<String,Map<String,String>> senses =
+                new HashMap<String,Map<String,String>>(words.size() * 2);
+            long comparisons = 0;
+            int numAligned = 0;
+            int i = 0;
+            for (Future<BlockResult> f : blocks) {
+                BlockResult r = f.get();
+                comparisons += r.comparisons;
+                for (Map<String,String> aligned : r.aligned) {
+                    senses.put(test.word(words.get(i++)[1]), aligned);
+                    numAligned += aligned.size();
+                }
+            }
+            verbose(LOGGER, "Aligned %d induced senses of %d words using %d " +
+                    "comparisons", numAligned, words.size(), comparisons);
+            return new Alignment(senses, comparisons);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(
+                "Interrupted while aligning the inventories", ie);
+        } catch (ExecutionException ee) {
+            throw new IllegalStateException(
+                "Could not align the inventories", ee.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The alignments of a block of words
+     */
+    private static class BlockResult {
+
+        final List<Map<String,String>> aligned;
+
+        long comparisons;
+
+        BlockResult(int size) {
+            aligned = new ArrayList<Map<String,String>>(size);
+        }
+    }
+
+    /**
+     * Aligns the senses of each word in the block.
+     */
+    private BlockResult alignBlock(List<int[]> block, int maxQueryTerms) {
+        // Scratch space for the cluster vector of a single sense
+        double[] vector = new double[gold.numTerms()];
+        // Scratch space for the query terms of a single sense
+        int[] queryTerms = new int[maxQueryTerms];
+        float[] queryWeights = new float[maxQueryTerms];
+        BlockResult result = new BlockResult(block.size());
+        for (int[] pair : block) {
+            int goldWord = pair[0];
+            int testWord = pair[1];
+            int firstTest = test.firstSense(testWord);
+            int numTest = test.endSense(testWord) - firstTest;
+            int[] bestSenses = (maxQueryTerms == EXHAUSTIVE)
+                ? alignExhaustive(goldWord, testWord, vector, result)
+                : alignPruned(goldWord, testWord, maxQueryTerms, vector,
+                              queryTerms, queryWeights, result);
+
+            Map<String,String> aligned = new HashMap<String,String>();
+            for (int k = 0; k < numTest; ++k) {
+                if (bestSenses[k] >= 0) {
+                    aligned.put(test.senseId(firstTest + k),
+                                gold.senseId(bestSenses[k]));
+                }
+            }
+            result.aligned.add(aligned);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the most similar gold sense of each of the word's induced senses
+     * by comparing them with every gold sense, or -1 for induced senses that
+     * are not similar to any gold sense.
+     *
+     * @param goldVector an array of zeros with one cell per gold term, which
+     *        is used to hold the cluster of each gold sense in turn
+     */
+    private int[] alignExhaustive(int goldWord, int testWord,
+                                  double[] goldVector, BlockResult result) {
+        int firstTest = test.firstSense(testWord);
+        int numTest = test.endSense(testWord) - firstTest;
+        double[] bestScores = new double[numTest];
+        int[] bestSenses = new int[numTest];
+        Arrays.fill(bestSenses, -1);
+
+        for (int gs = gold.firstSense(goldWord);
+                 gs < gold.endSense(goldWord); ++gs) {
+            if (gold.norm(gs) == 0)
+                continue;
+            for (int i = gold.firstEntry(gs); i < gold.endEntry(gs); ++i)
+                goldVector[gold.entryTerm(i)] = gold.entryWeight(i);
+            for (int k = 0; k < numTest; ++k) {
+                int ts = firstTest + k;
+                if (test.norm(ts) == 0)
+                    continue;
+                double dot = 0;
+                for (int i = test.firstEntry(ts); i < test.endEntry(ts); ++i) {
+                    int t = testToGoldTerms[test.entryTerm(i)];
+                    if (t >= 0)
+                        dot += goldVector[t] * test.entryWeight(i);
+                }
+                result.comparisons++;
+                double score = dot / (gold.norm(gs) * test.norm(ts));
+                if (score > bestScores[k]) {
+                    bestScores[k] = score;
+                    bestSenses[k] = gs;
+                }
+            }
+            for (int i = gold.firstEntry(gs); i < gold.endEntry(gs); ++i)
+                goldVector[gold.entryTerm(i)] = 0;
+        }
+        return bestSenses;
+    }
+
+    /**
+     * Returns the most similar gold sense of each of the word's induced
+     * senses, only comparing them with the gold senses that contain one of
+     * their {@code maxQueryTerms} highest weighted terms, or -1 for induced
+     * senses that are not similar to any candidate.
+     *
+     * @param testVector an array of zeros with one cell per gold term, which
+     *        is used to hold the cluster of each induced sense in turn
+     * @param queryTerms an array of length {@code maxQueryTerms} used to hold
+     *        the query terms of each induced sense in turn
+     * @param queryWeights an array of length {@code maxQueryTerms} used to
+     *        hold the weights of the query terms
+     */
+    private int[] alignPruned(int goldWord, int testWord, int maxQueryTerms,
+                              double[] testVector, int[] queryTerms,
+                              float[] queryWeights, BlockResult result) {
+        int firstGold = gold.firstSense(goldWord);
+        int endGold = gold.endSense(goldWord);
+        boolean[] isCandidate = new boolean[endGold - firstGold];
+
+        int firstTest = test.firstSense(testWord);
+        int numTest = test.endSense(testWord) - firstTest;
+        int[] bestSenses = new int[numTest];
+        Arrays.fill(bestSenses, -1);
+
+        for (int k = 0; k < numTest; ++k) {
+            int ts = firstTest + k;
+            if (test.norm(ts) == 0)
+                continue;
+
+            // Keep the highest weighted terms that are in the gold vocabulary,
+            // preferring the earlier term when weights are tied
+            int numQuery = 0;
+            for (int i = test.firstEntry(ts); i < test.endEntry(ts); ++i) {
+                int t = testToGoldTerms[test.entryTerm(i)];
+                if (t < 0)
+                    continue;
+                float w = test.entryWeight(i);
+                testVector[t] = w;
+                if (numQuery == maxQueryTerms && queryWeights[numQuery-1] >= w)
+                    continue;
+                int j = (numQuery == maxQueryTerms) ? numQuery - 1 : numQuery++;
+                for (; j > 0 && queryWeights[j-1] < w; --j) {
+                    queryTerms[j] = queryTerms[j-1];
+                    queryWeights[j] = queryWeights[j-1];
+                }
+                queryTerms[j] = t;
+                queryWeights[j] = w;
+            }
+
+            // Mark the word's gold senses that contain a query term.  The
+            // postings of each term are sorted by sense, so the word's senses
+            // are found with a binary search.
+            for (int q = 0; q < numQuery; ++q) {
+                int end = gold.endPosting(queryTerms[q]);
+                int p = lowerBound(gold, gold.firstPosting(queryTerms[q]),
+                                   end, firstGold);
+                for (; p < end && gold.posting(p) < endGold; ++p)
+                    isCandidate[gold.posting(p) - firstGold] = true;
+            }
+
+            double bestScore = 0;
+            for (int gs = firstGold; gs < endGold; ++gs) {
+                if (!isCandidate[gs - firstGold])
+                    continue;
+                isCandidate[gs - firstGold] = false;
+                double dot = 0;
+                for (int i = gold.firstEntry(gs); i < gold.endEntry(gs); ++i)
+                    dot += testVector[gold.entryTerm(i)] * gold.entryWeight(i);
+                result.comparisons++;
+                double score = dot / (gold.norm(gs) * test.norm(ts));
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestSenses[k] = gs;
+                }
+            }
+
+            for (int i = test.firstEntry(ts); i < test.endEntry(ts); ++i) {
+                int t = testToGoldTerms[test.entryTerm(i)];
+                if (t >= 0)
+                    testVector[t] = 0;
+            }
+        }
+        return bestSenses;
+    }
+
+    /**
+     * Returns the first posting in {@code [from, to)} whose sense is at least
+     * {@code sense}.
+     */
+    private static int lowerBound(SenseInventory inventory, int from, int to,
+                                  int sense) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (inventory.posting(mid) < sense)
+                from = mid + 1;
+            else
+                to = mid;
+        }
+        return from;
+    }
+
+    /**
+     * Compares the pruned alignments for several numbers of query terms with
+     * the exhaustive alignment of two inventories.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("usage: java InventoryAligner " +
+                               "gold-inventory test-inventory " +
+                               "max-query-terms [max-query-terms...]");
+            return;
+        }
+        SenseInventory gold = SenseInventory.load(new File(args[0]));
+        SenseInventory test = SenseInventory.load(new File(args[1]));
+        InventoryAligner aligner = new InventoryAligner(
+            gold, test, Runtime.getRuntime().availableProcessors());
+
+        long start = System.currentTimeMillis();
+        Alignment exhaustive = aligner.align(EXHAUSTIVE);
+        long exhaustiveTime = System.currentTimeMillis() - start;
+        int numAligned = 0;
+        for (Map<String,String> aligned : exhaustive.senses.values())
+            numAligned += aligned.size();
+
+        System.out.println("===================================================================");
+        System.out.println("query terms\tcomparisons\ttime (ms)\trecall\textra");
+        System.out.println("-------------------------------------------------------------------");
+        System.out.println("all\t" + exhaustive.comparisons + "\t"
+                           + exhaustiveTime + "\t1.0\t0");
+        for (int i = 2; i < args.length; ++i) {
+            int maxQueryTerms = Integer.parseInt(args[i]);
+            start = System.currentTimeMillis();
+            Alignment pruned = aligner.align(maxQueryTerms);
+            long time = System.currentTimeMillis() - start;
+
+            // Recall is the fraction of the exhaustively aligned senses that
+            // are aligned to the same gold sense, while any senses aligned
+            // only by the pruned search are extra
+            int same = 0;
+            int extra = 0;
+            for (Map.Entry<String,Map<String,String>> e
+                     : pruned.senses.entrySet()) {
+                Map<String,String> expected = exhaustive.get(e.getKey());
+                for (Map.Entry<String,String> e2 : e.getValue().entrySet()) {
+                    String gs = expected.get(e2.getKey());
+                    if (gs == null)
+                        extra++;
+                    else if (gs.equals(e2.getValue()))
+                        same++;
+                }
+            }
+            double recall = (numAligned == 0)
+                ? 1 : same / (double)numAligned;
+            System.out.println(maxQueryTerms + "\t" + pruned.comparisons
+                               + "\t" + time + "\t" + recall + "\t" + extra);
+        }
+        System.out.println("===================================================================");
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+
+/**
+ * A {@link KeyMapper} that maps induced senses to gold senses using the sense
+ * inventories of both labelings rather than their co-occurrence on training
+ * instances.  Each induced sense is aligned to the gold sense of the same word
+ * whose cluster of related terms has the highest cosine similarity with its
+ * own, as done by the TWSI evaluation script.  Instances are then remapped by
+ * moving the rating of each induced sense to its aligned gold sense; induced
+ * senses that share no cluster terms with any gold sense are dropped.
+ *
+ * <p> Both inventories are read by {@link SenseInventory#load(File)}, either
+ * as {@code word<TAB>sense-id<TAB>term:weight, ...} text files or as
+ * previously converted binary files.  Key terms such as {@code
+ * ability.n} are matched to the inventory word {@code ability} when the
+ * inventory has no entry for the full term.  Since the alignment does not
+ * depend on the training instances, it is computed once by an {@link
+ * InventoryAligner}.
+ */
+public class InventoryKeyMapper implements KeyMapper {
+
+    /**
+     * The gold sense aligned to each induced sense
+     */
+    private final InventoryAligner.Alignment alignment;
+
+    /**
+     * A description of the inventories and settings from which the alignment
+     * was computed
+     */
+    private final String configuration;
+
+    /**
+     * Creates a mapper that exhaustively aligns the senses of the two
+     * inventories using one thread per available processor.
+     *
+     * @param goldInventory the inventory of the gold key's senses
+     * @param testInventory the inventory of the test key's induced senses
+     */
+    public InventoryKeyMapper(File goldInventory, File testInventory)
+            throws IOException {
+        this(goldInventory, testInventory,
+             Runtime.getRuntime().availableProcessors(),
+             InventoryAligner.EXHAUSTIVE);
+    }
+
+    /**
+     * Creates a mapper that aligns the senses of the two inventories using
+     * {@code numThreads} threads.  Each inventory may be either a text
+     * inventory or a binary inventory written by {@link SenseInventory}.
+     *
+     * @param goldInventory the inventory of the gold key's senses
+     * @param testInventory the inventory of the test key's induced senses
+     * @param maxQueryTerms the number of highest weighted terms of each
+     *        induced sense used to find the gold senses it is compared with,
+     *        or {@link InventoryAligner#EXHAUSTIVE} to compare it with all of
+     *        its word's gold senses
+     */
+    public InventoryKeyMapper(File goldInventory, File testInventory,
+                              int numThreads, int maxQueryTerms)
+            throws IOException {
+        this(SenseInventory.load(goldInventory),
+             SenseInventory.load(testInventory), numThreads, maxQueryTerms,
+             "gold " + describe(goldInventory) + " test " +
+             describe(testInventory) + " query-terms " + maxQueryTerms);
+    }
+
+    /**
+     * Creates a mapper that aligns the senses of the two inventories using
+     * {@code numThreads} threads.
+     *
+     * @see #InventoryKeyMapper(File,File,int,int)
+     */
+    public InventoryKeyMapper(SenseInventory gold, SenseInventory test,
+                              int numThreads, int maxQueryTerms) {
+        // Inventories loaded elsewhere cannot be identified, so each mapper
+        // is described as unique
+        this(gold, test, numThreads, maxQueryTerms, 
+             "inventories " + UUID.randomUUID());
+    }
+
+    private InventoryKeyMapper(SenseInventory gold, SenseInventory test,
+                               int numThreads, int maxQueryTerms,
+                               String configuration) {
+        alignment = new InventoryAligner(gold, test, numThreads)
+            .align(maxQueryTerms);
+        this.configuration = getClass().getName() + " " + configuration;
+    }
+
+    /**
+     * Returns the path, modification time and length of an inventory file
+     */
+    private static String describe(File inventory) {
+        return inventory.getAbsolutePath() + " (" + inventory.lastModified() +
+            ", " + inventory.length() + ")";
+    }
+
+    /**
+     * Returns a description of everything that affects the alignment: the
+     * path, modification time and length of each inventory file and the
+     * number of query terms.  A mapper created from inventories that were
+     * already loaded has a description that differs from every other mapper.
+     */
+    String getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * Returns the alignment for the key term, trying the term itself before the
+     * term without its part of speech suffix.
+     */
+    private Map<String,String> getAlignment(String term) {
+        Map<String,String> aligned = alignment.get(term);
+        int dot = term.lastIndexOf('.');
+        if (aligned == null && dot > 0)
+            aligned = alignment.get(term.substring(0, dot));
+        return aligned;
+    }
+
+    /**
+     * Remaps all non-training instances in the test key into the gold sense
+     * labels aligned to their induced senses.  The training instances are not
+     * needed to learn the alignment.
+     *
+     * @param goldKey a mapping from words to the instances and their
+     *        corresponding gold standard sense ratings
+     * @param testKey a mapping from words to the instances and their
+     *        corresponding induced sense ratings
+     * @param trainingInstanceIds the set of instances IDs in the gold key set
+     *        that are excluded from the result
+     *
+     * @return the sense mapping for all non-training instances using the
+     *         induced keys that were coverted to the gold standard labels
+     */
+    public Map<String,Map<String,Map<String,Double>>>
+        convert(Map<String,Map<String,Map<String,Double>>> goldKey,
+                Map<String,Map<String,Map<String,Double>>> testKey,
+                Set<String> trainingInstanceIds) {
+
+        Map<String,Map<String,Map<String,Double>>> remappedTestKey =
+            new HashMap<String,Map<String,Map<String,Double>>>();
+
+        for (Map.Entry<String,Map<String,Map<String,Double>>> e
+                 : testKey.entrySet()) {
+            String term = e.getKey();
+            Map<String,String> aligned = getAlignment(term);
+            if (aligned == null || aligned.isEmpty())
+                continue;
+
+            Map<String,Map<String,Double>> instanceToSenses =
+                new HashMap<String,Map<String,Double>>();
+            for (Map.Entry<String,Map<String,Double>> e2
+                     : e.getValue().entrySet()) {
+                String instance = e2.getKey();
+                if (trainingInstanceIds.contains(instance))
+                    continue;
+
+                // Induced senses aligned to the same gold sense have their
+                // ratings summed
+                Map<String,Double> senses = new LinkedHashMap<String,Double>();
+                for (Map.Entry<String,Double> r : e2.getValue().entrySet()) {
+                    String gs = aligned.get(r.getKey());
+                    if (gs == null)
+                        continue;
+                    Double prev = senses.get(gs);
+                    senses.put(gs, (prev == null)
+                               ? r.getValue() : prev + r.getValue());
+                }
+                if (!senses.isEmpty())
+                    instanceToSenses.put(instance, senses);
+            }
+            remappedTestKey.put(term, instanceToSenses);
+        }
+        return remappedTestKey;
+    }
+}
@@ -60,4 +60,36 @@ public class JaccardIndex extends AbstractEvaluation {
         double jaccardIndex =  inCommon / (double)unionSize;
         return jaccardIndex;
     }
+
+    /**
+     * Returns the gold senses as a {@link SenseSet} of the term's senses.
+     */
+    @Override final Object prepareGold(SenseDictionary termSenses,
+                                       Map<String,Double> goldSenseRatings) {
+        return termSenses.encode(goldSenseRatings);
+    }
+
+    /**
+     * Returns this class, as the prepared senses do not depend on any setting.
+     */
+    @Override final Object getPreparationKey() {
+        return JaccardIndex.class;
+    }
+
+    /**
+     * Computes the Jaccard Index from the bits of the two sense listings if
+     * the gold senses were prepared as a {@link SenseSet}.
+     */
+    @Override protected double evaluateInstance(
+            Object preparedGold,
+            Map<String,Double> goldSenseRatings,
+            Map<String,Double> testSenseRatings,
+            int numSenses) {
+        if (preparedGold == null) 
+            return evaluateInstance(goldSenseRatings, testSenseRatings, 
+                                    numSenses);
+        SenseSet gold = (SenseSet)preparedGold;
+        SenseSet test = gold.getDictionary().encode(testSenseRatings);
+        return gold.intersectionSize(test) / (double)gold.unionSize(test);
+    }
 }
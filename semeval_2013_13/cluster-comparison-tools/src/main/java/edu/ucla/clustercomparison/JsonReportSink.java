@@ -0,0 +1,134 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+import java.io.PrintStream;
+
+import java.util.List;
+
+
+/**
+ * A {@link ReportSink} that prints the report as a single JSON object.  The
+ * object has a {@code columns} array of the column names, a {@code notes}
+ * array, a {@code rows} array with one object per term and a {@code total}
+ * object for all terms, which is {@code null} if it was not set.  Each row
+ * object maps the column names to the row's label and values, plus a {@code
+ * comment} if the row has one.  Values that are not finite are written as
+ * {@code null}.  The whole report is printed with a single call to the stream.
+ */
+public class JsonReportSink implements ReportSink {
+
+    /**
+     * The stream to which reports are printed
+     */
+    private final PrintStream out;
+
+    /**
+     * Creates a sink that prints to {@code System.out}.
+     */
+    public JsonReportSink() {
+        this(System.out);
+    }
+
+    public JsonReportSink(PrintStream out) {
+        this.out = out;
+    }
+
+    public void write(Report report) {
+        List<String> columns = report.getColumns();
+        StringBuilder sb = new StringBuilder("{\"columns\":[");
+        for (int i = 0; i < columns.size(); ++i) {
+            if (i > 0)
+                sb.append(',');
+            quote(sb, columns.get(i));
+        }
+        sb.append("],\"notes\":[");
+        List<String> notes = report.getNotes();
+        for (int i = 0; i < notes.size(); ++i) {
+            if (i > 0)
+                sb.append(',');
+            quote(sb, notes.get(i));
+        }
+        sb.append("],\"rows\":[");
+        List<Report.Row> rows = report.getRows();
+        for (int i = 0; i < rows.size(); ++i) {
+            if (i > 0)
+                sb.append(',');
+            append(sb, columns, rows.get(i));
+        }
+        sb.append("],\"total\":");
+        if (report.getTotal() == null)
+            sb.append("null");
+        else
+            append(sb, columns, report.getTotal());
+        sb.append('}');
+        out.println(sb);
+        out.flush();
+    }
+
+    private static void append(StringBuilder sb, List<String> columns,
+                               Report.Row row) {
+        sb.append('{');
+        quote(sb, columns.get(0));
+        sb.append(':');
+        quote(sb, row.getLabel());
+        for (int i = 0; i < row.numValues(); ++i) {
+            sb.append(',');
+            quote(sb, columns.get(i + 1));
+            sb.append(':');
+            double v = row.getValue(i);
+            if (Double.isNaN(v) || Double.isInfinite(v))
+                sb.append("null");
+            else
+                sb.append(v);
+        }
+        if (row.getComment() != null) {
+            sb.append(",\"comment\":");
+            quote(sb, row.getComment());
+        }
+        sb.append('}');
+    }
+
+    /**
+     * Appends {@code s} as a quoted JSON string
+     */
+    private static void quote(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); ++i) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '"': sb.append("\\\""); break;
+            case '\\': sb.append("\\\\"); break;
+            case '\n': sb.append("\\n"); break;
+            case '\r': sb.append("\\r"); break;
+            case '\t': sb.append("\\t"); break;
+            default:
+                if (c < 0x20)
+                    sb.append(String.format("\\u%04x", (int)c));
+                else
+                    sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -24,13 +24,26 @@ package edu.ucla.clustercomparison;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
 
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 
 /**
  * The utility class for loading <a
@@ -44,6 +57,31 @@ public class KeyUtil {
 
     public static boolean loadWithStrictParsing = false;
 
+    /**
+     * The size in bytes above which key files are parsed by multiple threads
+     */
+    public static final long PARALLEL_LOAD_THRESHOLD = 32L * 1024 * 1024;
+
+    /**
+     * The smallest chunk of a key file that is parsed by its own thread
+     */
+    private static final long MIN_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * The result of parsing a line that was added to the key or skipped
+     */
+    private static final int PARSED = 0;
+
+    /**
+     * The result of parsing a line that has too few fields
+     */
+    private static final int MALFORMED_LINE = 1;
+
+    /**
+     * The result of parsing a line with a sense weight that is not a number
+     */
+    private static final int MALFORMED_WEIGHT = 2;
+
     /**
      * Loads a key file returning a mapping from each document to its instances,
      * where an instance is a mapping from an instance key to the graded senses
@@ -89,92 +127,375 @@ public class KeyUtil {
      */
     public static Map<String,Map<String,Map<String,Double>>> 
            loadKey(File file, boolean isStrict) throws IOException {
+        return loadKey(file, isStrict, null);
+    }
 
-        Map<String,Map<String,Map<String,Double>>> documentToInstances =
-            new LinkedHashMap<String,Map<String,Map<String,Double>>>();
+    /**
+     * Loads only the instances in {@code instances} from a key file, such as
+     * the instances of a gold key, optionally ignoring lines that are
+     * malformed.  The instance of each line is read before the rest of the
+     * line is parsed, so the lines of other instances cost little more than
+     * reading them and are not checked for errors, even when parsing strictly.
+     * Files of at least {@link #PARALLEL_LOAD_THRESHOLD} bytes are parsed
+     * with one thread per processor.
+     *
+     * @param isStrict if {@code true} lines that are malformed will cause an
+     *        {@link IllegalStateException} to be thrown
+     * @param instances the instances to load, or {@code null} to load all of
+     *        them
+     */
+    public static Map<String,Map<String,Map<String,Double>>> 
+           loadKey(File file, boolean isStrict, Set<String> instances) 
+            throws IOException {
+        int numThreads = (file.length() >= PARALLEL_LOAD_THRESHOLD)
+            ? Runtime.getRuntime().availableProcessors()
+            : 1;
+        return loadKey(file, isStrict, instances, numThreads);
+    }
 
-        BufferedReader br = new BufferedReader(new FileReader(file));
-        int lineNo = 1;
-        for (String line = null; (line = br.readLine()) != null; lineNo++) {
-            String[] arr = line.split(" ");
-            if (arr.length < 3) {
-                // If the parsing doesn't need to be strict, just ignore this
-                // line
-                if (!isStrict)
-                    continue;
-                throw new IllegalStateException(
-                    "Malformed sense description on line " + lineNo +
-                    " in file " + file + ":\n" + line +
-                    "\nSee http://www.senseval.org/senseval3/scoring " +
-                    "for format details");
+    /**
+     * Loads the instances in {@code instances} from a key file using up to
+     * {@code numThreads} threads, optionally ignoring lines that are
+     * malformed.  The file is divided into chunks of whole lines that are
+     * parsed concurrently and then merged in the order of the file, so the
+     * key is the same as if it were parsed by a single thread, including the
+     * order of its documents and instances.  A malformed line causes the same
+     * error, with the same line number, as it would for a single thread,
+     * though the rest of the file may be parsed before it is reported.  This
+     * assumes the file's encoding is ASCII-compatible, as is the case for
+     * key files, so that every newline is a {@code '\n'} byte.
+     *
+     * @param isStrict if {@code true} lines that are malformed will cause an
+     *        {@link IllegalStateException} to be thrown
+     * @param instances the instances to load, or {@code null} to load all of
+     *        them
+     * @param numThreads the maximum number of threads used to parse the file
+     */
+    public static Map<String,Map<String,Map<String,Double>>> 
+           loadKey(final File file, final boolean isStrict, 
+                   final Set<String> instances, int numThreads) 
+            throws IOException {
+        if (numThreads < 1)
+            throw new IllegalArgumentException(
+                "Must use at least one thread: " + numThreads);
+
+        // Divide the file into a few chunks per thread so that the threads
+        // stay busy even if some chunks are slower to parse
+        long length = file.length();
+        int numChunks = (int)Math.min(numThreads * 4L, 
+                                      Math.max(1, length / MIN_CHUNK_SIZE));
+        if (numThreads == 1 || numChunks == 1) {
+            Map<String,Map<String,Map<String,Double>>> documentToInstances =
+                new LinkedHashMap<String,Map<String,Map<String,Double>>>();
+            BufferedReader br = new BufferedReader(new FileReader(file));
+            try {
+                int lineNo = 1;
+                for (String line = null; (line = br.readLine()) != null; 
+                         lineNo++) {
+                    int status = parseLine(line, isStrict, instances,
+                                           documentToInstances);
+                    if (status != PARSED)
+                        fail(status, file, lineNo, line);
+                }
+            } finally {
+                br.close();
             }
-            String document = arr[0];
-            String instanceId = arr[1];
-
-            // Iterate over all the senses with associated weights.  Per format
-            // guidelines, if no weights are specified, a uniform distribution
-            // is used.
-            Map<String,Double> senseWeights = new LinkedHashMap<String,Double>();
-            double senseWeightSum = 0;
-            double maxWeight = 0;
-            double weightsSeen = 0;
-            for (int i = 2; i < arr.length; ++i) {
-                // The sense description may end with an optional comment which
-                // is preceeded by a !!
-                if (arr[i].startsWith("!!"))
-                    break;
-                String[] arr2 = arr[i].split("/");
-                // If no weights were seen for this sense, then insert it with a
-                // dummy value, which will be ignored during normalization 
-                if (arr2.length == 1) {
-                    senseWeights.put(arr2[0], 0d);
+            return documentToInstances;
+        }
+
+        // Start each chunk at the beginning of a line
+        long[] starts = new long[numChunks + 1];
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            for (int i = 1; i < numChunks; ++i) 
+                starts[i] = nextLineStart(raf, (length / numChunks) * i);
+        } finally {
+            raf.close();
+        }
+        starts[numChunks] = length;
+
+        ExecutorService executor = 
+            Executors.newFixedThreadPool(Math.min(numThreads, numChunks));
+        List<Future<Chunk>> chunks = new ArrayList<Future<Chunk>>();
+        try {
+            for (int i = 0; i < numChunks; ++i) {
+                final long start = starts[i];
+                final long end = Math.max(start, starts[i + 1]);
+                chunks.add(executor.submit(new Callable<Chunk>() {
+                        public Chunk call() throws IOException {
+                            return parseChunk(file, start, end, isStrict,
+                                              instances);
+                        }
+                    }));
+            }
+
+            // Merge the chunks in order.  Documents and instances first seen
+            // in an earlier chunk keep their place, while a later labeling of
+            // an instance replaces the earlier one, just as when the lines
+            // are put into the maps one at a time.
+            Map<String,Map<String,Map<String,Double>>> documentToInstances =
+                new LinkedHashMap<String,Map<String,Map<String,Double>>>();
+            int linesBefore = 0;
+            for (Future<Chunk> f : chunks) {
+                Chunk chunk = f.get();
+                if (chunk.errorStatus != PARSED) {
+                    fail(chunk.errorStatus, file, 
+                         linesBefore + chunk.numLines + 1, chunk.errorLine);
                 }
-                // If a weight was seen, add it to the sum and record that one
-                // was used so that we can normalize
-                else {
-                    Double weight = null;
-                    try {
-                        weight = Double.parseDouble(arr2[1]);
-                    } catch (NumberFormatException nfe) {
-                        throw new Error(
-                            "Malformed sense weight in " + file +
-                            " on line " + lineNo +
-                            ":\n" + line + 
-                            "\nSee http://www.senseval.org/senseval3/scoring "+
-                            "for format details");
-                    }
-                    senseWeights.put(arr2[0], weight);
-                    senseWeightSum += weight;
-                    if (weight > maxWeight)
-                        maxWeight = weight;
-                    weightsSeen++;
+                linesBefore += chunk.numLines;
+                for (Map.Entry<String,Map<String,Map<String,Double>>> e
+                         : chunk.key.entrySet()) {
+                    Map<String,Map<String,Double>> instanceToSenses = 
+                        documentToInstances.get(e.getKey());
+                    if (instanceToSenses == null)
+                        documentToInstances.put(e.getKey(), e.getValue());
+                    else
+                        instanceToSenses.putAll(e.getValue());
                 }
             }
+            return documentToInstances;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(
+                "Interrupted while loading " + file, ie);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof IOException)
+                throw (IOException)cause;
+            throw new IllegalStateException("Could not load " + file, cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-            // Once all the senses have been seen for this instance, either
-            // normalize them, or if not enough were specified, set them with a
-            // uniform value.
-            if (weightsSeen != senseWeights.size()) {
-                for (Map.Entry<String,Double> e : senseWeights.entrySet()) 
-                    e.setValue(1d);                
+    /**
+     * Returns the offset of the first line that starts at or after {@code
+     * pos}, or the length of the file if there is none.
+     */
+    private static long nextLineStart(RandomAccessFile raf, long pos) 
+            throws IOException {
+        raf.seek(pos - 1);
+        byte[] buf = new byte[8192];
+        long offset = pos - 1;
+        for (int n; (n = raf.read(buf)) > 0; offset += n) {
+            for (int i = 0; i < n; ++i) {
+                if (buf[i] == '\n')
+                    return offset + i + 1;
             }
-            else {
-                for (Map.Entry<String,Double> e : senseWeights.entrySet()) 
-                    // e.setValue(e.getValue() / senseWeightSum);
-                    e.setValue(e.getValue() / maxWeight);
+        }
+        return raf.length();
+    }
+
+    /**
+     * Parses the lines in the byte range of the file, stopping at the first
+     * line that is an error.
+     */
+    private static Chunk parseChunk(File file, long start, long end,
+                                    boolean isStrict, Set<String> instances)
+            throws IOException {
+        Chunk chunk = new Chunk();
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            fis.getChannel().position(start);
+            BufferedReader br = new BufferedReader(new InputStreamReader(
+                new RangeInputStream(fis, end - start)));
+            for (String line = null; (line = br.readLine()) != null; ) {
+                int status = parseLine(line, isStrict, instances, chunk.key);
+                if (status != PARSED) {
+                    chunk.errorStatus = status;
+                    chunk.errorLine = line;
+                    break;
+                }
+                chunk.numLines++;
+            }
+        } finally {
+            fis.close();
+        }
+        return chunk;
+    }
+
+    /**
+     * Throws the error for the line that could not be parsed
+     */
+    private static void fail(int status, File file, int lineNo, String line) {
+        if (status == MALFORMED_WEIGHT) {
+            throw new Error(
+                "Malformed sense weight in " + file +
+                " on line " + lineNo +
+                ":\n" + line + 
+                "\nSee http://www.senseval.org/senseval3/scoring "+
+                "for format details");
+        }
+        throw new IllegalStateException(
+            "Malformed sense description on line " + lineNo +
+            " in file " + file + ":\n" + line +
+            "\nSee http://www.senseval.org/senseval3/scoring " +
+            "for format details");
+    }
+
+    /**
+     * Parses the line, adding its instance to {@code documentToInstances}
+     * unless it is not one of {@code instances}.
+     *
+     * @return {@link #PARSED} if the line was added or skipped, or the kind of
+     *         error in the line otherwise
+     */
+    private static int parseLine(
+            String line, boolean isStrict, Set<String> instances,
+            Map<String,Map<String,Map<String,Double>>> documentToInstances) {
+
+        // Skip the lines of other instances without splitting them.  The
+        // instance is the second space-separated field, as found by the
+        // split below.  Lines with only one field are left to be reported
+        // as malformed.
+        if (instances != null) {
+            int start = line.indexOf(' ') + 1;
+            if (start > 0) {
+                int end = line.indexOf(' ', start);
+                String instanceId = line.substring(
+                    start, (end < 0) ? line.length() : end);
+                if (!instances.contains(instanceId))
+                    return PARSED;
             }
+        }
+
+        String[] arr = line.split(" ");
+        if (arr.length < 3) {
+            // If the parsing doesn't need to be strict, just ignore this
+            // line
+            if (!isStrict)
+                return PARSED;
+            return MALFORMED_LINE;
+        }
+        String document = arr[0];
+        String instanceId = arr[1];
 
-            // When the sense weights have been properly set or normalized, add
-            // them to the instance mapping
-            Map<String,Map<String,Double>> instanceToSenses = 
-                documentToInstances.get(document);
-            if (instanceToSenses == null) {
-                instanceToSenses = new LinkedHashMap<String,Map<String,Double>>();
-                documentToInstances.put(document, instanceToSenses);
+        // Iterate over all the senses with associated weights.  Per format
+        // guidelines, if no weights are specified, a uniform distribution
+        // is used.
+        Map<String,Double> senseWeights = new LinkedHashMap<String,Double>();
+        double senseWeightSum = 0;
+        double maxWeight = 0;
+        double weightsSeen = 0;
+        for (int i = 2; i < arr.length; ++i) {
+            // The sense description may end with an optional comment which
+            // is preceeded by a !!
+            if (arr[i].startsWith("!!"))
+                break;
+            String[] arr2 = arr[i].split("/");
+            // If no weights were seen for this sense, then insert it with a
+            // dummy value, which will be ignored during normalization 
+            if (arr2.length == 1) {
+                senseWeights.put(arr2[0], 0d);
+            }
+            // If a weight was seen, add it to the sum and record that one
+            // was used so that we can normalize
+            else {
+                Double weight = null;
+                try {
+                    weight = Double.parseDouble(arr2[1]);
+                } catch (NumberFormatException nfe) {
+                    return MALFORMED_WEIGHT;
+                }
+                senseWeights.put(arr2[0], weight);
+                senseWeightSum += weight;
+                if (weight > maxWeight)
+                    maxWeight = weight;
+                weightsSeen++;
             }
-            instanceToSenses.put(instanceId, senseWeights);
         }
-        br.close();
-        return documentToInstances;
+
+        // Once all the senses have been seen for this instance, either
+        // normalize them, or if not enough were specified, set them with a
+        // uniform value.
+        if (weightsSeen != senseWeights.size()) {
+            for (Map.Entry<String,Double> e : senseWeights.entrySet()) 
+                e.setValue(1d);                
+        }
+        else {
+            for (Map.Entry<String,Double> e : senseWeights.entrySet()) 
+                // e.setValue(e.getValue() / senseWeightSum);
+                e.setValue(e.getValue() / maxWeight);
+        }
+
+        // When the sense weights have been properly set or normalized, add
+        // them to the instance mapping
+        Map<String,Map<String,Double>> instanceToSenses = 
+            documentToInstances.get(document);
+        if (instanceToSenses == null) {
+            instanceToSenses = new LinkedHashMap<String,Map<String,Double>>();
+            documentToInstances.put(document, instanceToSenses);
+        }
+        instanceToSenses.put(instanceId, senseWeights);
+        return PARSED;
+    }
+
+    /**
+     * The instances parsed from a chunk of a key file
+     */
+    private static class Chunk {
+
+        final Map<String,Map<String,Map<String,Double>>> key =
+            new LinkedHashMap<String,Map<String,Map<String,Double>>>();
+
+        /**
+         * The number of lines parsed before the end of the chunk or the first
+         * error
+         */
+        int numLines;
+
+        /**
+         * The kind of error in the first line that could not be parsed, or
+         * {@link #PARSED} if there were none
+         */
+        int errorStatus = PARSED;
+
+        String errorLine;
+    }
+
+    /**
+     * A stream of the next bytes of another stream, up to a limit
+     */
+    private static class RangeInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        RangeInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override public int read() throws IOException {
+            if (remaining <= 0)
+                return -1;
+            int b = in.read();
+            if (b >= 0)
+                remaining--;
+            return b;
+        }
+
+        @Override public int read(byte[] b, int off, int len) 
+                throws IOException {
+            if (remaining <= 0)
+                return -1;
+            int n = in.read(b, off, (int)Math.min(len, remaining));
+            if (n > 0)
+                remaining -= n;
+            return n;
+        }
+
+        @Override public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override public int available() throws IOException {
+            return (int)Math.min(in.available(), remaining);
+        }
+
+        @Override public boolean markSupported() {
+            return false;
+        }
     }
 }
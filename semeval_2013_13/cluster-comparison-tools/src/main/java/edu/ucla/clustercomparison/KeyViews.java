@@ -0,0 +1,501 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Read-only views of a key that only contain some of its terms or instances,
+ * such as the nouns or the instances with more than one gold sense.  A view
+ * is filtered lazily as it is read and does not copy the key, so one loaded
+ * key can be scored over several subsets.  Views keep the order of the
+ * underlying key, which means that scoring a view produces the same
+ * train/test splits as scoring a key file with just those instances.  A term
+ * is in an instance-filtered view only if at least one of its instances is.
+ * Views may be filtered further.  The number of terms in a view and of
+ * instances in each of its terms are counted once and then remembered, since
+ * scorers ask for them repeatedly, so the underlying key must not be modified
+ * while a view of it is in use.
+ *
+ * @see KeyUtil for a description of how keys are represented
+ */
+public class KeyViews {
+
+    /**
+     * A test of whether a term belongs in a view
+     */
+    public interface TermFilter {
+        public boolean accept(String term);
+    }
+
+    /**
+     * A test of whether an instance belongs in a view
+     */
+    public interface InstanceFilter {
+        public boolean accept(String term, String instance,
+                              Map<String,Double> ratings);
+    }
+
+    /**
+     * Keeps the instances labeled with exactly one sense.  Senses are counted
+     * once loaded, so an instance whose line repeats the same sense is single
+     * sense here, even though a few such instances of the SemEval-2013 gold
+     * key are listed in {@code all.multisense.key}.
+     */
+    public static final InstanceFilter SINGLE_SENSE = new InstanceFilter() {
+            public boolean accept(String term, String instance,
+                                  Map<String,Double> ratings) {
+                return ratings.size() == 1;
+            }
+        };
+
+    /**
+     * Keeps the instances labeled with more than one sense
+     */
+    public static final InstanceFilter MULTI_SENSE = new InstanceFilter() {
+            public boolean accept(String term, String instance,
+                                  Map<String,Double> ratings) {
+                return ratings.size() > 1;
+            }
+        };
+
+    private KeyViews() { }
+
+    /**
+     * Returns a filter that accepts the terms whose part of speech, which is
+     * the suffix after the last period in a term such as {@code add.v}, is
+     * one of {@code pos}.
+     */
+    public static TermFilter hasPos(String... pos) {
+        final Set<String> suffixes = new HashSet<String>();
+        for (String p : pos)
+            suffixes.add(p);
+        return new TermFilter() {
+            public boolean accept(String term) {
+                int i = term.lastIndexOf('.');
+                return i >= 0 && suffixes.contains(term.substring(i + 1));
+            }
+        };
+    }
+
+    /**
+     * Returns a filter that accepts the instances in {@code instances}.
+     */
+    public static InstanceFilter inInstances(Collection<String> instances) {
+        final Set<String> instanceSet = (instances instanceof Set) 
+            ? (Set<String>)instances : new HashSet<String>(instances);
+        return new InstanceFilter() {
+            public boolean accept(String term, String instance,
+                                  Map<String,Double> ratings) {
+                return instanceSet.contains(instance);
+            }
+        };
+    }
+
+    /**
+     * Returns a filter that accepts all instances of the terms accepted by
+     * {@code filter}.
+     */
+    public static InstanceFilter ofTerms(final TermFilter filter) {
+        return new InstanceFilter() {
+            public boolean accept(String term, String instance,
+                                  Map<String,Double> ratings) {
+                return filter.accept(term);
+            }
+        };
+    }
+
+    /**
+     * Returns a view of the terms whose part of speech, which is the suffix
+     * after the last period in a term such as {@code add.v}, is one of {@code
+     * pos}.
+     */
+    public static Map<String,Map<String,Map<String,Double>>> byPos(
+            Map<String,Map<String,Map<String,Double>>> key, String... pos) {
+        return filterTerms(key, hasPos(pos));
+    }
+
+    /**
+     * Returns a view of the terms in {@code terms}.
+     */
+    public static Map<String,Map<String,Map<String,Double>>> byTerms(
+            Map<String,Map<String,Map<String,Double>>> key, 
+            Collection<String> terms) {
+        final Set<String> termSet = (terms instanceof Set) 
+            ? (Set<String>)terms : new HashSet<String>(terms);
+        return filterTerms(key, new TermFilter() {
+                public boolean accept(String term) {
+                    return termSet.contains(term);
+                }
+            });
+    }
+
+    /**
+     * Returns a view of the instances in {@code instances}, such as those of
+     * another key's {@link PreparedGold#getAllInstances() instances}.
+     */
+    public static Map<String,Map<String,Map<String,Double>>> byInstances(
+            Map<String,Map<String,Map<String,Double>>> key, 
+            Collection<String> instances) {
+        return filterInstances(key, inInstances(instances));
+    }
+
+    /**
+     * Returns a view of the instances labeled with exactly one sense.
+     */
+    public static Map<String,Map<String,Map<String,Double>>> singleSense(
+            Map<String,Map<String,Map<String,Double>>> key) {
+        return filterInstances(key, SINGLE_SENSE);
+    }
+
+    /**
+     * Returns a view of the instances labeled with more than one sense.
+     */
+    public static Map<String,Map<String,Map<String,Double>>> multiSense(
+            Map<String,Map<String,Map<String,Double>>> key) {
+        return filterInstances(key, MULTI_SENSE);
+    }
+
+    /**
+     * Returns a view of the terms accepted by {@code filter}, along with all
+     * of their instances.
+     */
+    public static Map<String,Map<String,Map<String,Double>>> filterTerms(
+            Map<String,Map<String,Map<String,Double>>> key, 
+            TermFilter filter) {
+        return new TermView(key, filter);
+    }
+
+    /**
+     * Returns a view of the instances accepted by {@code filter}.
+     */
+    public static Map<String,Map<String,Map<String,Double>>> filterInstances(
+            Map<String,Map<String,Map<String,Double>>> key, 
+            InstanceFilter filter) {
+        return new InstanceView(key, filter);
+    }
+
+    /**
+     * Returns a read-only view of a term's instances
+     */
+    private static Map<String,Map<String,Double>> readOnly(
+            Map<String,Map<String,Double>> instances) {
+        return new InstanceMap(null, instances, null, instances.size());
+    }
+
+    /**
+     * A view of the terms accepted by a filter
+     */
+    private static class TermView 
+            extends AbstractMap<String,Map<String,Map<String,Double>>> {
+
+        private final Map<String,Map<String,Map<String,Double>>> key;
+
+        private final TermFilter filter;
+
+        /**
+         * The number of terms accepted, or -1 if they have not been counted
+         */
+        private volatile int size = -1;
+
+        TermView(Map<String,Map<String,Map<String,Double>>> key, 
+                 TermFilter filter) {
+            this.key = key;
+            this.filter = filter;
+        }
+
+        @Override public boolean containsKey(Object term) {
+            return term instanceof String && filter.accept((String)term)
+                && key.containsKey(term);
+        }
+
+        @Override public Map<String,Map<String,Double>> get(Object term) {
+            if (!(term instanceof String) || !filter.accept((String)term))
+                return null;
+            Map<String,Map<String,Double>> instances = key.get(term);
+            return (instances == null) ? null : readOnly(instances);
+        }
+
+        @Override public Set<Map.Entry<String,Map<String,Map<String,Double>>>>
+                entrySet() {
+            return new AbstractSet<Map.Entry<String,Map<String,Map<String,Double>>>>() {
+                public Iterator<Map.Entry<String,Map<String,Map<String,Double>>>>
+                        iterator() {
+                    return new FilteredIterator<String,Map<String,Map<String,Double>>>(
+                            key.entrySet().iterator()) {
+                        Map<String,Map<String,Double>> view(
+                                String term, 
+                                Map<String,Map<String,Double>> instances) {
+                            return (filter.accept(term)) 
+                                ? readOnly(instances) : null;
+                        }
+                    };
+                }
+
+                public int size() {
+                    if (size < 0) {
+                        int n = 0;
+                        for (String term : key.keySet()) {
+                            if (filter.accept(term))
+                                n++;
+                        }
+                        size = n;
+                    }
+                    return size;
+                }
+            };
+        }
+    }
+
+    /**
+     * A view of the instances accepted by a filter, which contains the terms
+     * with at least one such instance
+     */
+    private static class InstanceView 
+            extends AbstractMap<String,Map<String,Map<String,Double>>> {
+
+        private final Map<String,Map<String,Map<String,Double>>> key;
+
+        private final InstanceFilter filter;
+
+        /**
+         * The number of accepted instances of each term that has been viewed
+         */
+        private final ConcurrentMap<String,Integer> termSizes =
+            new ConcurrentHashMap<String,Integer>();
+
+        /**
+         * The number of terms with an accepted instance, or -1 if they have
+         * not been counted
+         */
+        private volatile int size = -1;
+
+        InstanceView(Map<String,Map<String,Map<String,Double>>> key, 
+                     InstanceFilter filter) {
+            this.key = key;
+            this.filter = filter;
+        }
+
+        @Override public boolean containsKey(Object term) {
+            return get(term) != null;
+        }
+
+        @Override public Map<String,Map<String,Double>> get(Object term) {
+            Map<String,Map<String,Double>> instances = key.get(term);
+            return (instances == null) 
+                ? null : view((String)term, instances);
+        }
+
+        /**
+         * Returns the view of the term's instances, or {@code null} if none
+         * are accepted
+         */
+        private Map<String,Map<String,Double>> view(
+                String term, Map<String,Map<String,Double>> instances) {
+            int numInstances = numAccepted(term, instances);
+            return (numInstances == 0) 
+                ? null 
+                : new InstanceMap(term, instances, filter, numInstances);
+        }
+
+        /**
+         * Returns the number of the term's instances that are accepted,
+         * counting them the first time the term is viewed
+         */
+        private int numAccepted(String term, 
+                                Map<String,Map<String,Double>> instances) {
+            Integer numInstances = termSizes.get(term);
+            if (numInstances == null) {
+                int n = 0;
+                for (Map.Entry<String,Map<String,Double>> e 
+                         : instances.entrySet()) {
+                    if (filter.accept(term, e.getKey(), e.getValue()))
+                        n++;
+                }
+                numInstances = n;
+                termSizes.put(term, numInstances);
+            }
+            return numInstances;
+        }
+
+        @Override public Set<Map.Entry<String,Map<String,Map<String,Double>>>>
+                entrySet() {
+            return new AbstractSet<Map.Entry<String,Map<String,Map<String,Double>>>>() {
+                public Iterator<Map.Entry<String,Map<String,Map<String,Double>>>>
+                        iterator() {
+                    return new FilteredIterator<String,Map<String,Map<String,Double>>>(
+                            key.entrySet().iterator()) {
+                        Map<String,Map<String,Double>> view(
+                                String term, 
+                                Map<String,Map<String,Double>> instances) {
+                            return InstanceView.this.view(term, instances);
+                        }
+                    };
+                }
+
+                public int size() {
+                    if (size < 0) {
+                        int n = 0;
+                        for (Map.Entry<String,Map<String,Map<String,Double>>> e
+                                 : key.entrySet()) {
+                            if (numAccepted(e.getKey(), e.getValue()) > 0)
+                                n++;
+                        }
+                        size = n;
+                    }
+                    return size;
+                }
+            };
+        }
+    }
+
+    /**
+     * A read-only view of a term's instances that are accepted by a filter,
+     * or of all of them if the filter is {@code null}
+     */
+    private static class InstanceMap 
+            extends AbstractMap<String,Map<String,Double>> {
+
+        private final String term;
+
+        private final Map<String,Map<String,Double>> instances;
+
+        private final InstanceFilter filter;
+
+        /**
+         * The number of instances accepted by the filter
+         */
+        private final int size;
+
+        InstanceMap(String term, Map<String,Map<String,Double>> instances,
+                    InstanceFilter filter, int size) {
+            this.term = term;
+            this.instances = instances;
+            this.filter = filter;
+            this.size = size;
+        }
+
+        @Override public boolean containsKey(Object instance) {
+            return get(instance) != null;
+        }
+
+        @Override public Map<String,Double> get(Object instance) {
+            Map<String,Double> ratings = instances.get(instance);
+            if (ratings == null || (filter != null 
+                    && !filter.accept(term, (String)instance, ratings)))
+                return null;
+            return Collections.unmodifiableMap(ratings);
+        }
+
+        @Override public int size() {
+            return size;
+        }
+
+        @Override public boolean isEmpty() {
+            return size == 0;
+        }
+
+        @Override public Set<Map.Entry<String,Map<String,Double>>> entrySet() {
+            return new AbstractSet<Map.Entry<String,Map<String,Double>>>() {
+                public Iterator<Map.Entry<String,Map<String,Double>>> 
+                        iterator() {
+                    return new FilteredIterator<String,Map<String,Double>>(
+                            instances.entrySet().iterator()) {
+                        Map<String,Double> view(String instance,
+                                                Map<String,Double> ratings) {
+                            return (filter == null 
+                                    || filter.accept(term, instance, ratings))
+                                ? Collections.unmodifiableMap(ratings)
+                                : null;
+                        }
+                    };
+                }
+
+                public int size() {
+                    return size;
+                }
+            };
+        }
+    }
+
+    /**
+     * A read-only iterator over the entries of a map whose values have a
+     * view, which skips the entries without one
+     */
+    private static abstract class FilteredIterator<K,V> 
+            implements Iterator<Map.Entry<K,V>> {
+
+        private final Iterator<Map.Entry<K,V>> entries;
+
+        private Map.Entry<K,V> next;
+
+        FilteredIterator(Iterator<Map.Entry<K,V>> entries) {
+            this.entries = entries;
+            advance();
+        }
+
+        /**
+         * Returns the view of the entry's value, or {@code null} if the entry
+         * should be skipped
+         */
+        abstract V view(K key, V value);
+
+        private void advance() {
+            next = null;
+            while (next == null && entries.hasNext()) {
+                Map.Entry<K,V> e = entries.next();
+                V v = view(e.getKey(), e.getValue());
+                if (v != null)
+                    next = new AbstractMap.SimpleImmutableEntry<K,V>(e.getKey(), v);
+            }
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public Map.Entry<K,V> next() {
+            if (next == null)
+                throw new NoSuchElementException();
+            Map.Entry<K,V> e = next;
+            advance();
+            return e;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("Key views are read-only");
+        }
+    }
+}
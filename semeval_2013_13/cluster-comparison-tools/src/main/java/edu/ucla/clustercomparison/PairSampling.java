@@ -0,0 +1,246 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+import java.util.Random;
+
+
+/**
+ * The settings for estimating a pair-based clustering measure, such as the
+ * {@link FuzzyRandIndex} or {@link FuzzyBCubed}, from a uniform sample of
+ * instance pairs rather than from all pairs.  Samples are drawn in batches
+ * until the standard error of the estimate falls below a target or the sample
+ * budget is spent.  Terms with more instances than a size threshold are
+ * estimated automatically by the measures' {@code compute} methods.
+ */
+public class PairSampling {
+
+    /**
+     * The default settings: terms with more than 5,000 instances are sampled
+     * until a standard error of 0.0005 or one million samples are reached.
+     */
+    public static final PairSampling DEFAULT =
+        new PairSampling(5000, 1000000, 0.0005, 0L);
+
+    /**
+     * Settings that never sample and always compute the exact measure
+     */
+    public static final PairSampling EXACT =
+        new PairSampling(Integer.MAX_VALUE, 1000000, 0.0005, 0L);
+
+    /**
+     * The z-score of a two-sided 95% confidence interval
+     */
+    static final double Z_95 = 1.959963984540054;
+
+    /**
+     * The number of samples drawn between checks of the standard error
+     */
+    static final int BATCH_SIZE = 1024;
+
+    /**
+     * The number of instances above which a term is sampled
+     */
+    private final int sizeThreshold;
+
+    /**
+     * The maximum number of samples drawn for a term
+     */
+    private final int maxSamples;
+
+    /**
+     * The standard error at which sampling stops
+     */
+    private final double targetStandardError;
+
+    /**
+     * The seed of the random number generator for each term
+     */
+    private final long seed;
+
+    /**
+     * Creates the settings for sampling.
+     *
+     * @param sizeThreshold the number of instances above which a term's
+     *        measure is estimated rather than computed exactly
+     * @param maxSamples the maximum number of samples drawn for a term
+     * @param targetStandardError the standard error below which sampling
+     *        stops, or 0 to always draw {@code maxSamples} samples
+     * @param seed the seed used for the random samples of each term, which
+     *        makes the estimates reproducible
+     */
+    public PairSampling(int sizeThreshold, int maxSamples,
+                        double targetStandardError, long seed) {
+        if (sizeThreshold < 2)
+            throw new IllegalArgumentException(
+                "The size threshold must be at least 2: " + sizeThreshold);
+        if (maxSamples < 1)
+            throw new IllegalArgumentException(
+                "Must draw at least one sample: " + maxSamples);
+        if (targetStandardError < 0)
+            throw new IllegalArgumentException(
+                "The target standard error must be non-negative: " +
+                targetStandardError);
+        this.sizeThreshold = sizeThreshold;
+        this.maxSamples = maxSamples;
+        this.targetStandardError = targetStandardError;
+        this.seed = seed;
+    }
+
+    /**
+     * Returns {@code true} if a term with {@code numInstances} instances
+     * should be estimated by sampling.
+     */
+    public boolean shouldSample(int numInstances) {
+        return numInstances > sizeThreshold;
+    }
+
+    public int getSizeThreshold() {
+        return sizeThreshold;
+    }
+
+    public int getMaxSamples() {
+        return maxSamples;
+    }
+
+    public double getTargetStandardError() {
+        return targetStandardError;
+    }
+
+    /**
+     * Returns a new random number generator for sampling a term
+     */
+    Random newRandom() {
+        return new Random(seed);
+    }
+
+    /**
+     * Returns {@code true} once enough samples have been accumulated, which
+     * is checked after each batch.
+     */
+    boolean isDone(Accumulator acc) {
+        if (acc.count() >= maxSamples)
+            return true;
+        return acc.count() % BATCH_SIZE == 0
+            && acc.count() >= 2 * BATCH_SIZE
+            && acc.standardError() <= targetStandardError;
+    }
+
+    /**
+     * An estimate of a measure along with its uncertainty
+     */
+    public static class Estimate {
+
+        private final double value;
+
+        private final double standardError;
+
+        private final int numSamples;
+
+        Estimate(double value, double standardError, int numSamples) {
+            this.value = value;
+            this.standardError = standardError;
+            this.numSamples = numSamples;
+        }
+
+        /**
+         * Returns the estimated value of the measure
+         */
+        public double value() {
+            return value;
+        }
+
+        /**
+         * Returns the standard error of the estimate
+         */
+        public double standardError() {
+            return standardError;
+        }
+
+        /**
+         * Returns the number of samples the estimate is based on
+         */
+        public int numSamples() {
+            return numSamples;
+        }
+
+        /**
+         * Returns the lower end of the 95% confidence interval
+         */
+        public double lower() {
+            return value - Z_95 * standardError;
+        }
+
+        /**
+         * Returns the upper end of the 95% confidence interval
+         */
+        public double upper() {
+            return value + Z_95 * standardError;
+        }
+
+        public String toString() {
+            return value + " (95% CI " + lower() + " - " + upper() + ", " +
+                numSamples + " samples)";
+        }
+    }
+
+    /**
+     * A running mean and variance of the samples, computed with Welford's
+     * method
+     */
+    static class Accumulator {
+
+        private int count;
+
+        private double mean;
+
+        private double m2;
+
+        void add(double x) {
+            count++;
+            double delta = x - mean;
+            mean += delta / count;
+            m2 += delta * (x - mean);
+        }
+
+        int count() {
+            return count;
+        }
+
+        double mean() {
+            return mean;
+        }
+
+        double standardError() {
+            return (count < 2) ? 0 : Math.sqrt(m2 / (count - 1) / count);
+        }
+
+        /**
+         * Returns the estimate of {@code offset + scale * mean}
+         */
+        Estimate toEstimate(double offset, double scale) {
+            return new Estimate(offset + scale * mean,
+                                Math.abs(scale) * standardError(), count);
+        }
+    }
+}
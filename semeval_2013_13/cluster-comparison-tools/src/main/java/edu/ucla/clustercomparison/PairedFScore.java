@@ -0,0 +1,97 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * An implementation of the paired F-Score of <a
+ * href="http://www.aclweb.org/anthology/S10-1011">Manandhar et al. (2010)</a>
+ * for comparing hard sense clusterings.  Precision is the fraction of the pairs
+ * of instances that share a test cluster which also share a gold sense, and
+ * recall is the fraction of the pairs that share a gold sense which also share
+ * a test cluster.  The pairs are counted from the term's {@link
+ * ContingencyTable} rather than enumerated.
+ */
+public class PairedFScore implements ClusterEvaluation {
+
+    public String[] getScoreNames() {
+        return new String[] { "precision", "recall", "f-score" };
+    }
+
+    public TermScore evaluate(TermLabelings labelings) {
+        return new TermScore(compute(ContingencyTable.create(labelings)));
+    }
+
+    /**
+     * Returns the precision, recall and F-score averaged over all terms.  As
+     * in SemEval-2010, the F-score is the average of each term's F-score
+     * rather than that of the averaged precision and recall.
+     */
+    public double[] summarize(List<double[]> termScores) {
+        double pSum = 0;
+        double rSum = 0;
+        double fSum = 0;
+        for (double[] scores : termScores) {
+            pSum += scores[0];
+            rSum += scores[1];
+            fSum += scores[2];
+        }
+        return new double[] { pSum / termScores.size(), 
+                              rSum / termScores.size(),
+                              fSum / termScores.size() };
+    }
+
+    /**
+     * Computes the paired precision, recall and F-score of the hard
+     * clusterings of a term's instances.  Test labels for instances that are
+     * not in the gold labeling are ignored.
+     */
+    public static double[] computePairedFScore(Map<String,Map<String,Double>> instanceToGoldRatings,
+                                               Map<String,Map<String,Double>> instanceToTestRatings) {
+        return compute(ContingencyTable.create(instanceToGoldRatings,
+                                               instanceToTestRatings));
+    }
+
+    /**
+     * Returns the paired precision, recall and F-score of the table.  The
+     * precision (or recall) is 0 if no pairs share a test cluster (or gold
+     * sense).
+     */
+    static double[] compute(ContingencyTable table) {
+        double shared = table.sharedPairs();
+        long testPairs = table.testPairs();
+        long goldPairs = table.goldPairs();
+        double precision = (testPairs == 0) ? 0 : shared / testPairs;
+        double recall = (goldPairs == 0) ? 0 : shared / goldPairs;
+        return new double[] { precision, recall, fScore(precision, recall) };
+    }
+
+    private static double fScore(double precision, double recall) {
+        return (precision + recall > 0) 
+            ? (2 * precision * recall) / (precision + recall)
+            : 0;
+    }
+}
@@ -45,9 +45,44 @@ public class PositionalKendallsTau extends AbstractEvaluation {
     /**
      * Computes the positional weighted Kendall's tau of the two sense rankings.
      */
-    public double evaluateInstance(final Map<String,Double> goldSenseRatings,
-                                   final Map<String,Double> testSenseRatings,
+    public double evaluateInstance(Map<String,Double> goldSenseRatings,
+                                   Map<String,Double> testSenseRatings,
                                    int numSenses) {
+        return evaluateInstance(prepareGold(goldSenseRatings), goldSenseRatings,
+                                testSenseRatings, numSenses);
+    }
+
+    /**
+     * Returns the gold standard senses sorted by their ratings as a {@code
+     * P[]}, ordered as they are in the gold ranking.
+     */
+    @Override protected final Object prepareGold(
+            Map<String,Double> goldSenseRatings) {
+        P[] goldOrder = new P[goldSenseRatings.size()];
+        int i = 0;
+        for (Map.Entry<String,Double> e : goldSenseRatings.entrySet())
+            goldOrder[i++] = new P(e.getKey(), e.getValue());
+        Arrays.sort(goldOrder);
+        return goldOrder;
+    }
+
+    /**
+     * Returns this class, as the sorted gold senses are the same for every
+     * instance of the evaluation.
+     */
+    @Override final Object getPreparationKey() {
+        return PositionalKendallsTau.class;
+    }
+
+    /**
+     * Computes the positional weighted Kendall's tau of the two sense
+     * rankings, using the sorted gold senses from {@link #prepareGold(Map)}.
+     */
+    @Override protected double evaluateInstance(
+            Object preparedGold,
+            Map<String,Double> goldSenseRatings,
+            Map<String,Double> testSenseRatings,
+            int numSenses) {
 
         Set<String> all = new HashSet<String>(goldSenseRatings.keySet());
         all.addAll(testSenseRatings.keySet());
@@ -63,16 +98,19 @@ public class PositionalKendallsTau extends AbstractEvaluation {
                 " a total of " + all.size() + " unique senses: " + all);
         }
         
-        List<P> goldOrder = new ArrayList<P>();
+        // The senses missing from the gold ratings are rated 0 and merged into
+        // the sorted gold senses
+        List<P> notInGold = new ArrayList<P>();
         List<P> testOrder = new ArrayList<P>();
         for (String s : all) {
-            Double g = goldSenseRatings.get(s);
             Double t = testSenseRatings.get(s);
-            goldOrder.add(new P(s, (g == null) ? 0 : g));
             testOrder.add(new P(s, (t == null) ? 0 : t));
+            if (!goldSenseRatings.containsKey(s))
+                notInGold.add(new P(s, 0));
         }
-        Collections.sort(goldOrder);
+        Collections.sort(notInGold);
         Collections.sort(testOrder);
+        List<P> goldOrder = merge((P[])preparedGold, notInGold);
 
         int n = all.size();
         
@@ -187,6 +225,23 @@ public class PositionalKendallsTau extends AbstractEvaluation {
         return (maxDist == 0) ? 0 : 1 - (tauDist / maxDist);
     }
 
+    /**
+     * Merges the two sorted lists of senses into a single sorted list
+     */
+    private static List<P> merge(P[] sorted1, List<P> sorted2) {
+        List<P> merged = new ArrayList<P>(sorted1.length + sorted2.size());
+        int i = 0, j = 0;
+        while (i < sorted1.length && j < sorted2.size()) {
+            merged.add((sorted1[i].compareTo(sorted2.get(j)) <= 0)
+                       ? sorted1[i++] : sorted2.get(j++));
+        }
+        while (i < sorted1.length)
+            merged.add(sorted1[i++]);
+        while (j < sorted2.size())
+            merged.add(sorted2.get(j++));
+        return merged;
+    }
+
     /**
      * Utility class for reprsenting a comparable position and value
      */
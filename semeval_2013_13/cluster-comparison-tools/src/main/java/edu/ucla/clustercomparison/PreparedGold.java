@@ -0,0 +1,423 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import java.util.logging.Logger;
+
+import static edu.ucla.sspace.util.LoggerUtil.verbose;
+
+
+/**
+ * A gold standard key along with all of the data derived from it that the
+ * scorers need, such as the list of instances, the senses used for each term
+ * and the 80/20 train/test splits.  None of this data depends on the key being
+ * tested, so a {@code PreparedGold} may be shared across evaluations, systems
+ * and scoring runs.
+ *
+ * <p> Keys loaded from a file with {@link #load(File)} are cached by their
+ * path, modification time and parsing mode, so repeatedly scoring against the
+ * same gold key file only parses and prepares it once.  The cache holds at most
+ * {@link #MAX_CACHED_KEYS} keys, evicting the least recently used.
+ *
+ * <p> The key is copied when it is prepared, so later changes to the caller's
+ * maps do not affect it, and the key and collections returned by this class
+ * are unmodifiable.
+ */
+public class PreparedGold {
+
+    /**
+     * The number of train/test splits used for the cross-validation
+     */
+    public static final int NUM_FOLDS = 5;
+
+    /**
+     * The maximum number of prepared keys that are kept in the cache.
+     */
+    public static final int MAX_CACHED_KEYS = 8;
+
+    /**
+     * The logger for this class
+     */
+    private static final Logger LOGGER =
+        Logger.getLogger(PreparedGold.class.getName());
+
+    /**
+     * The cache of prepared gold keys, ordered by access so that the least
+     * recently used key is evicted first.
+     */
+    private static final Map<String,PreparedGold> CACHE = new LruCache();
+
+    /**
+     * An unmodifiable copy of the gold standard key
+     */
+    private final Map<String,Map<String,Map<String,Double>>> goldKey;
+
+    /**
+     * All the instances in the gold key, in the order in which they appear
+     */
+    private final List<String> allInstances;
+
+    /**
+     * The set of all senses used in the gold key
+     */
+    private final Set<String> goldSenses;
+
+    /**
+     * A mapping from each term to the set of senses used for it in the gold key
+     */
+    private final Map<String,Set<String>> termToSenses;
+
+    /**
+     * The terms in the gold key, in the order in which they appear
+     */
+    private final List<String> terms;
+
+    /**
+     * A mapping from each term to its position in the gold key
+     */
+    private final Map<String,Integer> termToIndex;
+
+    /**
+     * A mapping from each instance to its position in the gold key
+     */
+    private final Map<String,Integer> instanceToIndex;
+
+    /**
+     * A mapping from each instance to the term to which it belongs
+     */
+    private final Map<String,String> instanceToWord;
+
+    /**
+     * A mapping from each instance to the split in which it is tested
+     */
+    private final Map<String,Integer> instanceToFold;
+
+    /**
+     * The training instances for each of the folds
+     */
+    private final List<Set<String>> trainingSets;
+
+    /**
+     * The test instances for each of the folds, i.e., the instances not in the
+     * corresponding training set
+     */
+    private final List<Set<String>> testSets;
+
+    /**
+     * The gold structures prepared for each instance, keyed by the {@link
+     * AbstractEvaluation#getPreparationKey() preparation key} of the
+     * evaluations that use them.  The keys are weak so that the structures of
+     * an evaluation that prepares its own are dropped along with it.
+     */
+    private final Map<Object,Map<String,AbstractEvaluation.PreparedInstance>>
+        preparedInstances = new WeakHashMap<Object,
+            Map<String,AbstractEvaluation.PreparedInstance>>();
+
+    /**
+     * Prepares the gold key, dividing its instances into the train/test
+     * splits.
+     */
+    public PreparedGold(Map<String,Map<String,Map<String,Double>>> goldKey) {
+        this.goldKey = copyKey(goldKey);
+
+        List<String> instanceList = new ArrayList<String>();
+        List<String> termList = new ArrayList<String>();
+        termToIndex = new HashMap<String,Integer>();
+        instanceToIndex = new HashMap<String,Integer>();
+        instanceToWord = new HashMap<String,String>();
+        Set<String> senseSet = new HashSet<String>();
+        termToSenses = new HashMap<String,Set<String>>();
+        for (Map.Entry<String,Map<String,Map<String,Double>>> e
+                 : this.goldKey.entrySet()) {
+            String term = e.getKey();
+            termToIndex.put(term, termList.size());
+            termList.add(term);
+            Set<String> senses = new HashSet<String>();
+            for (Map.Entry<String,Map<String,Double>> e2
+                     : e.getValue().entrySet()) {
+                instanceToIndex.put(e2.getKey(), instanceList.size());
+                instanceList.add(e2.getKey());
+                instanceToWord.put(e2.getKey(), term);
+                senses.addAll(e2.getValue().keySet());
+            }
+            senseSet.addAll(senses);
+            termToSenses.put(term, Collections.unmodifiableSet(senses));
+        }
+        allInstances = Collections.unmodifiableList(instanceList);
+        terms = Collections.unmodifiableList(termList);
+        goldSenses = Collections.unmodifiableSet(senseSet);
+
+        // Create the sets of training instances by dividing the key into 80%
+        // train, 20% test, where every fifth instance is held out of the same
+        // split
+        List<Set<String>> train = new ArrayList<Set<String>>();
+        List<Set<String>> test = new ArrayList<Set<String>>();
+        for (int i = 0; i < NUM_FOLDS; ++i) {
+            train.add(new HashSet<String>());
+            test.add(new LinkedHashSet<String>());
+        }
+        for (int i = 0; i < allInstances.size(); ++i) {
+            String instance = allInstances.get(i);
+            int toExclude = i % NUM_FOLDS;
+            for (int j = 0; j < NUM_FOLDS; ++j) {
+                if (j == toExclude)
+                    continue;
+                train.get(j).add(instance);
+            }
+        }
+
+        // The test instances of each split are those not used for training,
+        // kept in the gold key's ordering
+        for (String instance : allInstances) {
+            for (int j = 0; j < NUM_FOLDS; ++j) {
+                if (!train.get(j).contains(instance))
+                    test.get(j).add(instance);
+            }
+        }
+
+        List<Set<String>> trainingList = new ArrayList<Set<String>>();
+        List<Set<String>> testList = new ArrayList<Set<String>>();
+        instanceToFold = new HashMap<String,Integer>();
+        for (int j = 0; j < NUM_FOLDS; ++j) {
+            trainingList.add(Collections.unmodifiableSet(train.get(j)));
+            testList.add(Collections.unmodifiableSet(test.get(j)));
+            for (String instance : test.get(j))
+                instanceToFold.put(instance, j);
+        }
+        trainingSets = Collections.unmodifiableList(trainingList);
+        testSets = Collections.unmodifiableList(testList);
+    }
+
+    /**
+     * Returns an unmodifiable copy of {@code key} whose terms, instances and
+     * senses keep the key's ordering.  Each instance's ratings are wrapped
+     * once, so the same map is returned for an instance every time it is
+     * looked up.
+     */
+    private static Map<String,Map<String,Map<String,Double>>> copyKey(
+            Map<String,Map<String,Map<String,Double>>> key) {
+        Map<String,Map<String,Map<String,Double>>> copy =
+            new LinkedHashMap<String,Map<String,Map<String,Double>>>();
+        for (Map.Entry<String,Map<String,Map<String,Double>>> e
+                 : key.entrySet()) {
+            Map<String,Map<String,Double>> instances =
+                new LinkedHashMap<String,Map<String,Double>>();
+            for (Map.Entry<String,Map<String,Double>> e2
+                     : e.getValue().entrySet()) {
+                instances.put(e2.getKey(), Collections.unmodifiableMap(
+                    new LinkedHashMap<String,Double>(e2.getValue())));
+            }
+            copy.put(e.getKey(), Collections.unmodifiableMap(instances));
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * Loads and prepares the gold key in {@code goldKeyFile}, returning a
+     * cached copy if the file has already been prepared and has not been
+     * modified since.
+     */
+    public static PreparedGold load(File goldKeyFile) throws IOException {
+        boolean isStrict = KeyUtil.loadWithStrictParsing;
+        String cacheKey = goldKeyFile.getCanonicalPath() + "\t"
+            + goldKeyFile.lastModified() + "\t" + goldKeyFile.length() + "\t"
+            + isStrict;
+        synchronized (CACHE) {
+            PreparedGold prepared = CACHE.get(cacheKey);
+            if (prepared != null) {
+                verbose(LOGGER, "Reusing prepared gold key %s", goldKeyFile);
+                return prepared;
+            }
+        }
+
+        // Load the key outside of the lock so that other keys may still be
+        // retrieved while this one is parsed
+        PreparedGold prepared =
+            new PreparedGold(KeyUtil.loadKey(goldKeyFile, isStrict));
+        synchronized (CACHE) {
+            CACHE.put(cacheKey, prepared);
+        }
+        return prepared;
+    }
+
+    /**
+     * Removes all prepared keys from the cache.
+     */
+    public static void clearCache() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    /**
+     * Returns the gold key
+     */
+    public Map<String,Map<String,Map<String,Double>>> getKey() {
+        return goldKey;
+    }
+
+    /**
+     * Returns all the instances in the gold key
+     */
+    public List<String> getAllInstances() {
+        return allInstances;
+    }
+
+    /**
+     * Returns the set of all instances in the gold key
+     */
+    public Set<String> getInstances() {
+        return Collections.unmodifiableSet(instanceToIndex.keySet());
+    }
+
+    /**
+     * Returns the position of {@code instance} in {@link #getAllInstances()},
+     * or {@code -1} if the instance is not in the gold key
+     */
+    public int getIndex(String instance) {
+        Integer index = instanceToIndex.get(instance);
+        return (index == null) ? -1 : index;
+    }
+
+    /**
+     * Returns the terms in the gold key, in the order in which they appear
+     */
+    public List<String> getTerms() {
+        return terms;
+    }
+
+    /**
+     * Returns the position of {@code term} in {@link #getTerms()}, or {@code
+     * -1} if the term is not in the gold key
+     */
+    public int getTermIndex(String term) {
+        Integer index = termToIndex.get(term);
+        return (index == null) ? -1 : index;
+    }
+
+    /**
+     * Returns the set of all senses used in the gold key
+     */
+    public Set<String> getGoldSenses() {
+        return goldSenses;
+    }
+
+    /**
+     * Returns the senses used for {@code term} in the gold key, or {@code null}
+     * if the term is not in the key
+     */
+    public Set<String> getSenses(String term) {
+        return termToSenses.get(term);
+    }
+
+    /**
+     * Returns the term for {@code instance}, or {@code null} if the instance is
+     * not in the gold key
+     */
+    public String getWord(String instance) {
+        return instanceToWord.get(instance);
+    }
+
+    /**
+     * Returns the split in which {@code instance} is tested, or {@code -1} if
+     * the instance is not in the gold key
+     */
+    public int getFold(String instance) {
+        Integer fold = instanceToFold.get(instance);
+        return (fold == null) ? -1 : fold;
+    }
+
+    /**
+     * Returns the number of train/test splits
+     */
+    public int numFolds() {
+        return trainingSets.size();
+    }
+
+    /**
+     * Returns the training instances of each split
+     */
+    public List<Set<String>> getTrainingSets() {
+        return trainingSets;
+    }
+
+    /**
+     * Returns the instances to be tested in each split
+     */
+    public List<Set<String>> getTestSets() {
+        return testSets;
+    }
+
+    /**
+     * Returns the gold structures that {@code evaluation} prepares for each
+     * instance, preparing them the first time an evaluation with its
+     * preparation key asks for them.
+     */
+    Map<String,AbstractEvaluation.PreparedInstance> getPreparedInstances(
+            AbstractEvaluation evaluation) {
+        Object preparationKey = evaluation.getPreparationKey();
+        synchronized (preparedInstances) {
+            Map<String,AbstractEvaluation.PreparedInstance> prepared =
+                preparedInstances.get(preparationKey);
+            if (prepared == null) {
+                verbose(LOGGER, "Preparing the gold key for %s",
+                        evaluation.getClass().getSimpleName());
+                prepared = evaluation.prepareInstances(goldKey);
+                preparedInstances.put(preparationKey, prepared);
+            }
+            return prepared;
+        }
+    }
+
+    /**
+     * A map that evicts its least recently used entry once it holds more than
+     * {@link #MAX_CACHED_KEYS} prepared keys
+     */
+    private static class LruCache extends LinkedHashMap<String,PreparedGold> {
+
+        private static final long serialVersionUID = 1L;
+
+        LruCache() {
+            super(16, 0.75f, true);
+        }
+
+        @Override protected boolean removeEldestEntry(
+                Map.Entry<String,PreparedGold> eldest) {
+            return size() > MAX_CACHED_KEYS;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+
+import java.nio.channels.Channels;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A class for collecting the remapped test key from each of the train/test
+ * splits and writing it as a single SensEval key file.  Terms are written in
+ * lexicographic order and their instances, which are labeled as {@code
+ * term.pos.number}, are sorted by term, pos and number so that {@code
+ * term.pos.2} comes before {@code term.pos.10}.
+ *
+ * <p> Each instance identifier is parsed only once, when it is added, into
+ * integer sort keys, and only instances that are present in the gold key are
+ * kept.
+ */
+class RemappedKeyWriter {
+
+    /**
+     * The size of the buffer used when writing the key
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * The gold key, which decides which instances are written
+     */
+    private final Map<String,Map<String,Map<String,Double>>> goldKey;
+
+    /**
+     * The distinct strings seen for each part of the sort key, mapped to the
+     * order in which they were first seen
+     */
+    private final Map<String,Integer> terms;
+    private final Map<String,Integer> instanceTerms;
+    private final Map<String,Integer> instancePos;
+
+    /**
+     * The sense ratings of each added instance
+     */
+    private final List<Map<String,Double>> ratings;
+
+    /**
+     * The instance identifier of each added instance
+     */
+    private final List<String> instances;
+
+    /**
+     * The sort keys of each added instance, which index into the maps of
+     * distinct strings, except for the instance's number
+     */
+    private int[] termKeys;
+    private int[] instanceTermKeys;
+    private int[] posKeys;
+    private int[] numberKeys;
+
+    /**
+     * The number of instances added
+     */
+    private int size;
+
+    public RemappedKeyWriter(Map<String,Map<String,Map<String,Double>>> goldKey) {
+        this.goldKey = goldKey;
+        terms = new HashMap<String,Integer>();
+        instanceTerms = new HashMap<String,Integer>();
+        instancePos = new HashMap<String,Integer>();
+        ratings = new ArrayList<Map<String,Double>>();
+        instances = new ArrayList<String>();
+        termKeys = new int[16];
+        instanceTermKeys = new int[16];
+        posKeys = new int[16];
+        numberKeys = new int[16];
+    }
+
+    /**
+     * Adds all the instances in the remapped key that are also in the gold key.
+     */
+    public void add(Map<String,Map<String,Map<String,Double>>> remappedKey) {
+        for (Map.Entry<String,Map<String,Map<String,Double>>> e
+                 : remappedKey.entrySet()) {
+            String term = e.getKey();
+            Map<String,Map<String,Double>> goldInstances = goldKey.get(term);
+            if (goldInstances == null)
+                continue;
+            int termKey = index(terms, term);
+            for (Map.Entry<String,Map<String,Double>> e2
+                     : e.getValue().entrySet()) {
+                String instance = e2.getKey();
+                if (goldInstances.containsKey(instance))
+                    add(termKey, instance, e2.getValue());
+            }
+        }
+    }
+
+    /**
+     * Parses the sort keys for the instance and records its ratings.
+     */
+    private void add(int termKey, String instance, Map<String,Double> senses) {
+        if (size == termKeys.length) {
+            int newSize = size * 2;
+            termKeys = Arrays.copyOf(termKeys, newSize);
+            instanceTermKeys = Arrays.copyOf(instanceTermKeys, newSize);
+            posKeys = Arrays.copyOf(posKeys, newSize);
+            numberKeys = Arrays.copyOf(numberKeys, newSize);
+        }
+        String[] arr = instance.split("\\.");
+        termKeys[size] = termKey;
+        instanceTermKeys[size] = index(instanceTerms, arr[0]);
+        posKeys[size] = index(instancePos, arr[1]);
+        numberKeys[size] = Integer.parseInt(arr[2]);
+        instances.add(instance);
+        ratings.add(senses);
+        size++;
+    }
+
+    /**
+     * Returns the index for {@code s}, assigning it the next index if it has
+     * not been seen before.
+     */
+    private static int index(Map<String,Integer> indices, String s) {
+        Integer i = indices.get(s);
+        if (i == null) {
+            i = indices.size();
+            indices.put(s, i);
+        }
+        return i;
+    }
+
+    /**
+     * Returns an array where the value at each string's index is its rank in
+     * lexicographic order.
+     */
+    private static int[] ranks(Map<String,Integer> indices) {
+        String[] sorted = indices.keySet().toArray(new String[indices.size()]);
+        Arrays.sort(sorted);
+        int[] ranks = new int[sorted.length];
+        for (int i = 0; i < sorted.length; ++i)
+            ranks[indices.get(sorted[i])] = i;
+        return ranks;
+    }
+
+    /**
+     * Writes all the added instances to {@code file} as a SensEval key.
+     */
+    public void write(File file) throws IOException {
+        // Replace the indices with their lexicographic rank, so that the sort
+        // only needs to compare integers
+        int[] termRanks = ranks(terms);
+        int[] instanceTermRanks = ranks(instanceTerms);
+        int[] posRanks = ranks(instancePos);
+        for (int i = 0; i < size; ++i) {
+            termKeys[i] = termRanks[termKeys[i]];
+            instanceTermKeys[i] = instanceTermRanks[instanceTermKeys[i]];
+            posKeys[i] = posRanks[posKeys[i]];
+        }
+
+        int[] order = new int[size];
+        for (int i = 0; i < size; ++i)
+            order[i] = i;
+        mergeSort(order, new int[size], 0, size);
+
+        Writer w = new BufferedWriter(Channels.newWriter(
+            new FileOutputStream(file).getChannel(), "UTF-8"), BUFFER_SIZE);
+        try {
+            String[] sortedTerms = new String[terms.size()];
+            for (Map.Entry<String,Integer> e : terms.entrySet())
+                sortedTerms[termRanks[e.getValue()]] = e.getKey();
+
+            for (int i : order) {
+                w.write(sortedTerms[termKeys[i]]);
+                w.write(' ');
+                w.write(instances.get(i));
+                for (Map.Entry<String,Double> e : ratings.get(i).entrySet()) {
+                    w.write(' ');
+                    w.write(e.getKey());
+                    w.write('/');
+                    w.write(String.valueOf(e.getValue()));
+                }
+                w.write('\n');
+            }
+        } finally {
+            w.close();
+        }
+    }
+
+    /**
+     * Returns a negative number, zero, or a positive number as instance {@code
+     * i} sorts before, with, or after instance {@code j}.
+     */
+    private int compare(int i, int j) {
+        if (termKeys[i] != termKeys[j])
+            return termKeys[i] - termKeys[j];
+        if (instanceTermKeys[i] != instanceTermKeys[j])
+            return instanceTermKeys[i] - instanceTermKeys[j];
+        if (posKeys[i] != posKeys[j])
+            return posKeys[i] - posKeys[j];
+        return (numberKeys[i] < numberKeys[j])
+            ? -1 : ((numberKeys[i] == numberKeys[j]) ? 0 : 1);
+    }
+
+    /**
+     * Stably sorts the instances in {@code order[from, to)}.
+     */
+    private void mergeSort(int[] order, int[] tmp, int from, int to) {
+        if (to - from < 2)
+            return;
+        int mid = (from + to) >>> 1;
+        mergeSort(order, tmp, from, mid);
+        mergeSort(order, tmp, mid, to);
+        // Skip the merge if the halves are already in order
+        if (compare(order[mid - 1], order[mid]) <= 0)
+            return;
+        System.arraycopy(order, from, tmp, from, to - from);
+        int i = from, j = mid, k = from;
+        while (i < mid && j < to)
+            order[k++] = (compare(tmp[j], tmp[i]) < 0) ? tmp[j++] : tmp[i++];
+        while (i < mid)
+            order[k++] = tmp[i++];
+        while (j < to)
+            order[k++] = tmp[j++];
+    }
+}
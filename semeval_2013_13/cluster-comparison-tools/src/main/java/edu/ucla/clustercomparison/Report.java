@@ -0,0 +1,173 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * The results of an evaluation as a table with one row per term and a final
+ * row for all terms, along with any notes about the terms that could not be
+ * scored.  A report is filled in while the scores are computed and only
+ * written out afterwards, by a {@link ReportSink}.
+ */
+public class Report {
+
+    /**
+     * The names of the columns, the first of which is the column of row labels
+     */
+    private final List<String> columns;
+
+    /**
+     * The notes about the evaluation, in the order they were added
+     */
+    private final List<String> notes;
+
+    /**
+     * The row of each term, in the order they were added
+     */
+    private final List<Row> rows;
+
+    /**
+     * The row of all terms, or {@code null} if it has not been set
+     */
+    private Row total;
+
+    /**
+     * Creates an empty report with the named columns, the first of which is
+     * the column of row labels.
+     */
+    public Report(String... columns) {
+        if (columns.length == 0)
+            throw new IllegalArgumentException("A report needs a label column");
+        this.columns = Collections.unmodifiableList(
+            new ArrayList<String>(Arrays.asList(columns)));
+        notes = new ArrayList<String>();
+        rows = new ArrayList<Row>();
+    }
+
+    /**
+     * Adds a note about the evaluation, such as a term that was not scored.
+     */
+    public void addNote(String note) {
+        notes.add(note);
+    }
+
+    /**
+     * Adds the row of scores for the labeled term.
+     */
+    public void addRow(String label, double... values) {
+        addRow(label, null, values);
+    }
+
+    /**
+     * Adds the row of scores for the labeled term, along with a comment on how
+     * the scores were computed, or {@code null} if there is none.
+     */
+    public void addRow(String label, String comment, double... values) {
+        rows.add(newRow(label, comment, values));
+    }
+
+    /**
+     * Sets the row of scores for all terms.
+     */
+    public void setTotal(String label, double... values) {
+        total = newRow(label, null, values);
+    }
+
+    private Row newRow(String label, String comment, double[] values) {
+        if (values.length != columns.size() - 1)
+            throw new IllegalArgumentException(
+                "Expected " + (columns.size() - 1) + " values for " + label +
+                " but got " + values.length);
+        return new Row(label, comment, values.clone());
+    }
+
+    /**
+     * Returns the names of the columns, the first of which is the column of
+     * row labels
+     */
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public List<String> getNotes() {
+        return Collections.unmodifiableList(notes);
+    }
+
+    public List<Row> getRows() {
+        return Collections.unmodifiableList(rows);
+    }
+
+    /**
+     * Returns the row of all terms, or {@code null} if it has not been set
+     */
+    public Row getTotal() {
+        return total;
+    }
+
+    /**
+     * A labeled row of scores in the report
+     */
+    public static class Row {
+
+        private final String label;
+
+        private final String comment;
+
+        private final double[] values;
+
+        Row(String label, String comment, double[] values) {
+            this.label = label;
+            this.comment = comment;
+            this.values = values;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * Returns the comment on how the row's scores were computed, or
+         * {@code null} if there is none
+         */
+        public String getComment() {
+            return comment;
+        }
+
+        /**
+         * Returns the value in the column after the label column with the
+         * given index
+         */
+        public double getValue(int i) {
+            return values[i];
+        }
+
+        public int numValues() {
+            return values.length;
+        }
+    }
+}
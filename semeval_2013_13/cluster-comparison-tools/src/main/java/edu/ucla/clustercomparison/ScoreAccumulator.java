@@ -0,0 +1,252 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * The running totals of the instance scores of each term in a gold key.
+ * Evaluations add the score of each instance by the ids of its term and
+ * instance, which are their positions in the {@link PreparedGold}, and the
+ * number of scores, their sum and their sum of squares are kept per term in
+ * primitive arrays.  The scores of the individual instances are only kept if
+ * requested, in which case they are stored in a single array indexed by
+ * instance.
+ *
+ * <p> The scores of a term are summed in the order they are added, so the
+ * totals are the same as summing a term's scores from a map that kept them in
+ * the order they were computed.  This class is not thread-safe.
+ */
+public class ScoreAccumulator {
+
+    /**
+     * The gold key whose instances are scored
+     */
+    private final PreparedGold gold;
+
+    /**
+     * The number of instances scored for each term
+     */
+    private final int[] counts;
+
+    /**
+     * The sum of each term's instance scores
+     */
+    private final double[] sums;
+
+    /**
+     * The sum of the squares of each term's instance scores
+     */
+    private final double[] sumsOfSquares;
+
+    /**
+     * The score of each instance, or {@code NaN} if it has not been scored, or
+     * {@code null} if the scores are not retained
+     */
+    private final double[] instanceScores;
+
+    /**
+     * The ids of the instances in the order they were scored, or {@code null}
+     * if the scores are not retained
+     */
+    private final int[] order;
+
+    /**
+     * The total number of instances scored
+     */
+    private int numScored;
+
+    /**
+     * Creates an accumulator for the terms of the gold key, which keeps the
+     * score of each instance if {@code retainScores} is {@code true}.
+     */
+    public ScoreAccumulator(PreparedGold gold, boolean retainScores) {
+        this.gold = gold;
+        int numTerms = gold.getTerms().size();
+        counts = new int[numTerms];
+        sums = new double[numTerms];
+        sumsOfSquares = new double[numTerms];
+        if (retainScores) {
+            int numInstances = gold.getAllInstances().size();
+            instanceScores = new double[numInstances];
+            Arrays.fill(instanceScores, Double.NaN);
+            order = new int[numInstances];
+        }
+        else {
+            instanceScores = null;
+            order = null;
+        }
+    }
+
+    /**
+     * Returns the id of the term, or {@code -1} if it is not in the gold key
+     */
+    public int getTermId(String term) {
+        return gold.getTermIndex(term);
+    }
+
+    /**
+     * Returns the id of the instance, or {@code -1} if it is not in the gold
+     * key
+     */
+    public int getInstanceId(String instance) {
+        return gold.getIndex(instance);
+    }
+
+    /**
+     * Adds the score of the instance to the totals of its term.
+     *
+     * @throws IllegalArgumentException if either id is not in the gold key,
+     *         if the score is not finite, or if the instance's score has
+     *         already been retained
+     */
+    public void add(int termId, int instanceId, double score) {
+        if (termId < 0 || termId >= counts.length)
+            throw new IllegalArgumentException("Unknown term id: " + termId);
+        if (instanceId < 0 || instanceId >= gold.getAllInstances().size())
+            throw new IllegalArgumentException(
+                "Unknown instance id: " + instanceId);
+        if (Double.isNaN(score) || Double.isInfinite(score))
+            throw new IllegalArgumentException("Invalid score: " + score);
+        if (instanceScores != null) {
+            if (!Double.isNaN(instanceScores[instanceId]))
+                throw new IllegalArgumentException(
+                    gold.getAllInstances().get(instanceId) + 
+                    " was scored more than once");
+            instanceScores[instanceId] = score;
+            order[numScored] = instanceId;
+        }
+        counts[termId]++;
+        sums[termId] += score;
+        sumsOfSquares[termId] += score * score;
+        numScored++;
+    }
+
+    /**
+     * Adds the score of the instance, which is looked up in the gold key.
+     *
+     * @throws IllegalArgumentException if the instance is not in the gold key
+     */
+    public void add(String instance, double score) {
+        int instanceId = gold.getIndex(instance);
+        if (instanceId < 0)
+            throw new IllegalArgumentException(
+                "Instance is not in the gold key: " + instance);
+        add(gold.getTermIndex(gold.getWord(instance)), instanceId, score);
+    }
+
+    /**
+     * Returns the number of terms in the gold key
+     */
+    public int numTerms() {
+        return counts.length;
+    }
+
+    /**
+     * Returns the term with the id
+     */
+    public String getTerm(int termId) {
+        return gold.getTerms().get(termId);
+    }
+
+    /**
+     * Returns the number of instances of the term that were scored
+     */
+    public int getCount(int termId) {
+        return counts[termId];
+    }
+
+    /**
+     * Returns the sum of the scores of the term's instances
+     */
+    public double getSum(int termId) {
+        return sums[termId];
+    }
+
+    /**
+     * Returns the sum of the squared scores of the term's instances
+     */
+    public double getSumOfSquares(int termId) {
+        return sumsOfSquares[termId];
+    }
+
+    /**
+     * Returns the total number of instances scored
+     */
+    public int getTotalCount() {
+        return numScored;
+    }
+
+    /**
+     * Returns {@code true} if the score of each instance is kept
+     */
+    public boolean retainsScores() {
+        return instanceScores != null;
+    }
+
+    /**
+     * Returns {@code true} if the instance with the id has been scored.
+     *
+     * @throws IllegalStateException if the scores are not retained
+     */
+    public boolean isScored(int instanceId) {
+        checkRetained();
+        return !Double.isNaN(instanceScores[instanceId]);
+    }
+
+    /**
+     * Returns the score of the instance with the id, or {@code NaN} if it has
+     * not been scored.
+     *
+     * @throws IllegalStateException if the scores are not retained
+     */
+    public double getScore(int instanceId) {
+        checkRetained();
+        return instanceScores[instanceId];
+    }
+
+    /**
+     * Returns a new mapping from each scored instance to its score, in the
+     * order in which they were scored.
+     *
+     * @throws IllegalStateException if the scores are not retained
+     */
+    public Map<String,Double> getInstanceScores() {
+        checkRetained();
+        List<String> instances = gold.getAllInstances();
+        Map<String,Double> scores = new LinkedHashMap<String,Double>();
+        for (int i = 0; i < numScored; ++i)
+            scores.put(instances.get(order[i]), instanceScores[order[i]]);
+        return scores;
+    }
+
+    private void checkRetained() {
+        if (instanceScores == null)
+            throw new IllegalStateException(
+                "The instance scores are not retained");
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+import java.util.Collection;
+import java.util.Map;
+
+
+/**
+ * A numbering of the gold standard senses of a term, which is used to encode
+ * the senses labeling an instance as a {@link SenseSet} of bits.
+ */
+class SenseDictionary {
+
+    /**
+     * The bit of each sense
+     */
+    private final Indexer<String> senseIndices;
+
+    /**
+     * Creates a dictionary of the senses.
+     */
+    SenseDictionary(Collection<String> senses) {
+        senseIndices = new Indexer<String>();
+        senseIndices.indexAll(senses);
+    }
+
+    /**
+     * Returns the number of senses in the dictionary
+     */
+    int size() {
+        return senseIndices.size();
+    }
+
+    /**
+     * Returns the set of senses rated in {@code senseRatings}, where the senses
+     * that are not in the dictionary are only counted.
+     */
+    SenseSet encode(Map<String,Double> senseRatings) {
+        int numSenses = senseIndices.size();
+        long[] words = (numSenses > 64) 
+            ? new long[(numSenses + 63) / 64] 
+            : null;
+        long bits = 0;
+        int numUnknown = 0;
+        for (String sense : senseRatings.keySet()) {
+            int i = senseIndices.lookup(sense);
+            if (i < 0)
+                numUnknown++;
+            else if (words == null)
+                bits |= 1L << i;
+            else
+                words[i >>> 6] |= 1L << i;
+        }
+        return new SenseSet(this, (words == null) ? bits : words[0], words, 
+                            senseRatings.size(), numUnknown);
+    }
+}
@@ -0,0 +1,893 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import java.nio.channels.FileChannel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import java.util.logging.Logger;
+
+import java.util.zip.GZIPInputStream;
+
+import static edu.ucla.sspace.util.LoggerUtil.verbose;
+
+
+/**
+ * A word sense inventory, where each sense of a word is described by a
+ * weighted cluster of related terms.  Inventories are parsed from
+ * tab-separated files (optionally gzipped) with the format
+ *
+ * <pre>
+ *   word &lt;TAB&gt; sense-id &lt;TAB&gt; term:weight, term:weight, ...
+ * </pre>
+ *
+ * where a term without a numeric weight is given a weight of 1.  Cluster terms
+ * are lower-cased, and rows that repeat a word's sense add their weights to the
+ * existing cluster.  A first line of {@code word <TAB> cid <TAB> cluster} or
+ * {@code target <TAB> sense_id <TAB> related}, the column headers used by the
+ * distributed inventories, is skipped.
+ *
+ * <p> The inventory is stored in columns rather than as objects per sense.
+ * Words, senses and cluster entries are numbered consecutively: each word
+ * owns a range of senses and each sense owns a range of entries, given by
+ * offset arrays.  The entries of a sense are sorted by the index of their term
+ * in a lexicographically sorted vocabulary, and have {@code float} weights.
+ * An inverted index lists the senses whose clusters contain each term.  Once
+ * parsed, an inventory can be {@link #write(File) written} to a binary file
+ * that {@link #load(File)} memory maps, so that large inventories can be
+ * queried without being parsed again.  Words are sorted lexicographically and
+ * the senses of a word are kept in the order they first appear in the parsed
+ * file.
+ */
+public class SenseInventory {
+
+    /**
+     * The logger for this class
+     */
+    private static final Logger LOGGER =
+        Logger.getLogger(SenseInventory.class.getName());
+
+    /**
+     * The column headers with which text inventories may start
+     */
+    private static final String[] HEADERS = {
+        "word\tcid\tcluster", "target\tsense_id\trelated"
+    };
+
+    /**
+     * The first four bytes of a binary inventory file
+     */
+    static final int MAGIC = 0x53494e56;
+
+    /**
+     * The version of the binary file format
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The cluster terms, sorted lexicographically
+     */
+    private final StringTable terms;
+
+    /**
+     * The words, sorted lexicographically
+     */
+    private final StringTable words;
+
+    /**
+     * The identifier of each sense within its word
+     */
+    private final StringTable senseIds;
+
+    /**
+     * The index of the first sense of each word, followed by the number of
+     * senses
+     */
+    private final IntBuffer wordSenseStarts;
+
+    /**
+     * The index of the first entry of each sense, followed by the number of
+     * entries
+     */
+    private final IntBuffer senseEntryStarts;
+
+    /**
+     * The Euclidean length of each sense's weight vector
+     */
+    private final DoubleBuffer senseNorms;
+
+    /**
+     * The term of each entry, in increasing order within a sense
+     */
+    private final IntBuffer entryTerms;
+
+    /**
+     * The weight of each entry
+     */
+    private final FloatBuffer entryWeights;
+
+    /**
+     * The index of each term's first posting, followed by the number of
+     * postings
+     */
+    private final IntBuffer termPostingStarts;
+
+    /**
+     * The senses whose clusters contain each term, in increasing order for
+     * each term
+     */
+    private final IntBuffer postings;
+
+    private SenseInventory(StringTable terms, StringTable words,
+                           StringTable senseIds, IntBuffer wordSenseStarts,
+                           IntBuffer senseEntryStarts, DoubleBuffer senseNorms,
+                           IntBuffer entryTerms, FloatBuffer entryWeights,
+                           IntBuffer termPostingStarts, IntBuffer postings) {
+        this.terms = terms;
+        this.words = words;
+        this.senseIds = senseIds;
+        this.wordSenseStarts = wordSenseStarts;
+        this.senseEntryStarts = senseEntryStarts;
+        this.senseNorms = senseNorms;
+        this.entryTerms = entryTerms;
+        this.entryWeights = entryWeights;
+        this.termPostingStarts = termPostingStarts;
+        this.postings = postings;
+    }
+
+    /**
+     * Loads the inventory in {@code file}, which is memory mapped if it is a
+     * binary inventory and otherwise parsed as a text inventory.
+     */
+    public static SenseInventory load(File file) throws IOException {
+        DataInputStream dis = new DataInputStream(new FileInputStream(file));
+        int magic = 0;
+        try {
+            if (file.length() >= 4)
+                magic = dis.readInt();
+        } finally {
+            dis.close();
+        }
+        return (magic == MAGIC) ? map(file) : parse(file);
+    }
+
+    /**
+     * Parses the text inventory in {@code file}, which is read as gzipped data
+     * if its name ends in {@code .gz}.  A header row on the first line is
+     * skipped.
+     */
+    public static SenseInventory parse(File file) throws IOException {
+        InputStream is = new FileInputStream(file);
+        if (file.getName().endsWith(".gz"))
+            is = new GZIPInputStream(is);
+        BufferedReader br =
+            new BufferedReader(new InputStreamReader(is, "UTF-8"));
+
+        // The senses of each word, where each sense has the list of rows that
+        // contribute to its cluster
+        Map<String,Map<String,List<int[]>>> wordToSenses =
+            new HashMap<String,Map<String,List<int[]>>>();
+        // The temporary term indices and weights of all parsed entries
+        Map<String,Integer> termIndices = new HashMap<String,Integer>();
+        GrowableEntries parsed = new GrowableEntries();
+        int lineNo = 0;
+        try {
+            for (String line = null; (line = br.readLine()) != null; ) {
+                lineNo++;
+                if (lineNo == 1 && isHeader(line))
+                    continue;
+                int tab1 = line.indexOf('\t');
+                int tab2 = (tab1 < 0) ? -1 : line.indexOf('\t', tab1 + 1);
+                if (tab2 < 0) {
+                    LOGGER.warning("Skipping malformed inventory line " +
+                                   lineNo + " of " + file);
+                    continue;
+                }
+                String word = line.substring(0, tab1);
+                String senseId = line.substring(tab1 + 1, tab2);
+                int end = line.indexOf('\t', tab2 + 1);
+                String cluster = (end < 0)
+                    ? line.substring(tab2 + 1)
+                    : line.substring(tab2 + 1, end);
+
+                Map<String,List<int[]>> senses = wordToSenses.get(word);
+                if (senses == null) {
+                    senses = new LinkedHashMap<String,List<int[]>>();
+                    wordToSenses.put(word, senses);
+                }
+                List<int[]> rows = senses.get(senseId);
+                if (rows == null) {
+                    rows = new ArrayList<int[]>(1);
+                    senses.put(senseId, rows);
+                }
+                int start = parsed.size;
+                parseCluster(cluster, termIndices, parsed);
+                rows.add(new int[] { start, parsed.size });
+            }
+        } finally {
+            br.close();
+        }
+
+        // Sort the vocabulary and find the sorted position of each temporary
+        // term index
+        String[] sortedTerms = termIndices.keySet().toArray(
+            new String[termIndices.size()]);
+        Arrays.sort(sortedTerms);
+        int[] termRanks = new int[sortedTerms.length];
+        for (int i = 0; i < sortedTerms.length; ++i)
+            termRanks[termIndices.get(sortedTerms[i])] = i;
+        termIndices = null;
+
+        String[] sortedWords = wordToSenses.keySet().toArray(
+            new String[wordToSenses.size()]);
+        Arrays.sort(sortedWords);
+
+        int[] wordSenseStarts = new int[sortedWords.length + 1];
+        List<String> senseIdList = new ArrayList<String>();
+        GrowableEntries entries = new GrowableEntries();
+        int[] senseEntryStarts = new int[16];
+        for (int w = 0; w < sortedWords.length; ++w) {
+            wordSenseStarts[w] = senseIdList.size();
+            for (Map.Entry<String,List<int[]>> e
+                     : wordToSenses.get(sortedWords[w]).entrySet()) {
+                int s = senseIdList.size();
+                if (s + 1 >= senseEntryStarts.length)
+                    senseEntryStarts =
+                        Arrays.copyOf(senseEntryStarts, (s + 1) * 2);
+                senseEntryStarts[s] = entries.size;
+                senseIdList.add(e.getKey());
+                addSense(e.getValue(), parsed, termRanks, entries);
+            }
+        }
+        int numSenses = senseIdList.size();
+        wordSenseStarts[sortedWords.length] = numSenses;
+        senseEntryStarts = Arrays.copyOf(senseEntryStarts, numSenses + 1);
+        senseEntryStarts[numSenses] = entries.size;
+        int[] entryTerms = Arrays.copyOf(entries.terms, entries.size);
+        float[] entryWeights = new float[entries.size];
+        for (int i = 0; i < entries.size; ++i)
+            entryWeights[i] = (float)entries.weights[i];
+
+        double[] senseNorms = new double[numSenses];
+        for (int s = 0; s < numSenses; ++s) {
+            double sum = 0;
+            for (int i = senseEntryStarts[s]; i < senseEntryStarts[s+1]; ++i)
+                sum += (double)entryWeights[i] * entryWeights[i];
+            senseNorms[s] = Math.sqrt(sum);
+        }
+
+        // Invert the entries with a counting sort on their terms, which keeps
+        // each term's postings in sense order
+        int[] termPostingStarts = new int[sortedTerms.length + 1];
+        for (int t : entryTerms)
+            termPostingStarts[t + 1]++;
+        for (int t = 0; t < sortedTerms.length; ++t)
+            termPostingStarts[t + 1] += termPostingStarts[t];
+        int[] next = Arrays.copyOf(termPostingStarts, sortedTerms.length);
+        int[] postings = new int[entryTerms.length];
+        for (int s = 0; s < numSenses; ++s) {
+            for (int i = senseEntryStarts[s]; i < senseEntryStarts[s+1]; ++i)
+                postings[next[entryTerms[i]]++] = s;
+        }
+
+        SenseInventory inventory = new SenseInventory(
+            new StringTable(Arrays.asList(sortedTerms)),
+            new StringTable(Arrays.asList(sortedWords)),
+            new StringTable(senseIdList),
+            IntBuffer.wrap(wordSenseStarts),
+            IntBuffer.wrap(senseEntryStarts),
+            DoubleBuffer.wrap(senseNorms),
+            IntBuffer.wrap(entryTerms),
+            FloatBuffer.wrap(entryWeights),
+            IntBuffer.wrap(termPostingStarts),
+            IntBuffer.wrap(postings));
+        verbose(LOGGER, "Parsed %d words with %d senses, %d cluster entries " +
+                "and %d distinct terms from %s", inventory.numWords(),
+                inventory.numSenses(), inventory.numEntries(),
+                inventory.numTerms(), file);
+        return inventory;
+    }
+
+    /**
+     * Returns {@code true} if the first three columns of the line are one of
+     * the known inventory headers
+     */
+    private static boolean isHeader(String line) {
+        int tab1 = line.indexOf('\t');
+        int tab2 = (tab1 < 0) ? -1 : line.indexOf('\t', tab1 + 1);
+        int end = (tab2 < 0) ? -1 : line.indexOf('\t', tab2 + 1);
+        String columns = (end < 0) ? line : line.substring(0, end);
+        for (String header : HEADERS) {
+            if (header.equals(columns.trim()))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Parses a list of {@code term:weight} entries, appending them to {@code
+     * entries} using the temporary index of each term.
+     */
+    private static void parseCluster(String cluster,
+                                     Map<String,Integer> termIndices,
+                                     GrowableEntries entries) {
+        for (String entry : cluster.split(",")) {
+            entry = entry.trim();
+            if (entry.length() == 0)
+                continue;
+            // Terms may themselves contain a ':', so the weight is whatever
+            // follows the last one
+            int sep = entry.lastIndexOf(':');
+            if (sep < 0) {
+                LOGGER.fine("Skipping cluster entry without a weight: " +
+                            entry);
+                continue;
+            }
+            String term = entry.substring(0, sep).toLowerCase();
+            String weightStr = entry.substring(sep + 1);
+            double weight = 1;
+            if (weightStr.length() > 0
+                    && Character.isDigit(weightStr.charAt(0))) {
+                try {
+                    weight = Double.parseDouble(weightStr);
+                } catch (NumberFormatException nfe) {
+                    LOGGER.fine("Skipping cluster entry with a malformed " +
+                                "weight: " + entry);
+                    continue;
+                }
+            }
+            Integer index = termIndices.get(term);
+            if (index == null) {
+                index = termIndices.size();
+                termIndices.put(term, index);
+            }
+            entries.add(index, weight);
+        }
+    }
+
+    /**
+     * Appends the entries of a sense, which are taken from the given ranges of
+     * {@code parsed}, to {@code entries} sorted by their term's rank, summing
+     * the weights of repeated terms.
+     */
+    private static void addSense(List<int[]> rows, GrowableEntries parsed,
+                                 int[] termRanks, GrowableEntries entries) {
+        int n = 0;
+        for (int[] row : rows)
+            n += row[1] - row[0];
+        long[] keyed = new long[n];
+        int k = 0;
+        for (int[] row : rows) {
+            // Pack the term's rank with the entry's position so that sorting
+            // keeps repeated terms in the order they were parsed
+            for (int i = row[0]; i < row[1]; ++i)
+                keyed[k++] = ((long)termRanks[parsed.terms[i]] << 32) | i;
+        }
+        Arrays.sort(keyed);
+        int prevTerm = -1;
+        for (long key : keyed) {
+            int term = (int)(key >>> 32);
+            double weight = parsed.weights[(int)key];
+            if (term == prevTerm)
+                entries.weights[entries.size - 1] += weight;
+            else
+                entries.add(term, weight);
+            prevTerm = term;
+        }
+    }
+
+    /**
+     * Memory maps the binary inventory in {@code file}.
+     */
+    public static SenseInventory map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        ByteBuffer buf;
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Inventory is too large to map: " + file);
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                              channel.size());
+        } finally {
+            // The mapping remains valid after the channel is closed
+            raf.close();
+        }
+        if (buf.getInt() != MAGIC)
+            throw new IOException("Not a binary sense inventory: " + file);
+        int version = buf.getInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported inventory version " + version +
+                                  ": " + file);
+        int numTerms = buf.getInt();
+        int numWords = buf.getInt();
+        int numSenses = buf.getInt();
+        int numEntries = buf.getInt();
+
+        StringTable terms = StringTable.map(buf);
+        StringTable words = StringTable.map(buf);
+        StringTable senseIds = StringTable.map(buf);
+        if (terms.size() != numTerms || words.size() != numWords
+                || senseIds.size() != numSenses)
+            throw new IOException("Corrupted inventory: " + file);
+        IntBuffer wordSenseStarts = slice(buf, numWords + 1, 4).asIntBuffer();
+        IntBuffer senseEntryStarts =
+            slice(buf, numSenses + 1, 4).asIntBuffer();
+        DoubleBuffer senseNorms = slice(buf, numSenses, 8).asDoubleBuffer();
+        IntBuffer entryTerms = slice(buf, numEntries, 4).asIntBuffer();
+        FloatBuffer entryWeights = slice(buf, numEntries, 4).asFloatBuffer();
+        IntBuffer termPostingStarts =
+            slice(buf, numTerms + 1, 4).asIntBuffer();
+        IntBuffer postings = slice(buf, numEntries, 4).asIntBuffer();
+        return new SenseInventory(terms, words, senseIds, wordSenseStarts,
+                                  senseEntryStarts, senseNorms, entryTerms,
+                                  entryWeights, termPostingStarts, postings);
+    }
+
+    /**
+     * Returns a view of the next {@code count} values of {@code width} bytes
+     * in {@code buf}, advancing its position past them.
+     */
+    private static ByteBuffer slice(ByteBuffer buf, int count, int width) {
+        int length = count * width;
+        if (buf.remaining() < length)
+            throw new IllegalStateException("Truncated inventory file");
+        ByteBuffer dup = buf.duplicate();
+        dup.limit(dup.position() + length);
+        buf.position(buf.position() + length);
+        return dup.slice();
+    }
+
+    /**
+     * Writes this inventory to {@code file} in the binary format read by
+     * {@link #map(File)}.
+     */
+    public void write(File file) throws IOException {
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(file), 1 << 16));
+        try {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeInt(numTerms());
+            dos.writeInt(numWords());
+            dos.writeInt(numSenses());
+            dos.writeInt(numEntries());
+            terms.write(dos);
+            words.write(dos);
+            senseIds.write(dos);
+            write(dos, wordSenseStarts);
+            write(dos, senseEntryStarts);
+            for (int i = 0; i < senseNorms.limit(); ++i)
+                dos.writeDouble(senseNorms.get(i));
+            write(dos, entryTerms);
+            for (int i = 0; i < entryWeights.limit(); ++i)
+                dos.writeFloat(entryWeights.get(i));
+            write(dos, termPostingStarts);
+            write(dos, postings);
+        } finally {
+            dos.close();
+        }
+    }
+
+    private static void write(DataOutputStream dos, IntBuffer ints)
+            throws IOException {
+        for (int i = 0; i < ints.limit(); ++i)
+            dos.writeInt(ints.get(i));
+    }
+
+    /**
+     * Returns the number of words with senses
+     */
+    public int numWords() {
+        return words.size();
+    }
+
+    /**
+     * Returns the number of senses of all words
+     */
+    public int numSenses() {
+        return senseIds.size();
+    }
+
+    /**
+     * Returns the number of cluster entries of all senses
+     */
+    public int numEntries() {
+        return entryTerms.limit();
+    }
+
+    /**
+     * Returns the number of distinct cluster terms
+     */
+    public int numTerms() {
+        return terms.size();
+    }
+
+    /**
+     * Returns the index of {@code word}, or -1 if it has no senses
+     */
+    public int findWord(String word) {
+        return words.find(word);
+    }
+
+    /**
+     * Returns the word at the index
+     */
+    public String word(int word) {
+        return words.get(word);
+    }
+
+    /**
+     * Returns the index of the word's first sense
+     */
+    int firstSense(int word) {
+        return wordSenseStarts.get(word);
+    }
+
+    /**
+     * Returns the index after the word's last sense
+     */
+    int endSense(int word) {
+        return wordSenseStarts.get(word + 1);
+    }
+
+    /**
+     * Returns the identifier of the sense within its word
+     */
+    public String senseId(int sense) {
+        return senseIds.get(sense);
+    }
+
+    /**
+     * Returns the Euclidean length of the sense's cluster vector
+     */
+    double norm(int sense) {
+        return senseNorms.get(sense);
+    }
+
+    /**
+     * Returns the index of the sense's first cluster entry
+     */
+    int firstEntry(int sense) {
+        return senseEntryStarts.get(sense);
+    }
+
+    /**
+     * Returns the index after the sense's last cluster entry
+     */
+    int endEntry(int sense) {
+        return senseEntryStarts.get(sense + 1);
+    }
+
+    /**
+     * Returns the term of the cluster entry
+     */
+    int entryTerm(int entry) {
+        return entryTerms.get(entry);
+    }
+
+    /**
+     * Returns the weight of the cluster entry
+     */
+    float entryWeight(int entry) {
+        return entryWeights.get(entry);
+    }
+
+    /**
+     * Returns the index of {@code term}, or -1 if it is in no cluster
+     */
+    public int findTerm(String term) {
+        return terms.find(term);
+    }
+
+    /**
+     * Returns the term at the index
+     */
+    public String term(int term) {
+        return terms.get(term);
+    }
+
+    /**
+     * Returns the index of the term's first posting
+     */
+    int firstPosting(int term) {
+        return termPostingStarts.get(term);
+    }
+
+    /**
+     * Returns the index after the term's last posting
+     */
+    int endPosting(int term) {
+        return termPostingStarts.get(term + 1);
+    }
+
+    /**
+     * Returns the sense of the posting
+     */
+    int posting(int posting) {
+        return postings.get(posting);
+    }
+
+    /**
+     * Returns the indices of the senses whose clusters contain {@code term}, in
+     * increasing order.
+     */
+    public int[] sensesContaining(String term) {
+        int t = findTerm(term);
+        if (t < 0)
+            return new int[0];
+        int[] senses = new int[endPosting(t) - firstPosting(t)];
+        for (int i = 0; i < senses.length; ++i)
+            senses[i] = posting(firstPosting(t) + i);
+        return senses;
+    }
+
+    /**
+     * Returns, for each term in this inventory, the index of the same term in
+     * {@code other}, or -1 if {@code other} does not contain it.
+     */
+    int[] translateTerms(SenseInventory other) {
+        // Both vocabularies are sorted, so they can be merged
+        int[] translated = new int[numTerms()];
+        int j = 0;
+        for (int i = 0; i < translated.length; ++i) {
+            int c = 1;
+            while (j < other.numTerms()
+                   && (c = -other.terms.compare(j, terms, i)) > 0)
+                j++;
+            translated[i] = (c == 0) ? j : -1;
+        }
+        return translated;
+    }
+
+    /**
+     * Returns the cosine similarity of the cluster vectors of the two senses of
+     * this inventory, or 0 if either cluster is empty.
+     */
+    public double cosine(int sense1, int sense2) {
+        double n = norm(sense1) * norm(sense2);
+        if (n == 0)
+            return 0;
+        int i = firstEntry(sense1), iEnd = endEntry(sense1);
+        int j = firstEntry(sense2), jEnd = endEntry(sense2);
+        double dot = 0;
+        while (i < iEnd && j < jEnd) {
+            int t1 = entryTerms.get(i);
+            int t2 = entryTerms.get(j);
+            if (t1 < t2)
+                i++;
+            else if (t1 > t2)
+                j++;
+            else
+                dot += (double)entryWeights.get(i++) * entryWeights.get(j++);
+        }
+        return dot / n;
+    }
+
+    /**
+     * Converts a text inventory into a binary inventory and prints its
+     * statistics.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("usage: java SenseInventory " +
+                               "inventory.csv[.gz] inventory.bin");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        SenseInventory inventory = parse(new File(args[0]));
+        long parsed = System.currentTimeMillis();
+        inventory.write(new File(args[1]));
+        long written = System.currentTimeMillis();
+        SenseInventory mapped = map(new File(args[1]));
+        long mappedTime = System.currentTimeMillis();
+
+        int maxSenses = 0;
+        for (int w = 0; w < mapped.numWords(); ++w)
+            maxSenses = Math.max(maxSenses, mapped.endSense(w)
+                                 - mapped.firstSense(w));
+        System.out.println("===================================================================");
+        System.out.println("words\t" + mapped.numWords());
+        System.out.println("senses\t" + mapped.numSenses());
+        System.out.println("max senses per word\t" + maxSenses);
+        System.out.println("cluster entries\t" + mapped.numEntries());
+        System.out.println("distinct terms\t" + mapped.numTerms());
+        System.out.println("-------------------------------------------------------------------");
+        System.out.println("parse time (ms)\t" + (parsed - start));
+        System.out.println("write time (ms)\t" + (written - parsed));
+        System.out.println("map time (ms)\t" + (mappedTime - written));
+        System.out.println("===================================================================");
+    }
+
+    /**
+     * A growable list of cluster entries used while parsing
+     */
+    private static class GrowableEntries {
+
+        int[] terms = new int[1024];
+
+        double[] weights = new double[1024];
+
+        int size;
+
+        void add(int term, double weight) {
+            if (size == terms.length) {
+                terms = Arrays.copyOf(terms, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            terms[size] = term;
+            weights[size] = weight;
+            size++;
+        }
+    }
+
+    /**
+     * A list of strings stored as one array of characters with the offset at
+     * which each string starts
+     */
+    static class StringTable {
+
+        /**
+         * The offset of each string, followed by the total number of
+         * characters
+         */
+        private final IntBuffer starts;
+
+        private final CharBuffer chars;
+
+        private StringTable(IntBuffer starts, CharBuffer chars) {
+            this.starts = starts;
+            this.chars = chars;
+        }
+
+        StringTable(List<String> strings) {
+            int[] offsets = new int[strings.size() + 1];
+            int length = 0;
+            for (int i = 0; i < strings.size(); ++i) {
+                offsets[i] = length;
+                length += strings.get(i).length();
+            }
+            offsets[strings.size()] = length;
+            char[] arr = new char[length];
+            for (int i = 0; i < strings.size(); ++i) {
+                String s = strings.get(i);
+                s.getChars(0, s.length(), arr, offsets[i]);
+            }
+            starts = IntBuffer.wrap(offsets);
+            chars = CharBuffer.wrap(arr);
+        }
+
+        /**
+         * Maps the table that starts at the position of {@code buf}, advancing
+         * its position past the table.
+         */
+        static StringTable map(ByteBuffer buf) {
+            int size = buf.getInt();
+            IntBuffer starts = slice(buf, size + 1, 4).asIntBuffer();
+            int length = starts.get(size);
+            CharBuffer chars = slice(buf, length, 2).asCharBuffer();
+            // Keep the following arrays aligned to four bytes
+            if ((length & 1) == 1)
+                buf.position(buf.position() + 2);
+            return new StringTable(starts, chars);
+        }
+
+        void write(DataOutputStream dos) throws IOException {
+            dos.writeInt(size());
+            SenseInventory.write(dos, starts);
+            int length = starts.get(size());
+            for (int i = 0; i < length; ++i)
+                dos.writeChar(chars.get(i));
+            if ((length & 1) == 1)
+                dos.writeChar(0);
+        }
+
+        int size() {
+            return starts.limit() - 1;
+        }
+
+        String get(int i) {
+            int start = starts.get(i);
+            char[] arr = new char[starts.get(i + 1) - start];
+            for (int k = 0; k < arr.length; ++k)
+                arr[k] = chars.get(start + k);
+            return new String(arr);
+        }
+
+        /**
+         * Compares the string at {@code i} with {@code s} in the order of
+         * {@link String#compareTo(String)}.
+         */
+        int compare(int i, String s) {
+            int start = starts.get(i);
+            int length = starts.get(i + 1) - start;
+            int n = Math.min(length, s.length());
+            for (int k = 0; k < n; ++k) {
+                int c = chars.get(start + k) - s.charAt(k);
+                if (c != 0)
+                    return c;
+            }
+            return length - s.length();
+        }
+
+        /**
+         * Compares the string at {@code i} with the string at {@code j} of
+         * {@code other} in the order of {@link String#compareTo(String)}.
+         */
+        int compare(int i, StringTable other, int j) {
+            int start = starts.get(i);
+            int length = starts.get(i + 1) - start;
+            int oStart = other.starts.get(j);
+            int oLength = other.starts.get(j + 1) - oStart;
+            int n = Math.min(length, oLength);
+            for (int k = 0; k < n; ++k) {
+                int c = chars.get(start + k) - other.chars.get(oStart + k);
+                if (c != 0)
+                    return c;
+            }
+            return length - oLength;
+        }
+
+        /**
+         * Returns the index of {@code s} in this table, which must be sorted,
+         * or -1 if it is not present.
+         */
+        int find(String s) {
+            int lo = 0, hi = size() - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int c = compare(mid, s);
+                if (c < 0)
+                    lo = mid + 1;
+                else if (c > 0)
+                    hi = mid - 1;
+                else
+                    return mid;
+            }
+            return -1;
+        }
+    }
+}
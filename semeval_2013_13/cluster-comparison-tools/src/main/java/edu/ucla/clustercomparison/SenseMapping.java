@@ -0,0 +1,273 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * The induced-to-gold sense mapping matrix learned for a single term, as
+ * described in <a
+ * href="http://cs.ucla.edu/~jurgens/papers/jurgens-2012-evaluation-of-graded-wsd-using-wsi.corrected.pdf">Jurgens
+ * (2012)</a>.  Each row corresponds to an induced sense and each column to a
+ * gold sense, with rows normalized to sum to one.  The matrix is kept in
+ * sparse form when most induced senses never co-occur with most gold senses,
+ * and as a {@code double[][]} otherwise.
+ */
+class SenseMapping {
+
+    /**
+     * The default fraction of the mapping matrix's cells that may be non-zero
+     * for the sparse representation to be used.
+     */
+    static final double DEFAULT_SPARSE_FILL_RATIO = 0.25;
+
+    /**
+     * The loops used to multiply dense matrices
+     */
+    private static final VectorOps OPS = VectorOps.get();
+
+    /**
+     * The index of each induced sense's row in the matrix
+     */
+    private final Map<String,Integer> testSenseIds;
+
+    /**
+     * The gold sense for each column of the matrix
+     */
+    private final String[] goldSenses;
+
+    /**
+     * The mapping matrix if it is sparse, or {@code null} otherwise
+     */
+    private final CompressedRowMatrix sparseMatrix;
+
+    /**
+     * The mapping matrix if it is dense, or {@code null} otherwise
+     */
+    private final double[][] mappingMatrix;
+
+    /**
+     * Scratch space for the non-zero indices of a sparse test vector
+     */
+    private final int[] vectorIndices;
+
+    /**
+     * Scratch space for the non-zero values of a sparse test vector
+     */
+    private final double[] vectorValues;
+
+    private SenseMapping(Map<String,Integer> testSenseIds,
+                         String[] goldSenses,
+                         CompressedRowMatrix sparseMatrix,
+                         double[][] mappingMatrix) {
+        this.testSenseIds = testSenseIds;
+        this.goldSenses = goldSenses;
+        this.sparseMatrix = sparseMatrix;
+        this.mappingMatrix = mappingMatrix;
+        vectorIndices = new int[testSenseIds.size()];
+        vectorValues = new double[testSenseIds.size()];
+    }
+
+    /**
+     * Learns the mapping from the induced senses of {@code testInstances} to
+     * the senses of {@code goldInstances} using the instances in {@code
+     * trainingInstanceIds}, returning {@code null} if the keys had no labeled
+     * training instances in common.
+     *
+     * @param sparseFillRatio the maximum fraction of non-zero cells for which
+     *        the matrix is kept in sparse form
+     */
+    static SenseMapping learn(Map<String,Map<String,Double>> goldInstances,
+                              Map<String,Map<String,Double>> testInstances,
+                              Set<String> trainingInstanceIds,
+                              double sparseFillRatio) {
+
+        // Create a mapping from each of the sense labels to an index in the
+        // mapping matrix
+        Map<String,Integer> goldSenseIds = new LinkedHashMap<String,Integer>();
+        Map<String,Integer> testSenseIds = new LinkedHashMap<String,Integer>();
+
+        for (String instanceId : trainingInstanceIds) {
+            Map<String,Double> gsPerceptions = goldInstances.get(instanceId);
+            Map<String,Double> tsPerceptions = testInstances.get(instanceId);
+            // Check that we had a sense labeling in both keys for this
+            // particular instance
+            if (gsPerceptions == null || tsPerceptions == null)
+                continue;
+            for (String ts : tsPerceptions.keySet()) {
+                if (!testSenseIds.containsKey(ts))
+                    testSenseIds.put(ts, testSenseIds.size());
+            }
+
+            for (String gs : gsPerceptions.keySet()) {
+                if (!goldSenseIds.containsKey(gs))
+                    goldSenseIds.put(gs, goldSenseIds.size());
+            }
+        }
+
+        // If there were no instances in common
+        if (testSenseIds.size() == 0 || goldSenseIds.size() == 0)
+            return null;
+
+        CompressedRowMatrix.Builder builder = new CompressedRowMatrix.Builder(
+            testSenseIds.size(), goldSenseIds.size());
+
+        for (String instanceId : trainingInstanceIds) {
+            Map<String,Double> gsPerceptions = goldInstances.get(instanceId);
+            Map<String,Double> tsPerceptions = testInstances.get(instanceId);
+            // Check that we had a sense labeling in both keys for this
+            // particular instance
+            if (gsPerceptions == null || tsPerceptions == null)
+                continue;
+            for (Map.Entry<String,Double> test : tsPerceptions.entrySet()) {
+                String ts = test.getKey();
+                double tsRating = test.getValue();
+                int tsIndex = testSenseIds.get(ts);
+                for (Map.Entry<String,Double> gold : gsPerceptions.entrySet()) {
+                    String gs = gold.getKey();
+                    double gsRating = gold.getValue();
+                    int gsIndex = goldSenseIds.get(gs);
+                    double score = tsRating * gsRating;
+
+                    builder.add(tsIndex, gsIndex, score);
+                }
+            }
+        }
+        CompressedRowMatrix sparseMatrix = builder.build();
+
+        // Record the gold sense for each column so that the product can be
+        // converted back into sense labels
+        String[] goldSenses = new String[goldSenseIds.size()];
+        for (Map.Entry<String,Integer> e : goldSenseIds.entrySet())
+            goldSenses[e.getValue()] = e.getKey();
+
+        // Keep the matrix sparse only if most of it is empty.  Rows that sum to
+        // zero normalize to NaN, which affects every cell of the product, so
+        // these matrices are always handled in dense form.
+        if (sparseMatrix.fillRatio() <= sparseFillRatio
+                && !sparseMatrix.hasEmptyRow()) {
+            sparseMatrix.normalizeRows();
+            return new SenseMapping(testSenseIds, goldSenses,
+                                    sparseMatrix, null);
+        }
+
+        double[][] mappingMatrix = sparseMatrix.toDense();
+
+        // Normalize the rows of the matrix
+        for (int r = 0; r < mappingMatrix.length; ++r) {
+            double sum = 0;
+            for (int c = 0; c < mappingMatrix[0].length; ++c)
+                sum += mappingMatrix[r][c];
+            for (int c = 0; c < mappingMatrix[0].length; ++c)
+                mappingMatrix[r][c] /= sum;
+        }
+        return new SenseMapping(testSenseIds, goldSenses, null, mappingMatrix);
+    }
+
+    /**
+     * Returns the number of gold senses, i.e., the length of the vectors
+     * produced by {@link #map(Map,double[])}
+     */
+    int numGoldSenses() {
+        return goldSenses.length;
+    }
+
+    /**
+     * Returns the gold sense for the index in a mapped vector
+     */
+    String goldSense(int index) {
+        return goldSenses[index];
+    }
+
+    /**
+     * Multiplies the vector of induced sense ratings by the mapping matrix,
+     * writing the gold sense ratings into {@code result}.
+     *
+     * @param tsPerceptions the induced sense ratings of an instance
+     * @param result an array of length {@link #numGoldSenses()}
+     */
+    void map(Map<String,Double> tsPerceptions, double[] result) {
+        if (sparseMatrix != null) {
+            // Only the induced senses that were seen during the mapping stage
+            // have rows in the matrix
+            int length = 0;
+            for (Map.Entry<String,Double> e : tsPerceptions.entrySet()) {
+                Integer row = testSenseIds.get(e.getKey());
+                if (row != null) {
+                    vectorIndices[length] = row;
+                    vectorValues[length] = e.getValue();
+                    length++;
+                }
+            }
+            sortByIndex(vectorIndices, vectorValues, length);
+            sparseMatrix.multiply(vectorIndices, vectorValues, length, result);
+            return;
+        }
+
+        // The result of multiplying the test vector by the induced-reference
+        // sense matrix
+        double[] testVector = new double[mappingMatrix.length];
+
+        for (Map.Entry<String,Integer> e : testSenseIds.entrySet()) {
+            int col = e.getValue();
+            Double testSensePerception = tsPerceptions.get(e.getKey());
+            // testSensePerception might be null if the test rating is for an
+            // induced sense that was not seen during the mapping stage
+            if (testSensePerception != null) {
+                testVector[col] = testSensePerception;
+            }
+        }
+
+        // Multiply the vector by the sense matrix one row at a time.  Each
+        // cell of the result still sums the rows in order, so this gives the
+        // same values as computing each cell's dot product separately.
+        int cols = mappingMatrix[0].length;
+        Arrays.fill(result, 0, cols, 0);
+        for (int i = 0; i < testVector.length; ++i)
+            OPS.axpy(testVector[i], mappingMatrix[i], result, cols);
+    }
+
+    /**
+     * Sorts the first {@code length} indices in increasing order, keeping each
+     * value with its index.  Instances rarely have more than a handful of
+     * senses, so an insertion sort is used.
+     */
+    private static void sortByIndex(int[] indices, double[] values,
+                                    int length) {
+        for (int i = 1; i < length; ++i) {
+            int index = indices[i];
+            double value = values[i];
+            int j = i - 1;
+            for (; j >= 0 && indices[j] > index; --j) {
+                indices[j+1] = indices[j];
+                values[j+1] = values[j];
+            }
+            indices[j+1] = index;
+            values[j+1] = value;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+import java.util.Arrays;
+
+
+/**
+ * The senses labeling an instance, encoded as bits according to a {@link
+ * SenseDictionary}.  Terms with at most 64 senses use a single {@code long},
+ * while larger terms use an array of them.  Senses that are not in the
+ * dictionary have no bit and are only counted, so they are never in common
+ * with the senses of another set.
+ */
+class SenseSet {
+
+    /**
+     * The dictionary with which the senses were encoded
+     */
+    private final SenseDictionary dictionary;
+
+    /**
+     * The bits of the first 64 senses
+     */
+    private final long bits;
+
+    /**
+     * The bits of all the senses if the dictionary has more than 64 senses, or
+     * {@code null} otherwise
+     */
+    private final long[] words;
+
+    /**
+     * The number of senses in the set
+     */
+    private final int size;
+
+    /**
+     * The number of senses in the set that are not in the dictionary
+     */
+    private final int numUnknown;
+
+    SenseSet(SenseDictionary dictionary, long bits, long[] words, int size, 
+             int numUnknown) {
+        this.dictionary = dictionary;
+        this.bits = bits;
+        this.words = words;
+        this.size = size;
+        this.numUnknown = numUnknown;
+    }
+
+    /**
+     * Returns the dictionary with which the senses were encoded, which should
+     * be used to encode any set compared with this one
+     */
+    SenseDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Returns the number of senses in the set
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of senses in both sets, which must have been encoded
+     * with the same dictionary.
+     */
+    int intersectionSize(SenseSet other) {
+        if (words == null)
+            return Long.bitCount(bits & other.bits);
+        int n = 0;
+        for (int i = 0; i < words.length; ++i)
+            n += Long.bitCount(words[i] & other.words[i]);
+        return n;
+    }
+
+    /**
+     * Returns the number of senses in either set, which must have been encoded
+     * with the same dictionary.
+     */
+    int unionSize(SenseSet other) {
+        return size + other.size - intersectionSize(other);
+    }
+
+    /**
+     * Returns {@code true} if both sets, which must have been encoded with the
+     * same dictionary, contain the same senses and all of them are in the
+     * dictionary.
+     */
+    boolean hasSameSenses(SenseSet other) {
+        return numUnknown == 0 && other.numUnknown == 0
+            && bits == other.bits 
+            && (words == null || Arrays.equals(words, other.words));
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * The gold and test labelings of one term's instances, converted once into the
+ * arrays used by every {@link ClusterEvaluation}.  The instances are those of
+ * the gold labeling, in its order, and test labels for any other instance are
+ * ignored.  Senses are numbered in the order they are first seen.  Each
+ * instance has a dense vector of its ratings over all of the term's senses in a
+ * labeling, as well as the sorted numbers of the senses it is labeled with,
+ * which include any senses rated 0.  The maps passed to the constructor are not
+ * modified and no references to them are kept.
+ */
+public class TermLabelings {
+
+    /**
+     * The identifier of each instance
+     */
+    private final String[] instances;
+
+    /**
+     * Whether each instance is labeled in the test key
+     */
+    private final boolean[] answered;
+
+    /**
+     * The identifier of each sense in the gold and test labelings
+     */
+    private final String[] goldSenses;
+    private final String[] testSenses;
+
+    /**
+     * The dense rating vectors of each instance in the gold and test labelings
+     */
+    final double[][] goldRatings;
+    final double[][] testRatings;
+
+    /**
+     * The sorted numbers of the senses with which each instance is labeled in
+     * the gold and test labelings
+     */
+    final int[][] goldLabels;
+    final int[][] testLabels;
+
+    /**
+     * Converts the labelings of a term's instances.
+     *
+     * @param instanceToGoldRatings the gold ratings of each instance of the
+     *        term
+     * @param instanceToTestRatings the test ratings of the term's instances,
+     *        or {@code null} if the test key does not label the term
+     */
+    public TermLabelings(Map<String,Map<String,Double>> instanceToGoldRatings,
+                         Map<String,Map<String,Double>> instanceToTestRatings) {
+        int n = instanceToGoldRatings.size();
+        instances = new String[n];
+        answered = new boolean[n];
+        List<Map<String,Double>> gold = new ArrayList<Map<String,Double>>(n);
+        List<Map<String,Double>> test = new ArrayList<Map<String,Double>>(n);
+        int i = 0;
+        for (Map.Entry<String,Map<String,Double>> e
+                 : instanceToGoldRatings.entrySet()) {
+            instances[i] = e.getKey();
+            gold.add(e.getValue());
+            Map<String,Double> t = (instanceToTestRatings == null)
+                ? null : instanceToTestRatings.get(e.getKey());
+            answered[i] = t != null;
+            test.add((t == null) ? Collections.<String,Double>emptyMap() : t);
+            i++;
+        }
+
+        Indexer<String> goldIndices = new Indexer<String>();
+        goldLabels = toLabels(gold, goldIndices);
+        goldSenses = toArray(goldIndices);
+        goldRatings = toVectors(gold, goldIndices);
+
+        Indexer<String> testIndices = new Indexer<String>();
+        testLabels = toLabels(test, testIndices);
+        testSenses = toArray(testIndices);
+        testRatings = toVectors(test, testIndices);
+    }
+
+    /**
+     * Numbers the senses of each instance's ratings, returning the sorted
+     * numbers for each instance
+     */
+    private static int[][] toLabels(List<Map<String,Double>> ratings,
+                                    Indexer<String> senseIndices) {
+        int[][] labels = new int[ratings.size()][];
+        for (int i = 0; i < labels.length; ++i) {
+            Map<String,Double> r = ratings.get(i);
+            int[] senses = new int[r.size()];
+            int k = 0;
+            for (String sense : r.keySet())
+                senses[k++] = senseIndices.index(sense);
+            Arrays.sort(senses);
+            labels[i] = senses;
+        }
+        return labels;
+    }
+
+    private static String[] toArray(Indexer<String> senseIndices) {
+        String[] senses = new String[senseIndices.size()];
+        for (Map.Entry<String,Integer> e : senseIndices.entrySet())
+            senses[e.getValue()] = e.getKey();
+        return senses;
+    }
+
+    /**
+     * Returns the ratings of each instance as a vector with one dimension per
+     * sense
+     */
+    private static double[][] toVectors(List<Map<String,Double>> ratings,
+                                        Indexer<String> senseIndices) {
+        double[][] vectors = new double[ratings.size()][senseIndices.size()];
+        for (int i = 0; i < vectors.length; ++i) {
+            for (Map.Entry<String,Double> e : ratings.get(i).entrySet())
+                vectors[i][senseIndices.get(e.getKey())] = e.getValue();
+        }
+        return vectors;
+    }
+
+    /**
+     * Returns the number of instances of the term in the gold labeling
+     */
+    public int numInstances() {
+        return instances.length;
+    }
+
+    public String getInstance(int i) {
+        return instances[i];
+    }
+
+    /**
+     * Returns {@code true} if the test key labels instance {@code i}, even if
+     * with no senses
+     */
+    public boolean isAnswered(int i) {
+        return answered[i];
+    }
+
+    public int numGoldSenses() {
+        return goldSenses.length;
+    }
+
+    public int numTestSenses() {
+        return testSenses.length;
+    }
+
+    public String getGoldSense(int s) {
+        return goldSenses[s];
+    }
+
+    public String getTestSense(int s) {
+        return testSenses[s];
+    }
+
+    /**
+     * Returns the gold rating of sense {@code s} for instance {@code i}, which
+     * is 0 if the instance is not labeled with the sense
+     */
+    public double getGoldRating(int i, int s) {
+        return goldRatings[i][s];
+    }
+
+    /**
+     * Returns the test rating of sense {@code s} for instance {@code i}, which
+     * is 0 if the instance is not labeled with the sense
+     */
+    public double getTestRating(int i, int s) {
+        return testRatings[i][s];
+    }
+
+    /**
+     * Returns the fuzzy agreement between two instances in a labeling, which
+     * sums {@code 1 - |w1 - w2|} over the senses with which both are labeled.
+     */
+    static double fuzzyAgreement(int[] labels1, double[] ratings1,
+                                 int[] labels2, double[] ratings2) {
+        double agreement = 0;
+        int a = 0;
+        int b = 0;
+        while (a < labels1.length && b < labels2.length) {
+            int s1 = labels1[a];
+            int s2 = labels2[b];
+            if (s1 < s2)
+                a++;
+            else if (s1 > s2)
+                b++;
+            else {
+                agreement += 1 - Math.abs(ratings1[s1] - ratings2[s1]);
+                a++;
+                b++;
+            }
+        }
+        return agreement;
+    }
+
+    /**
+     * Returns {@code true} if the two sorted sets of sense numbers have a sense
+     * in common
+     */
+    static boolean intersects(int[] labels1, int[] labels2) {
+        int a = 0;
+        int b = 0;
+        while (a < labels1.length && b < labels2.length) {
+            if (labels1[a] < labels2[b])
+                a++;
+            else if (labels1[a] > labels2[b])
+                b++;
+            else
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+
+/**
+ * The scores of one term according to a {@link ClusterEvaluation}, along with
+ * an optional comment on how they were computed, such as the confidence
+ * interval of a sampled estimate.
+ */
+public class TermScore {
+
+    /**
+     * The comment on the scores, or {@code null} if there is none
+     */
+    private final String comment;
+
+    /**
+     * The scores of the term
+     */
+    private final double[] values;
+
+    public TermScore(double... values) {
+        this(null, values);
+    }
+
+    public TermScore(String comment, double... values) {
+        this.comment = comment;
+        this.values = values.clone();
+    }
+
+    /**
+     * Returns the comment on how the scores were computed, or {@code null} if
+     * there is none
+     */
+    public String getComment() {
+        return comment;
+    }
+
+    public double[] getValues() {
+        return values.clone();
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+import java.io.PrintStream;
+
+
+/**
+ * A {@link ReportSink} that prints the report as the human-readable table that
+ * the command-line programs have always printed.  The notes come first,
+ * followed by the term rows and the total row between separator lines.  The
+ * whole report is printed with a single call to the stream.
+ */
+public class TextReportSink implements ReportSink {
+
+    /**
+     * The line separating the header and footer of the table
+     */
+    private static final String RULE =
+        "===================================================================";
+
+    /**
+     * The line separating the rows of the table from its header and footer
+     */
+    private static final String SEPARATOR = 
+        "-------------------------------------------------------------------";
+
+    /**
+     * The stream to which reports are printed
+     */
+    private final PrintStream out;
+
+    /**
+     * Creates a sink that prints to {@code System.out}.
+     */
+    public TextReportSink() {
+        this(System.out);
+    }
+
+    public TextReportSink(PrintStream out) {
+        this.out = out;
+    }
+
+    public void write(Report report) {
+        String nl = System.getProperty("line.separator");
+        StringBuilder sb = new StringBuilder();
+        for (String note : report.getNotes())
+            sb.append(note).append(nl);
+        sb.append(RULE).append(nl);
+        boolean first = true;
+        for (String column : report.getColumns()) {
+            if (!first)
+                sb.append('\t');
+            sb.append(column);
+            first = false;
+        }
+        sb.append(nl).append(SEPARATOR).append(nl);
+        for (Report.Row row : report.getRows())
+            append(sb, row, nl);
+        sb.append(SEPARATOR).append(nl);
+        if (report.getTotal() != null)
+            append(sb, report.getTotal(), nl);
+        sb.append(RULE).append(nl);
+        out.print(sb);
+        out.flush();
+    }
+
+    private static void append(StringBuilder sb, Report.Row row, String nl) {
+        sb.append(row.getLabel());
+        for (int i = 0; i < row.numValues(); ++i)
+            sb.append('\t').append(row.getValue(i));
+        if (row.getComment() != null)
+            sb.append("\t(").append(row.getComment()).append(')');
+        sb.append(nl);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+import java.io.PrintStream;
+
+
+/**
+ * A {@link ReportSink} that prints the report as tab-separated values with a
+ * header line, one line per term and a final line for all terms.  Notes are
+ * printed first as lines starting with {@code #}.  If any row has a comment, a
+ * {@code comment} column is added, which is empty for the rows without one.
+ * The whole report is printed with a single call to the stream.
+ */
+public class TsvReportSink implements ReportSink {
+
+    /**
+     * The stream to which reports are printed
+     */
+    private final PrintStream out;
+
+    /**
+     * Creates a sink that prints to {@code System.out}.
+     */
+    public TsvReportSink() {
+        this(System.out);
+    }
+
+    public TsvReportSink(PrintStream out) {
+        this.out = out;
+    }
+
+    public void write(Report report) {
+        boolean hasComments = false;
+        for (Report.Row row : report.getRows())
+            hasComments |= row.getComment() != null;
+
+        StringBuilder sb = new StringBuilder();
+        for (String note : report.getNotes())
+            sb.append("# ").append(clean(note)).append('\n');
+        boolean first = true;
+        for (String column : report.getColumns()) {
+            if (!first)
+                sb.append('\t');
+            sb.append(clean(column));
+            first = false;
+        }
+        if (hasComments)
+            sb.append("\tcomment");
+        sb.append('\n');
+        for (Report.Row row : report.getRows())
+            append(sb, row, hasComments);
+        if (report.getTotal() != null)
+            append(sb, report.getTotal(), hasComments);
+        out.print(sb);
+        out.flush();
+    }
+
+    private static void append(StringBuilder sb, Report.Row row,
+                               boolean hasComments) {
+        sb.append(clean(row.getLabel()));
+        for (int i = 0; i < row.numValues(); ++i)
+            sb.append('\t').append(row.getValue(i));
+        if (hasComments) {
+            sb.append('\t');
+            if (row.getComment() != null)
+                sb.append(clean(row.getComment()));
+        }
+        sb.append('\n');
+    }
+
+    /**
+     * Replaces any tabs or line breaks in {@code s} with spaces so that it
+     * stays in one field
+     */
+    private static String clean(String s) {
+        return s.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * An implementation of the V-Measure of <a
+ * href="http://acl.ldc.upenn.edu/D/D07/D07-1043.pdf">Rosenberg and Hirschberg
+ * (2007)</a>, as used in SemEval-2010 Task 14, for comparing hard sense
+ * clusterings.  The measure is the harmonic mean of the homogeneity of the
+ * test clusters with respect to the gold senses and their completeness, both
+ * of which are computed from the term's {@link ContingencyTable}.
+ */
+public class VMeasure implements ClusterEvaluation {
+
+    public String[] getScoreNames() {
+        return new String[] { "homogeneity", "completeness", "v-measure" };
+    }
+
+    public TermScore evaluate(TermLabelings labelings) {
+        return new TermScore(compute(ContingencyTable.create(labelings)));
+    }
+
+    /**
+     * Returns the homogeneity, completeness and V-Measure averaged over all
+     * terms.  As in SemEval-2010, the V-Measure is the average of each term's
+     * V-Measure rather than that of the averaged homogeneity and
+     * completeness.
+     */
+    public double[] summarize(List<double[]> termScores) {
+        double hSum = 0;
+        double cSum = 0;
+        double vSum = 0;
+        for (double[] scores : termScores) {
+            hSum += scores[0];
+            cSum += scores[1];
+            vSum += scores[2];
+        }
+        return new double[] { hSum / termScores.size(), 
+                              cSum / termScores.size(),
+                              vSum / termScores.size() };
+    }
+
+    /**
+     * Computes the homogeneity, completeness and V-Measure of the hard
+     * clusterings of a term's instances.  Test labels for instances that are
+     * not in the gold labeling are ignored.
+     */
+    public static double[] computeVMeasure(Map<String,Map<String,Double>> instanceToGoldRatings,
+                                           Map<String,Map<String,Double>> instanceToTestRatings) {
+        return compute(ContingencyTable.create(instanceToGoldRatings,
+                                               instanceToTestRatings));
+    }
+
+    /**
+     * Returns the homogeneity, completeness and V-Measure of the table.  A
+     * clustering with a single cluster has no entropy, in which case the
+     * other clustering is perfectly homogeneous (or complete) with respect to
+     * it.
+     */
+    static double[] compute(ContingencyTable table) {
+        double h_C = table.goldEntropy();
+        double h_K = table.testEntropy();
+        double homogeneity = (h_C == 0)
+            ? 1 : 1 - table.goldEntropyGivenTest() / h_C;
+        double completeness = (h_K == 0)
+            ? 1 : 1 - table.testEntropyGivenGold() / h_K;
+        return new double[] { homogeneity, completeness, 
+                              vMeasure(homogeneity, completeness) };
+    }
+
+    private static double vMeasure(double homogeneity, double completeness) {
+        return (homogeneity + completeness > 0)
+            ? (2 * homogeneity * completeness) / (homogeneity + completeness)
+            : 0;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison;
+
+import java.lang.reflect.InvocationTargetException;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * The numeric inner loops shared by the evaluations and mappers.  This class
+ * implements them with plain scalar loops.  When the package is built with the
+ * {@code simd} Maven profile and run on a JDK with the {@code
+ * jdk.incubator.vector} module added, {@link #get()} instead returns a subclass
+ * that uses the Vector API.  The vectorized {@link #axpy axpy} and {@link #bin
+ * bin} produce the same values as the scalar loops, while {@link #l1Distance
+ * l1Distance} may differ in the last bits as its sum is reordered.  Setting
+ * the {@code clustercomparison.simd} system property to {@code false} always
+ * selects the scalar loops.
+ */
+class VectorOps {
+
+    /**
+     * The logger for this class
+     */
+    private static final Logger LOGGER =
+        Logger.getLogger(VectorOps.class.getName());
+
+    /**
+     * The name of the class implementing the loops with the Vector API, which
+     * is only present when built with the {@code simd} profile
+     */
+    private static final String SIMD_CLASS =
+        "edu.ucla.clustercomparison.SimdVectorOps";
+
+    /**
+     * The loops used by this JVM
+     */
+    private static final VectorOps INSTANCE = load();
+
+    VectorOps() { }
+
+    /**
+     * Returns the vectorized loops if they are available and enabled, or the
+     * scalar loops otherwise.
+     */
+    static VectorOps get() {
+        return INSTANCE;
+    }
+
+    private static VectorOps load() {
+        if (!Boolean.parseBoolean(
+                System.getProperty("clustercomparison.simd", "true")))
+            return new VectorOps();
+        try {
+            VectorOps ops = (VectorOps)Class.forName(SIMD_CLASS)
+                .getConstructor().newInstance();
+            LOGGER.fine("Using the Vector API for numeric loops");
+            return ops;
+        } catch (ClassNotFoundException cnfe) {
+            // The package was built without the SIMD backend
+        } catch (LinkageError le) {
+            // The jdk.incubator.vector module was not added to the JVM
+            LOGGER.log(Level.FINE, "The Vector API is unavailable", le);
+        } catch (NoSuchMethodException nsme) {
+            LOGGER.log(Level.FINE, "Could not load " + SIMD_CLASS, nsme);
+        } catch (InstantiationException ie) {
+            LOGGER.log(Level.FINE, "Could not load " + SIMD_CLASS, ie);
+        } catch (IllegalAccessException iae) {
+            LOGGER.log(Level.FINE, "Could not load " + SIMD_CLASS, iae);
+        } catch (InvocationTargetException ite) {
+            LOGGER.log(Level.FINE, "Could not load " + SIMD_CLASS, 
+                       ite.getCause());
+        }
+        return new VectorOps();
+    }
+
+    /**
+     * Adds {@code a} times the first {@code length} values of {@code x} to
+     * those of {@code y}.
+     */
+    void axpy(double a, double[] x, double[] y, int length) {
+        for (int i = 0; i < length; ++i)
+            y[i] += a * x[i];
+    }
+
+    /**
+     * Returns the Manhattan distance between the first {@code length} values
+     * of the two vectors.
+     */
+    double l1Distance(double[] x, double[] y, int length) {
+        double dist = 0;
+        for (int i = 0; i < length; ++i)
+            dist += Math.abs(x[i] - y[i]);
+        return dist;
+    }
+
+    /**
+     * Writes the bin of each of the first {@code length} values, which are in
+     * [0, 1], into {@code bins}, where the values are divided into {@code
+     * numBins} equally sized bins as done by {@link
+     * DiscretizedDifferentialEntropy#bin(double,int)}.
+     */
+    void bin(double[] values, int length, int numBins, int[] bins) {
+        for (int i = 0; i < length; ++i)
+            bins[i] = DiscretizedDifferentialEntropy.bin(values[i], numBins);
+    }
+}
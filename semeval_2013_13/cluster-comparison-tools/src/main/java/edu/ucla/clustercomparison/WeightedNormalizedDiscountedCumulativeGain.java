@@ -56,6 +56,19 @@ public class WeightedNormalizedDiscountedCumulativeGain extends AbstractEvaluati
             Map<String,Double> goldSenseRatings,
             Map<String,Double> testSenseRatings,
             int numSenses) {
+        return evaluateInstance(prepareGold(goldSenseRatings), 
+                                goldSenseRatings, testSenseRatings, numSenses);
+    }
+
+    /**
+     * Computes the weighted NDCG using the ideal discounted cumulative gain of
+     * the gold ratings that was computed by {@link #prepareGold(Map)}.
+     */
+    @Override protected double evaluateInstance(
+            Object preparedGold,
+            Map<String,Double> goldSenseRatings,
+            Map<String,Double> testSenseRatings,
+            int numSenses) {
     
         Set<String> allSenses = new HashSet<String>(goldSenseRatings.keySet());
         allSenses.addAll(testSenseRatings.keySet());
@@ -85,6 +98,16 @@ public class WeightedNormalizedDiscountedCumulativeGain extends AbstractEvaluati
             dcg += score / Log.log2_1p(i+1);
         }
 
+        double idcg = (Double)preparedGold;
+        return dcg / idcg;
+    }
+
+    /**
+     * Returns the ideal discounted cumulative gain of the gold ratings, which
+     * ranks the senses by their gold ratings.
+     */
+    @Override protected final Object prepareGold(
+            Map<String,Double> goldSenseRatings) {
         double idcg = 0;
         // Get a monotonically increasing ordering of the gold sense scores.
         List<Double> tmp = new ArrayList<Double>(goldSenseRatings.values());
@@ -97,8 +120,14 @@ public class WeightedNormalizedDiscountedCumulativeGain extends AbstractEvaluati
             double score = tmp.get(i);
             idcg += Math.pow(2, 1 + score) / Log.log2_1p(rank+1);
         }
-        
-        return dcg / idcg;
+        return idcg;
+    }
+
+    /**
+     * Returns this class, as the ideal gains depend only on the gold ratings.
+     */
+    @Override final Object getPreparationKey() {
+        return WeightedNormalizedDiscountedCumulativeGain.class;
     }
 
     /**
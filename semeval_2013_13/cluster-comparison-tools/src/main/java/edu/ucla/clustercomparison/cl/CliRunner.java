@@ -23,11 +23,17 @@
 package edu.ucla.clustercomparison.cl;
 
 import edu.ucla.clustercomparison.BaseScorer;
+import edu.ucla.clustercomparison.ConfidenceSweep;
 import edu.ucla.clustercomparison.Evaluation;
 import edu.ucla.clustercomparison.GradedSingleSenseKeyMapper;
+import edu.ucla.clustercomparison.InstanceScoreCache;
+import edu.ucla.clustercomparison.InventoryAligner;
+import edu.ucla.clustercomparison.InventoryKeyMapper;
 import edu.ucla.clustercomparison.KeyUtil;
+import edu.ucla.clustercomparison.KeyViews;
 
 import java.io.File;
+import java.io.IOException;
 
 import java.util.logging.Level;
 
@@ -55,6 +61,21 @@ public abstract class CliRunner {
                        "sense label, no matter how many senses were used in " +
                        "the input key",
                        false, null, "Program Options");
+        opts.addOption('g', "gold-inventory",
+                       "Remaps the input key by aligning the senses of the " +
+                       "following gold sense inventory with those of the " +
+                       "--test-inventory",
+                       true, "FILE", "Program Options");
+        opts.addOption('t', "test-inventory",
+                       "The sense inventory of the input key, used with " +
+                       "--gold-inventory",
+                       true, "FILE", "Program Options");
+        opts.addOption('q', "inventory-query-terms",
+                       "When aligning sense inventories, only compares each " +
+                       "induced sense with the gold senses that contain one " +
+                       "of its INT highest weighted terms (default: compare " +
+                       "with all gold senses)",
+                       true, "INT", "Program Options");
         opts.addOption('v', "verbose",
                        "Prints verbose output about what the scorer is doing",
                        false, null, "Program Options");
@@ -66,6 +87,41 @@ public abstract class CliRunner {
                        "If the input labeling is remapped, write the new " +
                        "key to the following file",
                        true, "FILE", "Program Options");
+        opts.addOption('i', "incremental-cache",
+                       "Caches per-term results in the following file and " +
+                       "only rescores the terms whose labels have changed " +
+                       "since the previous run",
+                       true, "FILE", "Program Options");
+        opts.addOption('m', "memoize-instance-scores",
+                       "Scores each distinct pair of gold and test ratings " +
+                       "only once, which is faster for hard clusterings and " +
+                       "single-sense remapping",
+                       false, null, "Program Options");
+        opts.addOption('e', "export-instance-scores",
+                       "Writes the score of every gold instance to the " +
+                       "following file in a binary column format",
+                       true, "FILE", "Program Options");
+        opts.addOption('f', "report-format",
+                       "Prints the report as text (default), tsv, json or " +
+                       "none",
+                       true, "FORMAT", "Program Options");
+        opts.addOption('b', "breakdown",
+                       "Also reports the scores of subsets of the gold " +
+                       "instances, given as a comma-separated list of " +
+                       "NAME=FILE for the instances of a key file, pos:X " +
+                       "for the terms with part of speech X, single-sense " +
+                       "or multi-sense",
+                       true, "SUBSETS", "Program Options");
+        opts.addOption('c', "confidence",
+                       "Reports the scores at thresholds on the confidence " +
+                       "of each instance's labels, read from the following " +
+                       "file of instance and confidence lines",
+                       true, "FILE", "Program Options");
+        opts.addOption('Q', "confidence-quantiles",
+                       "Uses this many evenly spaced quantiles of the " +
+                       "confidences as thresholds, rather than every " +
+                       "distinct confidence",
+                       true, "INT", "Program Options");
         opts.addOption('S', "use-strict-key-parsing",
                        "Causes an Exception to be thrown if any of the sense " +
                        "keys is malfomatted",
@@ -92,6 +148,29 @@ public abstract class CliRunner {
      */
     protected abstract String getEvalName();
 
+    /**
+     * Adds the subsets in the comma-separated list to the scorer
+     */
+    private static void addSubsets(BaseScorer scorer, String subsets) 
+            throws IOException {
+        for (String subset : subsets.split(",")) {
+            int eq = subset.indexOf('=');
+            if (eq > 0)
+                scorer.addSubset(subset.substring(0, eq),
+                                 new File(subset.substring(eq + 1)));
+            else if (subset.startsWith("pos:"))
+                scorer.addSubset(subset, KeyViews.ofTerms(
+                    KeyViews.hasPos(subset.substring(4))));
+            else if (subset.equals("single-sense"))
+                scorer.addSubset(subset, KeyViews.SINGLE_SENSE);
+            else if (subset.equals("multi-sense"))
+                scorer.addSubset(subset, KeyViews.MULTI_SENSE);
+            else
+                throw new IllegalArgumentException(
+                    "Unknown subset: " + subset);
+        }
+    }
+
     public void run(String[] args) {
         ArgOptions opts = getBaseOptions();
         addMethodSpecificOptions(opts);
@@ -129,13 +208,60 @@ public abstract class CliRunner {
                 }
             };
 
+        if (opts.hasOption("incremental-cache")) {
+            scorer.setIncrementalCache(
+                new File(opts.getStringOption("incremental-cache")));
+        }
+        if (opts.hasOption("memoize-instance-scores"))
+            scorer.setScoreCache(new InstanceScoreCache());
+        if (opts.hasOption("export-instance-scores")) {
+            scorer.setInstanceResultFile(
+                new File(opts.getStringOption("export-instance-scores")));
+        }
+
+        if (opts.hasOption("report-format"))
+            scorer.setReportSink(ReportFormats.getReportSink(
+                opts.getStringOption("report-format")));
+
         boolean performRemapping = !opts.hasOption("no-remapping");
         File remappedKeyFile = opts.hasOption("output-remapped-key")
             ? new File(opts.getStringOption("output-remapped-key"))
             : null;
 
+        if (opts.hasOption("gold-inventory")
+                != opts.hasOption("test-inventory")) {
+            throw new IllegalArgumentException(
+                "Both the --gold-inventory and --test-inventory must be " +
+                "provided to remap using sense inventories");
+        }
+
         try {
-            if (opts.hasOption('s')) {
+            if (opts.hasOption("breakdown"))
+                addSubsets(scorer, opts.getStringOption("breakdown"));
+            if (opts.hasOption("confidence")) {
+                int numQuantiles = opts.hasOption("confidence-quantiles")
+                    ? opts.getIntOption("confidence-quantiles")
+                    : 0;
+                scorer.setConfidenceSweep(new ConfidenceSweep(
+                    ConfidenceSweep.loadConfidences(
+                        new File(opts.getStringOption("confidence"))),
+                    numQuantiles));
+            }
+
+            if (opts.hasOption("gold-inventory")) {
+                int maxQueryTerms = opts.hasOption("inventory-query-terms")
+                    ? opts.getIntOption("inventory-query-terms")
+                    : InventoryAligner.EXHAUSTIVE;
+                scorer.score(new File(opts.getPositionalArg(0)),
+                             new File(opts.getPositionalArg(1)),
+                             remappedKeyFile,
+                             new InventoryKeyMapper(
+                                 new File(opts.getStringOption("gold-inventory")),
+                                 new File(opts.getStringOption("test-inventory")),
+                                 Runtime.getRuntime().availableProcessors(),
+                                 maxQueryTerms));
+            }
+            else if (opts.hasOption('s')) {
                 scorer.score(new File(opts.getPositionalArg(0)),
                              new File(opts.getPositionalArg(1)),
                              remappedKeyFile,
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison.cl;
+
+import edu.ucla.clustercomparison.ClusterEvaluation;
+import edu.ucla.clustercomparison.ClusterEvaluator;
+import edu.ucla.clustercomparison.KeyUtil;
+import edu.ucla.clustercomparison.ReportSink;
+import edu.ucla.clustercomparison.TextReportSink;
+
+import java.io.File;
+
+import java.util.Map;
+
+import java.util.logging.Level;
+
+import edu.ucla.sspace.common.ArgOptions;
+
+import edu.ucla.sspace.util.LoggerUtil;
+
+
+/**
+ * The base class for the command-line programs that score each term's
+ * clustering as a whole with a {@link ClusterEvaluation}.  Clustering
+ * measures compare the two clusterings directly, so unlike {@link CliRunner}
+ * the test key is never remapped into the gold sense inventory.
+ */
+public abstract class ClusterCliRunner {
+
+    public ClusterCliRunner() { }
+
+    private ArgOptions getBaseOptions() {
+        ArgOptions opts = new ArgOptions();
+        opts.addOption('T', "threads",
+                       "The number of threads with which terms are scored " +
+                       "(default: one per processor)",
+                       true, "INT", "Program Options");
+        opts.addOption('v', "verbose",
+                       "Prints verbose output about what the scorer is doing",
+                       false, null, "Program Options");
+        opts.addOption('f', "report-format",
+                       "Prints the report as text (default), tsv, json or " +
+                       "none",
+                       true, "FORMAT", "Program Options");
+        opts.addOption('S', "use-strict-key-parsing",
+                       "Causes an Exception to be thrown if any of the sense " +
+                       "keys is malfomatted",
+                       false, null, "Program Options");
+        return opts;
+    }
+
+    /**
+     * Returns the evaluation to be used
+     */
+    abstract ClusterEvaluation getEvaluation();
+
+    /**
+     * Returns the name for this evaluation to be used in the command line
+     * description
+     */
+    protected abstract String getEvalName();
+
+    public void run(String[] args) {
+        ArgOptions opts = getBaseOptions();
+        opts.parseOptions(args);
+
+        if (opts.numPositionalArgs() != 2) {
+            System.out.println(
+                "usage: java "  + getEvalName() 
+                + " [options] gold-standard.key to-test.key\n"
+                + opts.prettyPrint()
+                + "\n\n" + 
+                "Each instance is assigned to its highest rated sense " +
+                "before the clusterings\nare compared.\n\n" +
+                "Please report any errors or problem to our google code site:"+
+                "\nhttps://code.google.com/p/cluster-comparison-tools/");
+            return;
+        }
+
+        if (opts.hasOption('v'))
+            LoggerUtil.setLevel("edu.ucla.clustercomparison", Level.FINE);
+        if (opts.hasOption('S'))
+            KeyUtil.loadWithStrictParsing = true;
+
+        ReportSink sink = opts.hasOption("report-format")
+            ? ReportFormats.getReportSink(
+                  opts.getStringOption("report-format"))
+            : new TextReportSink();
+        ClusterEvaluator evaluator = opts.hasOption("threads")
+            ? new ClusterEvaluator(opts.getIntOption("threads"))
+            : new ClusterEvaluator();
+
+        try {
+            Map<String,Map<String,Map<String,Double>>> goldKey = 
+                KeyUtil.loadKey(new File(opts.getPositionalArg(0)));
+            Map<String,Map<String,Map<String,Double>>> testKey = 
+                KeyUtil.loadKey(new File(opts.getPositionalArg(1)));
+            sink.write(evaluator.evaluate(goldKey, testKey, 
+                                          getEvaluation())[0]);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison.cl;
+
+import edu.ucla.clustercomparison.JsonReportSink;
+import edu.ucla.clustercomparison.NullReportSink;
+import edu.ucla.clustercomparison.ReportSink;
+import edu.ucla.clustercomparison.TextReportSink;
+import edu.ucla.clustercomparison.TsvReportSink;
+
+
+/**
+ * The report formats that can be selected with the {@code --report-format}
+ * option of the command-line programs.
+ */
+class ReportFormats {
+
+    private ReportFormats() { }
+
+    /**
+     * Returns the sink that writes reports in the named format
+     */
+    static ReportSink getReportSink(String format) {
+        if (format.equals("text"))
+            return new TextReportSink();
+        if (format.equals("tsv"))
+            return new TsvReportSink();
+        if (format.equals("json"))
+            return new JsonReportSink();
+        if (format.equals("none"))
+            return new NullReportSink();
+        throw new IllegalArgumentException(
+            "Unknown report format: " + format);
+    }
+}
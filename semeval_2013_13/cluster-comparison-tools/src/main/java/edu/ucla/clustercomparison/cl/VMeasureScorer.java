@@ -0,0 +1,46 @@
+/*
+ * Copyright 2013 David Jurgens
+ *
+ * This file is part of the Cluster-Comparison package and is covered under the
+ * terms and conditions therein.
+ *
+ * The Cluster-Comparison package is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License version 2
+ * as published by the Free Software Foundation and distributed hereunder to
+ * you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.clustercomparison.cl;
+
+import edu.ucla.clustercomparison.ClusterEvaluation;
+import edu.ucla.clustercomparison.VMeasure;
+
+
+/**
+ * The command-line program for comparing the hard clusterings of two sense
+ * labelings using {@link VMeasure}.
+ */
+public class VMeasureScorer extends ClusterCliRunner {
+
+    @Override protected ClusterEvaluation getEvaluation() {
+        return new VMeasure();
+    }
+
+    @Override protected String getEvalName() {
+        return "V-Measure";
+    }
+
+    public static void main(String[] args) throws Exception {
+        new VMeasureScorer().run(args);
+    }
+}